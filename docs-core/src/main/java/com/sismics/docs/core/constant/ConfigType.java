@@ -47,6 +47,12 @@ public enum ConfigType {
     INBOX_AUTOMATIC_TAGS,
     INBOX_DELETE_IMPORTED,
 
+    /**
+     * Inbox scanning state.
+     */
+    INBOX_MAILBOX,
+    INBOX_LAST_UID,
+
     /**
      * LDAP connection.
      */
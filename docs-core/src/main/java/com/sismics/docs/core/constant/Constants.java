@@ -83,6 +83,171 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Search mode environment variable (DATABASE or LUCENE).
+     */
+    public static final String SEARCH_MODE_ENV = "DOCS_SEARCH_MODE";
+
+    /**
+     * Search suggestions refresh interval environment variable (in seconds).
+     */
+    public static final String SUGGESTER_REFRESH_INTERVAL_ENV = "DOCS_SUGGESTER_REFRESH_INTERVAL";
+
+    /**
+     * Index searcher refresh interval environment variable (in milliseconds).
+     */
+    public static final String SEARCHER_REFRESH_INTERVAL_ENV = "DOCS_SEARCHER_REFRESH_INTERVAL";
+
+    /**
+     * Index commit interval environment variable (in seconds, 0 to commit after each change).
+     */
+    public static final String INDEX_COMMIT_INTERVAL_ENV = "DOCS_INDEX_COMMIT_INTERVAL";
+
+    /**
+     * Number of index changes triggering a commit before the end of the commit interval environment variable (0 to disable).
+     */
+    public static final String INDEX_COMMIT_OPERATIONS_ENV = "DOCS_INDEX_COMMIT_OPERATIONS";
+
+    /**
+     * Number of threads used to rebuild the index environment variable.
+     */
+    public static final String REBUILD_THREADS_ENV = "DOCS_REBUILD_THREADS";
+
+    /**
+     * Maximum number of derived encryption keys kept in memory environment variable.
+     */
+    public static final String ENCRYPTION_KEY_CACHE_SIZE_ENV = "DOCS_ENCRYPTION_KEY_CACHE_SIZE";
+
+    /**
+     * Expiration of the derived encryption keys kept in memory environment variable (in minutes).
+     */
+    public static final String ENCRYPTION_KEY_CACHE_EXPIRY_ENV = "DOCS_ENCRYPTION_KEY_CACHE_EXPIRY";
+
+    /**
+     * Number of threads processing cheap files (thumbnails, text) environment variable.
+     */
+    public static final String FILE_PROCESSING_CHEAP_THREADS_ENV = "DOCS_FILE_PROCESSING_CHEAP_THREADS";
+
+    /**
+     * Number of threads processing expensive files (OCR, conversions) environment variable.
+     */
+    public static final String FILE_PROCESSING_EXPENSIVE_THREADS_ENV = "DOCS_FILE_PROCESSING_EXPENSIVE_THREADS";
+
+    /**
+     * Maximum number of outstanding file processing tasks before bulk imports wait environment variable.
+     */
+    public static final String FILE_PROCESSING_CAPACITY_ENV = "DOCS_FILE_PROCESSING_CAPACITY";
+
+    /**
+     * Expiration of the permission decisions shared between requests environment variable (in seconds, 0 to disable).
+     */
+    public static final String PERMISSION_CACHE_EXPIRY_ENV = "DOCS_PERMISSION_CACHE_EXPIRY";
+
+    /**
+     * Expiration of the authenticated principals cache environment variable (in seconds, 0 to disable).
+     */
+    public static final String PRINCIPAL_CACHE_EXPIRY_ENV = "DOCS_PRINCIPAL_CACHE_EXPIRY";
+
+    /**
+     * Unit of work mode environment variable (1 to keep the entities loaded for the whole transaction, 0 to clear them on each DAO call).
+     */
+    public static final String UNIT_OF_WORK_ENV = "DOCS_UNIT_OF_WORK";
+
+    /**
+     * Number of threads decrypting the stored files of a ZIP export environment variable.
+     */
+    public static final String ZIP_EXPORT_THREADS_ENV = "DOCS_ZIP_EXPORT_THREADS";
+
+    /**
+     * Maximum size in MB of the files decrypted ahead of a ZIP export environment variable.
+     */
+    public static final String ZIP_EXPORT_READ_AHEAD_ENV = "DOCS_ZIP_EXPORT_READ_AHEAD";
+
+    /**
+     * Maximum number of simultaneous PDF exports environment variable.
+     */
+    public static final String PDF_EXPORT_CONCURRENCY_ENV = "DOCS_PDF_EXPORT_CONCURRENCY";
+
+    /**
+     * Main memory shared by the PDF exports environment variable (in megabytes).
+     */
+    public static final String PDF_EXPORT_MEMORY_ENV = "DOCS_PDF_EXPORT_MEMORY";
+
+    /**
+     * Temporary storage of a PDF export environment variable (in megabytes, 0 for unlimited).
+     */
+    public static final String PDF_EXPORT_STORAGE_ENV = "DOCS_PDF_EXPORT_STORAGE";
+
+    /**
+     * Maximum number of LDAP connections environment variable.
+     */
+    public static final String LDAP_POOL_SIZE_ENV = "DOCS_LDAP_POOL_SIZE";
+
+    /**
+     * Maximum wait for an LDAP connection environment variable (in milliseconds).
+     */
+    public static final String LDAP_POOL_MAX_WAIT_ENV = "DOCS_LDAP_POOL_MAX_WAIT";
+
+    /**
+     * Expiry of the successful LDAP binds environment variable (in seconds, 0 to disable the cache).
+     */
+    public static final String LDAP_BIND_CACHE_EXPIRY_ENV = "DOCS_LDAP_BIND_CACHE_EXPIRY";
+
+    /**
+     * Maximum number of concurrent calls to a webhook environment variable.
+     */
+    public static final String WEBHOOK_CONCURRENCY_ENV = "DOCS_WEBHOOK_CONCURRENCY";
+
+    /**
+     * Time window grouping the events sent to a webhook environment variable (in seconds, 0 to disable the batching).
+     */
+    public static final String WEBHOOK_BATCH_WINDOW_ENV = "DOCS_WEBHOOK_BATCH_WINDOW";
+
+    /**
+     * Delay before the first retry of a webhook environment variable (in seconds).
+     */
+    public static final String WEBHOOK_RETRY_DELAY_ENV = "DOCS_WEBHOOK_RETRY_DELAY";
+
+    /**
+     * Maximum number of attempts to call a webhook environment variable.
+     */
+    public static final String WEBHOOK_MAX_ATTEMPTS_ENV = "DOCS_WEBHOOK_MAX_ATTEMPTS";
+
+    /**
+     * Write the audit logs in the audited transaction environment variable (1 to enable).
+     */
+    public static final String AUDIT_LOG_TRANSACTIONAL_ENV = "DOCS_AUDIT_LOG_TRANSACTIONAL";
+
+    /**
+     * Maximum time before writing the audit logs environment variable (in milliseconds).
+     */
+    public static final String AUDIT_LOG_FLUSH_INTERVAL_ENV = "DOCS_AUDIT_LOG_FLUSH_INTERVAL";
+
+    /**
+     * Maximum number of audit logs written in one batch environment variable.
+     */
+    public static final String AUDIT_LOG_BATCH_SIZE_ENV = "DOCS_AUDIT_LOG_BATCH_SIZE";
+
+    /**
+     * Maximum number of audit logs waiting to be written environment variable.
+     */
+    public static final String AUDIT_LOG_BUFFER_SIZE_ENV = "DOCS_AUDIT_LOG_BUFFER_SIZE";
+
+    /**
+     * Number of days the audit logs are kept environment variable (0 to keep them forever).
+     */
+    public static final String AUDIT_LOG_RETENTION_ENV = "DOCS_AUDIT_LOG_RETENTION";
+
+    /**
+     * Delay between two inbox synchronizations without IMAP IDLE environment variable (in seconds).
+     */
+    public static final String INBOX_POLL_INTERVAL_ENV = "DOCS_INBOX_POLL_INTERVAL";
+
+    /**
+     * Number of inbox messages imported in parallel environment variable.
+     */
+    public static final String INBOX_IMPORT_THREADS_ENV = "DOCS_INBOX_IMPORT_THREADS";
+
     /**
      * Expiration time of the password recovery in hours.
      */
@@ -7,6 +7,7 @@ import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.PermissionCache;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
@@ -37,6 +38,7 @@ public class AclDao {
         // Create the ACL
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(acl);
+        PermissionCache.invalidateAll();
 
         // Create audit log
         AuditLogUtil.create(acl, AuditLogType.CREATE, userId);
@@ -132,6 +134,18 @@ public class AclDao {
             return false;
         }
 
+        return PermissionCache.get(sourceId, perm, targetIdList, () -> findPermission(sourceId, perm, targetIdList));
+    }
+
+    /**
+     * Check in database if a source is accessible to a target.
+     *
+     * @param sourceId ACL source entity ID
+     * @param perm Necessary permission
+     * @param targetIdList List of targets
+     * @return True if the document is accessible
+     */
+    private boolean findPermission(String sourceId, PermType perm, List<String> targetIdList) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         StringBuilder sb = new StringBuilder("select a.ACL_ID_C from T_ACL a ");
         sb.append(" where a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = :sourceId and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
@@ -181,5 +195,6 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+        PermissionCache.invalidateAll();
     }
 }
\ No newline at end of file
@@ -11,8 +11,11 @@ import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.context.ThreadLocalContext;
+import org.hibernate.Session;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -40,12 +43,49 @@ public class AuditLogDao {
         return auditLog.getId();
     }
     
+    /**
+     * Creates new audit logs with a JDBC batch insert.
+     * The IDs and creation dates must be set.
+     *
+     * @param auditLogList List of audit logs
+     */
+    public void createBatch(List<AuditLog> auditLogList) {
+        createBatch(ThreadLocalContext.get().getEntityManager(), auditLogList);
+    }
+
+    /**
+     * Creates new audit logs with a JDBC batch insert, in the transaction of an entity manager.
+     * The IDs and creation dates must be set.
+     *
+     * @param em Entity manager
+     * @param auditLogList List of audit logs
+     */
+    public void createBatch(EntityManager em, List<AuditLog> auditLogList) {
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("insert into T_AUDIT_LOG(LOG_ID_C, LOG_IDUSER_C, LOG_IDENTITY_C, LOG_CLASSENTITY_C, LOG_TYPE_C, LOG_MESSAGE_C, LOG_CREATEDATE_D) values (?, ?, ?, ?, ?, ?, ?)")) {
+                for (AuditLog auditLog : auditLogList) {
+                    int i = 1;
+                    ps.setString(i++, auditLog.getId());
+                    ps.setString(i++, auditLog.getUserId());
+                    ps.setString(i++, auditLog.getEntityId());
+                    ps.setString(i++, auditLog.getEntityClass());
+                    ps.setString(i++, auditLog.getType().name());
+                    ps.setString(i++, auditLog.getMessage());
+                    ps.setTimestamp(i, new Timestamp(auditLog.getCreateDate().getTime()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
     /**
      * Searches audit logs by criteria.
+     * Each part of the search is restricted to the current page, to use the indexes on the creation date.
      * 
      * @param paginatedList List of audit logs (updated by side effects)
      * @param criteria Search criteria
-     * @param sortCriteria Sort criteria
+     * @param sortCriteria Sort criteria, on the creation date
      */
     public void findByCriteria(PaginatedList<AuditLogDto> paginatedList, AuditLogCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
@@ -77,9 +117,33 @@ public class AuditLogDao {
             }
         }
         
+        QueryParam countQueryParam = new QueryParam(Joiner.on(" union ").join(queries), new HashMap<>(parameterMap));
+        
+        // Restrict each part to the logs after the cursor, null dates are last
+        String direction = sortCriteria.isAsc() ? " asc" : " desc";
+        StringBuilder pageCriteria = new StringBuilder();
+        if (paginatedList.getAfter() != null) {
+            Object[] cursor = PaginatedLists.decodeCursor(paginatedList.getAfter());
+            parameterMap.put("afterId", cursor[1]);
+            if (cursor[0] == null) {
+                pageCriteria.append(" and l.LOG_CREATEDATE_D is null and l.LOG_ID_C > :afterId ");
+            } else {
+                parameterMap.put("afterValue", cursor[0]);
+                pageCriteria.append(" and (l.LOG_CREATEDATE_D ").append(sortCriteria.isAsc() ? ">=" : "<=").append(" :afterValue")
+                        .append(" and (l.LOG_CREATEDATE_D != :afterValue or l.LOG_ID_C > :afterId)")
+                        .append(" or l.LOG_CREATEDATE_D is null) ");
+            }
+        }
+        int pageEnd = paginatedList.getLimit() + (paginatedList.getAfter() == null ? paginatedList.getOffset() : 0);
+        pageCriteria.append(" order by c1").append(direction).append(" nulls last, c0 asc limit ").append(pageEnd);
+        List<String> pageQueries = Lists.newArrayList();
+        for (String query : queries) {
+            pageQueries.add("(" + query + pageCriteria + ")");
+        }
+        
         // Perform the search
-        QueryParam queryParam = new QueryParam(Joiner.on(" union ").join(queries), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+        QueryParam queryParam = new QueryParam(Joiner.on(" union ").join(pageQueries), parameterMap);
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, countQueryParam, queryParam, sortCriteria);
         
         // Assemble results
         List<AuditLogDto> auditLogDtoList = new ArrayList<>();
@@ -98,4 +162,72 @@ public class AuditLogDao {
 
         paginatedList.setResultList(auditLogDtoList);
     }
+
+    /**
+     * Returns a chunk of audit log IDs, ordered by ID.
+     *
+     * @param afterId Start after this audit log ID, null to start with the first one
+     * @param limit Maximum number of IDs
+     * @return List of audit log IDs
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> findIdList(String afterId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select l.LOG_ID_C from T_AUDIT_LOG l " +
+                (afterId == null ? "" : " where l.LOG_ID_C > :afterId ") + " order by l.LOG_ID_C asc");
+        if (afterId != null) {
+            q.setParameter("afterId", afterId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Hard deletes the audit logs of deleted entities, among a chunk of audit logs.
+     *
+     * @param idList Audit log IDs to check
+     * @return Number of deleted audit logs
+     */
+    public int deleteOrphan(List<String> idList) {
+        if (idList.isEmpty()) {
+            return 0;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("delete from T_AUDIT_LOG al where al.LOG_ID_C in (select al.LOG_ID_C from T_AUDIT_LOG al ");
+        sb.append(" left join T_DOCUMENT d on d.DOC_ID_C = al.LOG_IDENTITY_C and d.DOC_DELETEDATE_D is null ");
+        sb.append(" left join T_ACL a on a.ACL_ID_C = al.LOG_IDENTITY_C and a.ACL_DELETEDATE_D is null ");
+        sb.append(" left join T_COMMENT c on c.COM_ID_C = al.LOG_IDENTITY_C and c.COM_DELETEDATE_D is null ");
+        sb.append(" left join T_FILE f on f.FIL_ID_C = al.LOG_IDENTITY_C and f.FIL_DELETEDATE_D is null ");
+        sb.append(" left join T_TAG t on t.TAG_ID_C = al.LOG_IDENTITY_C and t.TAG_DELETEDATE_D is null ");
+        sb.append(" left join T_USER u on u.USE_ID_C = al.LOG_IDENTITY_C and u.USE_DELETEDATE_D is null ");
+        sb.append(" left join T_GROUP g on g.GRP_ID_C = al.LOG_IDENTITY_C and g.GRP_DELETEDATE_D is null ");
+        sb.append(" where al.LOG_ID_C in (:idList) and d.DOC_ID_C is null and a.ACL_ID_C is null and c.COM_ID_C is null and f.FIL_ID_C is null and t.TAG_ID_C is null and u.USE_ID_C is null and g.GRP_ID_C is null)");
+        Query q = em.createNativeQuery(sb.toString());
+        q.setParameter("idList", idList);
+        return q.executeUpdate();
+    }
+
+    /**
+     * Hard deletes a chunk of the audit logs created before a date.
+     *
+     * @param before Date
+     * @param limit Maximum number of deleted audit logs
+     * @return Number of deleted audit logs
+     */
+    @SuppressWarnings("unchecked")
+    public int deleteBefore(Date before, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select l.LOG_ID_C from T_AUDIT_LOG l where l.LOG_CREATEDATE_D < :before");
+        q.setParameter("before", before);
+        q.setMaxResults(limit);
+        List<String> idList = q.getResultList();
+        if (idList.isEmpty()) {
+            return 0;
+        }
+
+        q = em.createNativeQuery("delete from T_AUDIT_LOG where LOG_ID_C in (:idList)");
+        q.setParameter("idList", idList);
+        return q.executeUpdate();
+    }
 }
@@ -1,6 +1,8 @@
 package com.sismics.docs.core.dao;
 
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import org.joda.time.DateTime;
 
@@ -8,6 +10,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -54,6 +57,7 @@ public class AuthenticationTokenDao {
         AuthenticationToken authenticationToken = em.find(AuthenticationToken.class, authenticationTokenId);
         if (authenticationToken != null) {
             em.remove(authenticationToken);
+            ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(authenticationToken.getUserId()));
         } else {
             throw new Exception("Token not found: " + authenticationTokenId);
         }
@@ -70,8 +74,7 @@ public class AuthenticationTokenDao {
         sb.append(" where ato.AUT_IDUSER_C = :userId and ato.AUT_LONGLASTED_B = :longLasted");
         sb.append(" and ato.AUT_LASTCONNECTIONDATE_D < :minDate ");
 
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Query q = em.createNativeQuery(sb.toString());
+        Query q = QueryUtil.createNativeUpdate(sb.toString(), "T_AUTHENTICATION_TOKEN");
         q.setParameter("userId", userId);
         q.setParameter("longLasted", false);
         q.setParameter("minDate", DateTime.now().minusDays(1).toDate());
@@ -89,12 +92,25 @@ public class AuthenticationTokenDao {
         sb.append(" set AUT_LASTCONNECTIONDATE_D = :currentDate ");
         sb.append(" where ato.AUT_ID_C = :id");
 
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Query q = em.createNativeQuery(sb.toString());
+        Query q = QueryUtil.createNativeUpdate(sb.toString(), "T_AUTHENTICATION_TOKEN");
         q.setParameter("currentDate", new Date());
         q.setParameter("id", id);
         q.executeUpdate();
     }
+
+    /**
+     * Updates the last connection date of several tokens.
+     *
+     * @param lastConnectionDateMap Last connection dates, by token ID
+     */
+    public void updateLastConnectionDate(Map<String, Date> lastConnectionDateMap) {
+        Query q = QueryUtil.createNativeUpdate("update T_AUTHENTICATION_TOKEN set AUT_LASTCONNECTIONDATE_D = :currentDate where AUT_ID_C = :id", "T_AUTHENTICATION_TOKEN");
+        for (Map.Entry<String, Date> entry : lastConnectionDateMap.entrySet()) {
+            q.setParameter("currentDate", entry.getValue());
+            q.setParameter("id", entry.getKey());
+            q.executeUpdate();
+        }
+    }
     
     /**
      * Returns all authentication tokens of an user.
@@ -121,5 +137,6 @@ public class AuthenticationTokenDao {
         q.setParameter("userId", userId);
         q.setParameter("id", id);
         q.executeUpdate();
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(userId));
     }
 }
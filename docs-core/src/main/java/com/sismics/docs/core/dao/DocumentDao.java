@@ -5,6 +5,8 @@ import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.PermissionCache;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import javax.persistence.EntityManager;
@@ -59,6 +61,34 @@ public class DocumentDao {
         return q.getResultList();
     }
 
+    /**
+     * Returns the IDs of active documents following an ID, in ID order.
+     *
+     * @param fromId Exclusive lower bound of the IDs
+     * @param limit Limit
+     * @return List of document IDs
+     */
+    public List<String> findIdList(String fromId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select d.id from Document d where d.id > :fromId and d.deleteDate is null order by d.id", String.class);
+        q.setParameter("fromId", fromId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns a list of active documents.
+     *
+     * @param ids Documents IDs
+     * @return List of documents
+     */
+    public List<Document> getDocuments(List<String> ids) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.id in :ids and d.deleteDate is null", Document.class);
+        q.setParameter("ids", ids);
+        return q.getResultList();
+    }
+
     /**
      * Returns the list of all active documents from a user.
      * 
@@ -165,6 +195,7 @@ public class DocumentDao {
         q.setParameter("documentId", id);
         q.setParameter("dateNow", dateNow);
         q.executeUpdate();
+        PermissionCache.invalidate(id);
         
         // Create audit log
         AuditLogUtil.create(documentDb, AuditLogType.DELETE, userId);
@@ -230,9 +261,9 @@ public class DocumentDao {
      * @param document Document
      */
     public void updateFileId(Document document) {
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        Query query = em.createNativeQuery("update T_DOCUMENT d set DOC_IDFILE_C = :fileId, DOC_UPDATEDATE_D = :updateDate where d.DOC_ID_C = :id");
-        query.setParameter("updateDate", new Date());
+        Query query = QueryUtil.createNativeUpdate("update T_DOCUMENT d set DOC_IDFILE_C = :fileId, DOC_UPDATEDATE_D = :updateDate where d.DOC_ID_C = :id", "T_DOCUMENT");
+        document.setUpdateDate(new Date());
+        query.setParameter("updateDate", document.getUpdateDate());
         query.setParameter("fileId", document.getFileId());
         query.setParameter("id", document.getId());
         query.executeUpdate();
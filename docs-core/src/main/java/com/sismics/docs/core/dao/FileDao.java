@@ -7,6 +7,7 @@ import com.sismics.util.context.ThreadLocalContext;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.util.Collections;
 import java.util.Date;
@@ -69,6 +70,21 @@ public class FileDao {
         return q.getResultList();
     }
 
+    /**
+     * Returns the IDs of active files following an ID, in ID order.
+     *
+     * @param fromId Exclusive lower bound of the IDs
+     * @param limit Limit
+     * @return List of file IDs
+     */
+    public List<String> findIdList(String fromId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select f.id from File f where f.id > :fromId and f.deleteDate is null order by f.id", String.class);
+        q.setParameter("fromId", fromId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
     /**
      * Returns a list of active files.
      *
@@ -224,4 +240,15 @@ public class FileDao {
         q.setParameter("versionId", versionId);
         return q.getResultList();
     }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
 }
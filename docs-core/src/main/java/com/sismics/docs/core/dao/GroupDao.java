@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.dao.criteria.GroupCriteria;
 import com.sismics.docs.core.dao.dto.GroupDto;
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.Group;
 import com.sismics.docs.core.model.jpa.UserGroup;
 import com.sismics.docs.core.util.AuditLogUtil;
@@ -11,6 +12,7 @@ import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.context.ThreadLocalContext;
+import org.hibernate.annotations.QueryHints;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -33,6 +35,7 @@ public class GroupDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query q = em.createQuery("select g from Group g where g.name = :name and g.deleteDate is null");
         q.setParameter("name", name);
+        q.setHint(QueryHints.CACHEABLE, true);
         try {
             return (Group) q.getSingleResult();
         } catch (NoResultException e) {
@@ -50,6 +53,7 @@ public class GroupDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query q = em.createQuery("select g from Group g where g.id = :id and g.deleteDate is null");
         q.setParameter("id", id);
+        q.setHint(QueryHints.CACHEABLE, true);
         try {
             return (Group) q.getSingleResult();
         } catch (NoResultException e) {
@@ -71,6 +75,12 @@ public class GroupDao {
         // Create the group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(group);
+
+        // Create the ancestors
+        Query q = QueryUtil.createNativeUpdate("insert into T_GROUP_ANCESTOR(GAN_IDGROUP_C, GAN_IDANCESTOR_C, GAN_DEPTH_N) values(:groupId, :groupId, 0)", "T_GROUP_ANCESTOR");
+        q.setParameter("groupId", group.getId());
+        q.executeUpdate();
+        linkAncestors(group.getId(), group.getParentId());
         
         // Create audit log
         AuditLogUtil.create(group, AuditLogType.CREATE, userId);
@@ -111,6 +121,12 @@ public class GroupDao {
         q.setParameter("groupId", groupDb.getId());
         q.executeUpdate();
 
+        // Subgroups become root groups
+        unlinkAncestors(groupDb.getId(), 0);
+
+        // Subgroup members are impacted too
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent());
+
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.DELETE, userId);
     }
@@ -128,6 +144,7 @@ public class GroupDao {
         // Create the user group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(userGroup);
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(userGroup.getUserId()));
         
         return userGroup.getId();
     }
@@ -150,6 +167,7 @@ public class GroupDao {
         // Delete the user group
         Date dateNow = new Date();
         userGroupDb.setDeleteDate(dateNow);
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(userId));
     }
     
     /**
@@ -164,9 +182,6 @@ public class GroupDao {
         List<String> criteriaList = new ArrayList<>();
         
         StringBuilder sb = new StringBuilder("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
-        if (criteria.getUserId() != null) {
-            sb.append(" , ug.UGP_ID_C ");
-        }
         sb.append(" from T_GROUP g ");
         sb.append(" left join T_GROUP gp on g.GRP_IDPARENT_C = gp.GRP_ID_C ");
         
@@ -176,9 +191,12 @@ public class GroupDao {
             parameterMap.put("search", "%" + criteria.getSearch() + "%");
         }
         if (criteria.getUserId() != null) {
-            // Left join and post-filtering for recursive groups
-            sb.append(criteria.isRecursive() ? " left " : "");
-            sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            if (criteria.isRecursive()) {
+                // Direct groups and their ancestors
+                criteriaList.add("g.GRP_ID_C in (select ga.GAN_IDANCESTOR_C from T_USER_GROUP ug join T_GROUP_ANCESTOR ga on ga.GAN_IDGROUP_C = ug.UGP_IDGROUP_C where ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null)");
+            } else {
+                sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            }
             parameterMap.put("userId", criteria.getUserId());
         }
         
@@ -194,7 +212,6 @@ public class GroupDao {
         
         // Assemble results
         List<GroupDto> groupDtoList = new ArrayList<>();
-        List<GroupDto> userGroupDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             GroupDto groupDto = new GroupDto()
@@ -202,47 +219,13 @@ public class GroupDao {
                 .setName((String) o[i++])
                 .setParentId((String) o[i++])
                 .setParentName((String) o[i++])
-                .setRoleId((String) o[i++]);
+                .setRoleId((String) o[i]);
             groupDtoList.add(groupDto);
-            if (criteria.getUserId() != null && o[i] != null) {
-                userGroupDtoList.add(groupDto);
-            }
-        }
-        
-        // Post-query filtering for recursive groups
-        if (criteria.getUserId() != null && criteria.isRecursive()) {
-            Set<GroupDto> filteredGroupDtoSet = new HashSet<>();
-            for (GroupDto userGroupDto : userGroupDtoList) {
-                filteredGroupDtoSet.add(userGroupDto); // Direct group
-                findGroupParentHierarchy(filteredGroupDtoSet, groupDtoList, userGroupDto, 0); // Indirect groups
-            }
-            groupDtoList = new ArrayList<>(filteredGroupDtoSet);
         }
         
         return groupDtoList;
     }
     
-    /**
-     * Recursively search group's parents.
-     * 
-     * @param parentGroupDtoSet Resulting parents
-     * @param groupDtoList All groups
-     * @param userGroupDto Reference group to search from
-     * @param depth Depth
-     */
-    private void findGroupParentHierarchy(Set<GroupDto> parentGroupDtoSet, List<GroupDto> groupDtoList, GroupDto userGroupDto, int depth) {
-        if (userGroupDto.getParentId() == null || depth == 10) { // Max depth 10 to avoid infinite loop
-            return;
-        }
-        
-        for (GroupDto groupDto : groupDtoList) {
-            if (groupDto.getId().equals(userGroupDto.getParentId())) {
-                parentGroupDtoSet.add(groupDto); // Add parent
-                findGroupParentHierarchy(parentGroupDtoSet, groupDtoList, groupDto, depth + 1); // Find parent's parents
-            }
-        }
-    }
-    
     /**
      * Update a group.
      * 
@@ -261,11 +244,127 @@ public class GroupDao {
         // Update the group
         groupDb.setName(group.getName());
         groupDb.setParentId(group.getParentId());
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent());
+
+        // Move the group and its subgroups if the parent has changed
+        q = em.createNativeQuery("select GAN_IDANCESTOR_C from T_GROUP_ANCESTOR where GAN_IDGROUP_C = :groupId and GAN_DEPTH_N = 1");
+        q.setParameter("groupId", groupDb.getId());
+        @SuppressWarnings("unchecked")
+        List<String> parentIdList = q.getResultList();
+        String oldParentId = parentIdList.isEmpty() ? null : parentIdList.get(0);
+        if (!Objects.equals(oldParentId, groupDb.getParentId())) {
+            unlinkAncestors(groupDb.getId(), 1);
+            linkAncestors(groupDb.getId(), groupDb.getParentId());
+        }
         
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.UPDATE, userId);
         
         return groupDb;
     }
-}
 
+    /**
+     * Returns true if a group is an ancestor of another group, or the group itself.
+     *
+     * @param ancestorId Ancestor group ID
+     * @param groupId Group ID
+     * @return True if the group is an ancestor
+     */
+    public boolean isAncestor(String ancestorId, String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select count(*) from T_GROUP_ANCESTOR where GAN_IDGROUP_C = :groupId and GAN_IDANCESTOR_C = :ancestorId");
+        q.setParameter("groupId", groupId);
+        q.setParameter("ancestorId", ancestorId);
+        return ((Number) q.getSingleResult()).intValue() > 0;
+    }
+
+    /**
+     * Link a group and its subgroups to a parent group and its ancestors.
+     *
+     * @param groupId Group ID
+     * @param parentId Parent group ID
+     */
+    private void linkAncestors(String groupId, String parentId) {
+        if (parentId == null) {
+            return;
+        }
+
+        Query q = QueryUtil.createNativeUpdate("insert into T_GROUP_ANCESTOR(GAN_IDGROUP_C, GAN_IDANCESTOR_C, GAN_DEPTH_N)" +
+                " select sub.GAN_IDGROUP_C, sup.GAN_IDANCESTOR_C, sup.GAN_DEPTH_N + sub.GAN_DEPTH_N + 1" +
+                " from T_GROUP_ANCESTOR sup, T_GROUP_ANCESTOR sub where sup.GAN_IDGROUP_C = :parentId and sub.GAN_IDANCESTOR_C = :groupId", "T_GROUP_ANCESTOR");
+        q.setParameter("parentId", parentId);
+        q.setParameter("groupId", groupId);
+        q.executeUpdate();
+    }
+
+    /**
+     * Unlink a group and its subgroups from the group ancestors.
+     *
+     * @param groupId Group ID
+     * @param minDepth 0 to unlink from the group itself too, 1 to unlink only from its ancestors
+     */
+    private void unlinkAncestors(String groupId, int minDepth) {
+        Query q = QueryUtil.createNativeUpdate("delete from T_GROUP_ANCESTOR" +
+                " where GAN_IDGROUP_C in (select sub.GAN_IDGROUP_C from T_GROUP_ANCESTOR sub where sub.GAN_IDANCESTOR_C = :groupId)" +
+                " and GAN_IDANCESTOR_C in (select sup.GAN_IDANCESTOR_C from T_GROUP_ANCESTOR sup where sup.GAN_IDGROUP_C = :groupId and sup.GAN_DEPTH_N >= :minDepth)", "T_GROUP_ANCESTOR");
+        q.setParameter("groupId", groupId);
+        q.setParameter("minDepth", minDepth);
+        q.executeUpdate();
+    }
+
+    /**
+     * Verify the group ancestors against the group hierarchy, and rebuild them if needed.
+     *
+     * @return Number of missing or wrong ancestor links
+     */
+    public int rebuildAncestors() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+        // Compute the ancestors from the group hierarchy
+        Query q = em.createNativeQuery("select GRP_ID_C, GRP_IDPARENT_C from T_GROUP where GRP_DELETEDATE_D is null");
+        @SuppressWarnings("unchecked")
+        List<Object[]> groupList = q.getResultList();
+        Map<String, String> parentIdMap = new HashMap<>();
+        for (Object[] o : groupList) {
+            parentIdMap.put((String) o[0], (String) o[1]);
+        }
+        Map<List<String>, Integer> depthMap = new HashMap<>();
+        for (String groupId : parentIdMap.keySet()) {
+            String ancestorId = groupId;
+            int depth = 0;
+            while (ancestorId != null && parentIdMap.containsKey(ancestorId)
+                    && !depthMap.containsKey(Arrays.asList(groupId, ancestorId))) { // Stop on circular hierarchies
+                depthMap.put(Arrays.asList(groupId, ancestorId), depth++);
+                ancestorId = parentIdMap.get(ancestorId);
+            }
+        }
+
+        // Compare with the stored ancestors
+        q = em.createNativeQuery("select GAN_IDGROUP_C, GAN_IDANCESTOR_C, GAN_DEPTH_N from T_GROUP_ANCESTOR");
+        @SuppressWarnings("unchecked")
+        List<Object[]> ancestorList = q.getResultList();
+        int errorCount = depthMap.size();
+        for (Object[] o : ancestorList) {
+            Integer depth = depthMap.get(Arrays.asList((String) o[0], (String) o[1]));
+            if (depth != null && depth == ((Number) o[2]).intValue()) {
+                errorCount--;
+            } else {
+                errorCount++;
+            }
+        }
+        if (errorCount == 0) {
+            return 0;
+        }
+
+        // Rebuild all ancestors
+        QueryUtil.createNativeUpdate("delete from T_GROUP_ANCESTOR", "T_GROUP_ANCESTOR").executeUpdate();
+        q = QueryUtil.createNativeUpdate("insert into T_GROUP_ANCESTOR(GAN_IDGROUP_C, GAN_IDANCESTOR_C, GAN_DEPTH_N) values(:groupId, :ancestorId, :depth)", "T_GROUP_ANCESTOR");
+        for (Map.Entry<List<String>, Integer> entry : depthMap.entrySet()) {
+            q.setParameter("groupId", entry.getKey().get(0));
+            q.setParameter("ancestorId", entry.getKey().get(1));
+            q.setParameter("depth", entry.getValue());
+            q.executeUpdate();
+        }
+        return errorCount;
+    }
+}
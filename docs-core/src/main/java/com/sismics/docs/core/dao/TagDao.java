@@ -1,12 +1,15 @@
 package com.sismics.docs.core.dao;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.model.jpa.DocumentTag;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.PermissionCache;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
@@ -79,6 +82,9 @@ public class TagDao {
                 em.persist(documentTag);
             }
         }
+
+        // Permissions are inherited from the tags
+        PermissionCache.invalidate(documentId);
     }
     
     /**
@@ -135,6 +141,7 @@ public class TagDao {
         q = em.createQuery("update Tag t set t.parentId = null where t.parentId = :tagId and t.deleteDate is null");
         q.setParameter("tagId", tagId);
         q.executeUpdate();
+        PermissionCache.invalidateAll();
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.DELETE, userId);
@@ -222,5 +229,49 @@ public class TagDao {
 
         return tagDtoList;
     }
-}
 
+    /**
+     * Returns the tags of a list of documents.
+     *
+     * @param documentIds Documents IDs
+     * @param targetIdList ACL target ID list, null to skip the ACL check
+     * @return Tags sorted by name, by document ID
+     */
+    public ListMultimap<String, TagDto> findByDocumentIds(Collection<String> documentIds, List<String> targetIdList) {
+        ListMultimap<String, TagDto> tagDtoMap = ArrayListMultimap.create();
+        if (documentIds.isEmpty()) {
+            return tagDtoMap;
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = new StringBuilder("select distinct dt.DOT_IDDOCUMENT_C, t.TAG_ID_C, t.TAG_NAME_C, t.TAG_COLOR_C, t.TAG_IDPARENT_C, u.USE_USERNAME_C ");
+        sb.append(" from T_TAG t ");
+        sb.append(" join T_USER u on t.TAG_IDUSER_C = u.USE_ID_C ");
+        sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
+        if (targetIdList != null && !SecurityUtil.skipAclCheck(targetIdList)) {
+            sb.append(" join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        sb.append(" where dt.DOT_IDDOCUMENT_C in (:documentIds) and t.TAG_DELETEDATE_D is null ");
+        sb.append(" order by t.TAG_NAME_C asc ");
+        parameterMap.put("documentIds", documentIds);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+
+        // Assemble results
+        for (Object[] o : l) {
+            int i = 0;
+            String documentId = (String) o[i++];
+            TagDto tagDto = new TagDto()
+                    .setId((String) o[i++])
+                    .setName((String) o[i++])
+                    .setColor((String) o[i++])
+                    .setParentId((String) o[i++])
+                    .setCreator((String) o[i]);
+            tagDtoMap.put(documentId, tagDto);
+        }
+
+        return tagDtoMap;
+    }
+}
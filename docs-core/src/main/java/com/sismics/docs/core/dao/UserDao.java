@@ -3,6 +3,7 @@ package com.sismics.docs.core.dao;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import at.favre.lib.crypto.bcrypt.BCrypt;
+import org.hibernate.annotations.QueryHints;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +12,7 @@ import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.criteria.UserCriteria;
 import com.sismics.docs.core.dao.dto.UserDto;
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
@@ -114,6 +116,7 @@ public class UserDao {
         userDb.setStorageCurrent(user.getStorageCurrent());
         userDb.setTotpKey(user.getTotpKey());
         userDb.setDisableDate(user.getDisableDate());
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(userDb.getId()));
 
         // Create audit log
         AuditLogUtil.create(userDb, AuditLogType.UPDATE, userId);
@@ -228,6 +231,7 @@ public class UserDao {
         try {
             Query q = em.createQuery("select u from User u where u.username = :username and u.deleteDate is null");
             q.setParameter("username", username);
+            q.setHint(QueryHints.CACHEABLE, true);
             return (User) q.getSingleResult();
         } catch (NoResultException e) {
             return null;
@@ -256,6 +260,7 @@ public class UserDao {
         q = em.createQuery("delete from AuthenticationToken at where at.userId = :userId");
         q.setParameter("userId", userDb.getId());
         q.executeUpdate();
+        ThreadLocalContext.get().addAsyncEvent(new PrincipalUpdatedAsyncEvent().setUserId(userDb.getId()));
         
         q = em.createQuery("update Document d set d.deleteDate = :dateNow where d.userId = :userId and d.deleteDate is null");
         q.setParameter("userId", userDb.getId());
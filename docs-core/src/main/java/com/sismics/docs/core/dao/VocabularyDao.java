@@ -2,6 +2,7 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.model.jpa.Vocabulary;
 import com.sismics.util.context.ThreadLocalContext;
+import org.hibernate.annotations.QueryHints;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -45,6 +46,7 @@ public class VocabularyDao {
         // Get the entries
         Query q = em.createQuery("select v from Vocabulary v where v.name = :name order by v.order");
         q.setParameter("name", name);
+        q.setHint(QueryHints.CACHEABLE, true);
         return q.getResultList();
     }
 
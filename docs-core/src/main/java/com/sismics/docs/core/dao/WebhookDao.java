@@ -116,6 +116,9 @@ public class WebhookDao {
         // Delete the group
         Date dateNow = new Date();
         webhookDb.setDeleteDate(dateNow);
+
+        // Delete the pending deliveries
+        new WebhookDeliveryDao().deleteByWebhookId(webhookId);
     }
 }
 
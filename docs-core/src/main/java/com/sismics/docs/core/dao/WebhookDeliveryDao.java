@@ -0,0 +1,134 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sismics.docs.core.dao.dto.WebhookDeliveryDto;
+import com.sismics.docs.core.model.jpa.WebhookDelivery;
+import com.sismics.util.context.ThreadLocalContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.*;
+
+/**
+ * Webhook delivery DAO.
+ *
+ * @author bgamard
+ */
+public class WebhookDeliveryDao {
+    /**
+     * Creates the deliveries of an event to all the webhooks listening to it.
+     *
+     * @param event Event
+     * @param entityId ID of the document or file
+     * @param nextDate Date of the first attempt
+     * @return Number of created deliveries
+     */
+    public int create(WebhookEvent event, String entityId, Date nextDate) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select w.id from Webhook w where w.event = :event and w.deleteDate is null", String.class);
+        q.setParameter("event", event);
+        List<String> webhookIdList = q.getResultList();
+
+        Date now = new Date();
+        for (String webhookId : webhookIdList) {
+            em.persist(new WebhookDelivery()
+                    .setId(UUID.randomUUID().toString())
+                    .setWebhookId(webhookId)
+                    .setEvent(event)
+                    .setEntityId(entityId)
+                    .setAttempt(0)
+                    .setNextDate(nextDate)
+                    .setCreateDate(now));
+        }
+        return webhookIdList.size();
+    }
+
+    /**
+     * Returns the deliveries due, oldest first.
+     *
+     * @param now Current date
+     * @param limit Maximum number of deliveries
+     * @return List of deliveries
+     */
+    public List<WebhookDeliveryDto> findDue(Date now, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select d.id, d.webhookId, w.url, d.event, d.entityId, d.attempt from WebhookDelivery d, Webhook w " +
+                " where w.id = d.webhookId and w.deleteDate is null and d.nextDate <= :now order by d.nextDate, d.createDate");
+        q.setParameter("now", now);
+        q.setMaxResults(limit);
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = q.getResultList();
+
+        List<WebhookDeliveryDto> webhookDeliveryDtoList = new ArrayList<>();
+        for (Object[] o : l) {
+            int i = 0;
+            webhookDeliveryDtoList.add(new WebhookDeliveryDto()
+                    .setId((String) o[i++])
+                    .setWebhookId((String) o[i++])
+                    .setUrl((String) o[i++])
+                    .setEvent(((WebhookEvent) o[i++]).name())
+                    .setEntityId((String) o[i++])
+                    .setAttempt((Integer) o[i]));
+        }
+        return webhookDeliveryDtoList;
+    }
+
+    /**
+     * Returns the number of pending deliveries.
+     *
+     * @return Number of deliveries, by webhook ID
+     */
+    public Map<String, Long> countByWebhook() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select d.webhookId, count(d.id) from WebhookDelivery d group by d.webhookId");
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = q.getResultList();
+
+        Map<String, Long> countMap = new HashMap<>();
+        for (Object[] o : l) {
+            countMap.put((String) o[0], ((Number) o[1]).longValue());
+        }
+        return countMap;
+    }
+
+    /**
+     * Deletes delivered deliveries.
+     *
+     * @param idList List of delivery IDs
+     */
+    public void delete(List<String> idList) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from WebhookDelivery d where d.id in :ids");
+        q.setParameter("ids", idList);
+        q.executeUpdate();
+    }
+
+    /**
+     * Deletes the deliveries to a webhook.
+     *
+     * @param webhookId Webhook ID
+     */
+    public void deleteByWebhookId(String webhookId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from WebhookDelivery d where d.webhookId = :webhookId");
+        q.setParameter("webhookId", webhookId);
+        q.executeUpdate();
+    }
+
+    /**
+     * Schedules a new attempt of failed deliveries.
+     *
+     * @param idList List of delivery IDs
+     * @param nextDate Date of the next attempt
+     * @param error Error of the failed attempt
+     */
+    public void reschedule(List<String> idList, Date nextDate, String error) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update WebhookDelivery d set d.attempt = d.attempt + 1, d.nextDate = :nextDate, d.error = :error where d.id in :ids");
+        q.setParameter("ids", idList);
+        q.setParameter("nextDate", nextDate);
+        q.setParameter("error", error);
+        q.executeUpdate();
+    }
+}
@@ -0,0 +1,92 @@
+package com.sismics.docs.core.dao.dto;
+
+/**
+ * Webhook delivery DTO.
+ *
+ * @author bgamard
+ */
+public class WebhookDeliveryDto {
+    /**
+     * Webhook delivery ID.
+     */
+    private String id;
+
+    /**
+     * Webhook ID.
+     */
+    private String webhookId;
+
+    /**
+     * Webhook URL.
+     */
+    private String url;
+
+    /**
+     * Event.
+     */
+    private String event;
+
+    /**
+     * ID of the document or file.
+     */
+    private String entityId;
+
+    /**
+     * Number of failed attempts.
+     */
+    private int attempt;
+
+    public String getId() {
+        return id;
+    }
+
+    public WebhookDeliveryDto setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getWebhookId() {
+        return webhookId;
+    }
+
+    public WebhookDeliveryDto setWebhookId(String webhookId) {
+        this.webhookId = webhookId;
+        return this;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public WebhookDeliveryDto setUrl(String url) {
+        this.url = url;
+        return this;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public WebhookDeliveryDto setEvent(String event) {
+        this.event = event;
+        return this;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public WebhookDeliveryDto setEntityId(String entityId) {
+        this.entityId = entityId;
+        return this;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public WebhookDeliveryDto setAttempt(int attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+}
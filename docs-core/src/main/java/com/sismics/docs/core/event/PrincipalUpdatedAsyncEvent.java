@@ -0,0 +1,32 @@
+package com.sismics.docs.core.event;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Principal updated event.
+ * Fired when the users, groups or authentication tokens resolving a principal have changed.
+ *
+ * @author bgamard
+ */
+public class PrincipalUpdatedAsyncEvent {
+    /**
+     * User ID, or null if every user is impacted.
+     */
+    private String userId;
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public PrincipalUpdatedAsyncEvent setUserId(String userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("userId", userId)
+            .toString();
+    }
+}
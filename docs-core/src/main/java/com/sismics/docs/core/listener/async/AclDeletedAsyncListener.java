@@ -4,6 +4,7 @@ import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.PermissionCache;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +32,11 @@ public class AclDeletedAsyncListener {
             log.info("ACL deleted event: " + event.toString());
         }
 
-        TransactionUtil.handle(() -> AppContext.getInstance().getIndexingHandler()
-                .deleteAcl(event.getSourceId(), event.getPerm(), event.getTargetId()));
+        TransactionUtil.handle(() -> {
+            // Drop the permissions cached while the transaction was committing
+            PermissionCache.invalidateAll();
+            AppContext.getInstance().getIndexingHandler()
+                    .deleteAcl(event.getSourceId(), event.getPerm(), event.getTargetId());
+        });
     }
 }
@@ -10,6 +10,7 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Contributor;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.PermissionCache;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +41,9 @@ public class DocumentUpdatedAsyncListener {
         }
 
         TransactionUtil.handle(() -> {
+            // Drop the permissions cached while the transaction was committing (tags may have changed)
+            PermissionCache.invalidate(event.getDocumentId());
+
             // Get the document
             DocumentDao documentDao = new DocumentDao();
             Document document = documentDao.getById(event.getDocumentId());
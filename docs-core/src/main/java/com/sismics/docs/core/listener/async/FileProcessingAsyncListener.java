@@ -10,14 +10,17 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
 import com.sismics.util.ImageUtil;
 import com.sismics.util.Scalr;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,7 +56,8 @@ public class FileProcessingAsyncListener {
             log.info("File created event: " + event.toString());
         }
 
-        processFile(event, true);
+        AppContext.getInstance().getFileProcessingService().submit(FileProcessingService.Cost.CHEAP, event.isBulk(),
+                () -> processFile(event, true));
     }
 
     /**
@@ -66,13 +70,15 @@ public class FileProcessingAsyncListener {
     public void on(final FileUpdatedAsyncEvent event) {
         log.info("File updated event: " + event.toString());
 
-        processFile(event, false);
+        AppContext.getInstance().getFileProcessingService().submit(FileProcessingService.Cost.CHEAP, event.isBulk(),
+                () -> processFile(event, false));
     }
 
     /**
      * Process a file :
      * Generate thumbnails
      * Extract and save text content
+     * This is executed on the cheap queue, and continues on the expensive queue if needed.
      *
      * @param event File event
      * @param isFileCreated True if the file was just created
@@ -101,7 +107,40 @@ public class FileProcessingAsyncListener {
             FileUtil.endProcessingFile(event.getFileId());
             return;
         }
-        String content = extractContent(event, user.get(), file.get());
+
+        // Find a format handler
+        FormatHandler formatHandler = FormatHandlerUtil.find(file.get().getMimeType());
+        boolean expensive = false;
+        if (formatHandler == null) {
+            log.info("Format unhandled: " + file.get().getMimeType());
+        } else {
+            try {
+                expensive = formatHandler.isExpensive(event.getLanguage(), event.getUnencryptedFile());
+            } catch (Throwable e) {
+                log.error("Unable to estimate the processing cost of: " + file.get(), e);
+            }
+        }
+
+        if (expensive) {
+            // Continue on the expensive queue, so cheap files are not waiting behind it
+            AppContext.getInstance().getFileProcessingService().submit(FileProcessingService.Cost.EXPENSIVE, event.isBulk(),
+                    () -> processFile(event, isFileCreated, user.get(), file.get(), formatHandler));
+        } else {
+            processFile(event, isFileCreated, user.get(), file.get(), formatHandler);
+        }
+    }
+
+    /**
+     * Generate thumbnails, extract and save the text content of a file.
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     * @param user User whom created the file
+     * @param file Fresh file
+     * @param formatHandler Format handler, null if the format is unhandled
+     */
+    private void processFile(FileEvent event, boolean isFileCreated, User user, File file, FormatHandler formatHandler) {
+        String content = formatHandler == null ? null : extractContent(event, user, file, formatHandler);
 
         // Open a new transaction to save the file content
         TransactionUtil.handle(() -> {
@@ -134,17 +173,14 @@ public class FileProcessingAsyncListener {
      * @param event File event
      * @param user User whom created the file
      * @param file Fresh file
+     * @param formatHandler Format handler
      * @return Text content
      */
-    private String extractContent(FileEvent event, User user, File file) {
-        // Find a format handler
-        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
-        if (formatHandler == null) {
-            log.info("Format unhandled: " + file.getMimeType());
-            return null;
-        }
+    private String extractContent(FileEvent event, User user, File file, FormatHandler formatHandler) {
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
 
         // Generate file variations
+        long startTime = System.currentTimeMillis();
         try {
             Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
             BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
@@ -169,9 +205,23 @@ public class FileProcessingAsyncListener {
         } catch (Throwable e) {
             log.error("Unable to generate thumbnails for: " + file, e);
         }
+        fileProcessingService.recordStage("thumbnail", System.currentTimeMillis() - startTime);
+
+        // Convert the file to PDF ahead of the exports
+        if (formatHandler.isConvertedToPdf()) {
+            startTime = System.currentTimeMillis();
+            try {
+                Path pdfFile = PdfUtil.createPdfFragment(file.getId(), event.getUnencryptedFile(), formatHandler,
+                        user.getPrivateKey(), MemoryUsageSetting.setupTempFileOnly());
+                Files.delete(pdfFile);
+            } catch (Throwable e) {
+                log.error("Unable to convert to PDF: " + file, e);
+            }
+            fileProcessingService.recordStage("pdf", System.currentTimeMillis() - startTime);
+        }
 
         // Extract text content from the file
-        long startTime = System.currentTimeMillis();
+        startTime = System.currentTimeMillis();
         String content = null;
         log.info("Start extracting content from: " + file);
         try {
@@ -179,7 +229,9 @@ public class FileProcessingAsyncListener {
         } catch (Throwable e) {
             log.error("Error extracting content from: " + file, e);
         }
-        log.info(MessageFormat.format("File content extracted in {0}ms: " + file.getId(), System.currentTimeMillis() - startTime));
+        long duration = System.currentTimeMillis() - startTime;
+        fileProcessingService.recordStage("content", duration);
+        log.info(MessageFormat.format("File content extracted in {0}ms: " + file.getId(), duration));
 
         return content;
     }
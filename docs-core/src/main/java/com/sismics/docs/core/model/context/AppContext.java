@@ -8,8 +8,13 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.AuditLogRetentionService;
+import com.sismics.docs.core.service.AuditLogService;
+import com.sismics.docs.core.service.AuthenticationTokenService;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
 import com.sismics.util.ClasspathScanner;
@@ -65,6 +70,31 @@ public class AppContext {
      */
     private FileService fileService;
 
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
+    /**
+     * Authentication token service.
+     */
+    private AuthenticationTokenService authenticationTokenService;
+
+    /**
+     * Webhook service.
+     */
+    private WebhookService webhookService;
+
+    /**
+     * Audit log service.
+     */
+    private AuditLogService auditLogService;
+
+    /**
+     * Audit log retention service.
+     */
+    private AuditLogRetentionService auditLogRetentionService;
+
     /**
      * Asynchronous executors.
      */
@@ -76,6 +106,16 @@ public class AppContext {
     private void startUp() {
         resetEventBus();
 
+        // Start audit log service
+        auditLogService = new AuditLogService();
+        auditLogService.startAsync();
+        auditLogService.awaitRunning();
+
+        // Start file processing service
+        fileProcessingService = new FileProcessingService();
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
         // Start indexing handler
         try {
             List<Class<? extends IndexingHandler>> indexingHandlerList = Lists.newArrayList(
@@ -102,6 +142,21 @@ public class AppContext {
         inboxService.startAsync();
         inboxService.awaitRunning();
 
+        // Start authentication token service
+        authenticationTokenService = new AuthenticationTokenService();
+        authenticationTokenService.startAsync();
+        authenticationTokenService.awaitRunning();
+
+        // Start webhook service
+        webhookService = new WebhookService();
+        webhookService.startAsync();
+        webhookService.awaitRunning();
+
+        // Start audit log retention service
+        auditLogRetentionService = new AuditLogRetentionService();
+        auditLogRetentionService.startAsync();
+        auditLogRetentionService.awaitRunning();
+
         // Register fonts
         PdfUtil.registerFonts();
 
@@ -191,6 +246,9 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
+        if (fileProcessingService != null) {
+            queueSize += fileProcessingService.getOutstandingCount();
+        }
         return queueSize;
     }
 
@@ -214,6 +272,26 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
+    public AuthenticationTokenService getAuthenticationTokenService() {
+        return authenticationTokenService;
+    }
+
+    public WebhookService getWebhookService() {
+        return webhookService;
+    }
+
+    public AuditLogService getAuditLogService() {
+        return auditLogService;
+    }
+
+    public AuditLogRetentionService getAuditLogRetentionService() {
+        return auditLogRetentionService;
+    }
+
     public void shutDown() {
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
@@ -225,6 +303,26 @@ public class AppContext {
             }
         }
 
+        if (authenticationTokenService != null) {
+            authenticationTokenService.stopAsync();
+            authenticationTokenService.awaitTerminated();
+        }
+
+        if (webhookService != null) {
+            webhookService.stopAsync();
+            webhookService.awaitTerminated();
+        }
+
+        if (auditLogRetentionService != null) {
+            auditLogRetentionService.stopAsync();
+            auditLogRetentionService.awaitTerminated();
+        }
+
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
         if (indexingHandler != null) {
             indexingHandler.shutDown();
         }
@@ -238,6 +336,11 @@ public class AppContext {
             fileService.stopAsync();
         }
 
+        if (auditLogService != null) {
+            auditLogService.stopAsync();
+            auditLogService.awaitTerminated();
+        }
+
         instance = null;
     }
 }
@@ -1,5 +1,6 @@
 package com.sismics.docs.core.model.jpa;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -16,6 +17,7 @@ import com.sismics.docs.core.constant.ConfigType;
  * @author jtremeaux
  */
 @Entity
+@Cacheable
 @Table(name = "T_CONFIG")
 public class Config {
     /**
@@ -8,6 +8,13 @@ import java.util.Date;
  * @author bgamard
  */
 public interface Loggable {
+    /**
+     * Get the ID of this entity.
+     *
+     * @return ID
+     */
+    String getId();
+
     /**
      * Get a string representation of this entity for logging purpose.
      * Avoid returning sensitive data like passwords.
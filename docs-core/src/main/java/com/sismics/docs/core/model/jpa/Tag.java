@@ -2,6 +2,7 @@ package com.sismics.docs.core.model.jpa;
 
 import java.util.Date;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -15,6 +16,7 @@ import com.google.common.base.MoreObjects;
  * @author bgamard
  */
 @Entity
+@Cacheable
 @Table(name = "T_TAG")
 public class Tag implements Loggable {
     /**
@@ -2,6 +2,7 @@ package com.sismics.docs.core.model.jpa;
 
 import com.google.common.base.MoreObjects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -14,6 +15,7 @@ import java.util.Date;
  * @author jtremeaux
  */
 @Entity
+@Cacheable
 @Table(name = "T_USER")
 public class User implements Loggable {
     /**
@@ -1,5 +1,6 @@
 package com.sismics.docs.core.model.jpa;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -13,6 +14,7 @@ import com.google.common.base.MoreObjects;
  * @author bgamard
  */
 @Entity
+@Cacheable
 @Table(name = "T_VOCABULARY")
 public class Vocabulary {
     /**
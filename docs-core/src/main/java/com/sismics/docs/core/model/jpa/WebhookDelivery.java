@@ -0,0 +1,148 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.WebhookEvent;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Webhook delivery entity, waiting to be delivered.
+ *
+ * @author bgamard
+ */
+@Entity
+@Table(name = "T_WEBHOOK_DELIVERY")
+public class WebhookDelivery {
+    /**
+     * Webhook delivery ID.
+     */
+    @Id
+    @Column(name = "WHD_ID_C", nullable = false, length = 36)
+    private String id;
+
+    /**
+     * Webhook ID.
+     */
+    @Column(name = "WHD_IDWEBHOOK_C", nullable = false, length = 36)
+    private String webhookId;
+
+    /**
+     * Event.
+     */
+    @Column(name = "WHD_EVENT_C", nullable = false, length = 50)
+    @Enumerated(EnumType.STRING)
+    private WebhookEvent event;
+
+    /**
+     * ID of the document or file.
+     */
+    @Column(name = "WHD_ENTITYID_C", nullable = false, length = 36)
+    private String entityId;
+
+    /**
+     * Number of failed attempts.
+     */
+    @Column(name = "WHD_ATTEMPT_N", nullable = false)
+    private Integer attempt;
+
+    /**
+     * Date of the next attempt.
+     */
+    @Column(name = "WHD_NEXTDATE_D", nullable = false)
+    private Date nextDate;
+
+    /**
+     * Error of the last attempt.
+     */
+    @Column(name = "WHD_ERROR_C", length = 500)
+    private String error;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "WHD_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    public String getId() {
+        return id;
+    }
+
+    public WebhookDelivery setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getWebhookId() {
+        return webhookId;
+    }
+
+    public WebhookDelivery setWebhookId(String webhookId) {
+        this.webhookId = webhookId;
+        return this;
+    }
+
+    public WebhookEvent getEvent() {
+        return event;
+    }
+
+    public WebhookDelivery setEvent(WebhookEvent event) {
+        this.event = event;
+        return this;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public WebhookDelivery setEntityId(String entityId) {
+        this.entityId = entityId;
+        return this;
+    }
+
+    public Integer getAttempt() {
+        return attempt;
+    }
+
+    public WebhookDelivery setAttempt(Integer attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
+    public Date getNextDate() {
+        return nextDate;
+    }
+
+    public WebhookDelivery setNextDate(Date nextDate) {
+        this.nextDate = nextDate;
+        return this;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public WebhookDelivery setError(String error) {
+        this.error = error;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public WebhookDelivery setCreateDate(Date createDate) {
+        this.createDate = createDate;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("webhookId", webhookId)
+                .add("event", event)
+                .add("entityId", entityId)
+                .toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.AuditLogDao;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Audit log retention service.
+ * Audit logs older than the retention period are deleted in small transactions.
+ *
+ * @author bgamard
+ */
+public class AuditLogRetentionService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuditLogRetentionService.class);
+
+    /**
+     * Maximum number of audit logs deleted in one transaction.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Number of days the audit logs are kept, 0 to keep them forever.
+     */
+    private final int retention = ConfigUtil.getEnvIntegerValue(Constants.AUDIT_LOG_RETENTION_ENV, 0);
+
+    @Override
+    protected void startUp() {
+        log.info("Audit log retention service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Audit log retention service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        if (retention <= 0) {
+            return;
+        }
+
+        try {
+            purge(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retention)));
+        } catch (Throwable e) {
+            log.error("Exception during audit logs purge", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(1, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Delete the audit logs created before a date, chunk by chunk.
+     *
+     * @param before Date
+     * @return Number of deleted audit logs
+     */
+    public int purge(Date before) {
+        AuditLogDao auditLogDao = new AuditLogDao();
+        AtomicInteger chunkCount = new AtomicInteger();
+        int count = 0;
+        do {
+            chunkCount.set(-1);
+            TransactionUtil.handle(() -> chunkCount.set(auditLogDao.deleteBefore(before, CHUNK_SIZE)));
+            if (chunkCount.get() < 0) {
+                // The chunk has been rolled back, retry on the next iteration
+                log.error("Error deleting the audit logs created before " + before);
+                break;
+            }
+            count += chunkCount.get();
+        } while (chunkCount.get() == CHUNK_SIZE && isRunning());
+
+        if (count > 0) {
+            log.info("Deleted " + count + " audit logs created before " + before);
+        }
+        return count;
+    }
+
+    /**
+     * Delete the audit logs of deleted entities, chunk by chunk.
+     * Chunks are deleted in their own transactions, in a separate thread so the transaction of the caller is left untouched.
+     *
+     * @return Number of deleted audit logs
+     * @throws Exception e
+     */
+    public int purgeOrphans() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(this::deleteOrphans).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Delete the audit logs of deleted entities, one transaction per chunk.
+     *
+     * @return Number of deleted audit logs
+     */
+    private int deleteOrphans() {
+        AuditLogDao auditLogDao = new AuditLogDao();
+        List<String> auditLogIdList = new ArrayList<>();
+        AtomicInteger chunkCount = new AtomicInteger();
+        String lastAuditLogId = null;
+        int count = 0;
+        do {
+            String fromId = lastAuditLogId;
+            auditLogIdList.clear();
+            chunkCount.set(-1);
+            TransactionUtil.handle(() -> {
+                auditLogIdList.addAll(auditLogDao.findIdList(fromId, CHUNK_SIZE));
+                chunkCount.set(auditLogDao.deleteOrphan(auditLogIdList));
+            });
+            if (chunkCount.get() < 0) {
+                throw new IllegalStateException("Error deleting the orphan audit logs after " + fromId);
+            }
+            count += chunkCount.get();
+            if (!auditLogIdList.isEmpty()) {
+                lastAuditLogId = auditLogIdList.get(auditLogIdList.size() - 1);
+            }
+        } while (auditLogIdList.size() == CHUNK_SIZE);
+        return count;
+    }
+}
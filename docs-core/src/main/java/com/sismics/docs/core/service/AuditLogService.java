@@ -0,0 +1,181 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Audit log service.
+ * Audit logs are buffered after the commit of their transaction and written in batches.
+ * When the buffer is full, the committing threads wait for the writer.
+ *
+ * @author bgamard
+ */
+public class AuditLogService extends AbstractExecutionThreadService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuditLogService.class);
+
+    /**
+     * Maximum time to wait for room in the buffer before writing in the current thread (in milliseconds).
+     */
+    private final int bufferTimeout;
+
+    /**
+     * Maximum time between the commit and the write of an audit log (in milliseconds).
+     */
+    private final int flushInterval;
+
+    /**
+     * Maximum number of audit logs written in one batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Audit logs waiting to be written.
+     */
+    private final BlockingQueue<AuditLog> buffer;
+
+    /**
+     * Create the service configured from the environment.
+     */
+    public AuditLogService() {
+        this(ConfigUtil.getEnvIntegerValue(Constants.AUDIT_LOG_BUFFER_SIZE_ENV, 10000),
+                ConfigUtil.getEnvIntegerValue(Constants.AUDIT_LOG_BATCH_SIZE_ENV, 500),
+                ConfigUtil.getEnvIntegerValue(Constants.AUDIT_LOG_FLUSH_INTERVAL_ENV, 1000),
+                10000);
+    }
+
+    /**
+     * Create the service.
+     *
+     * @param bufferSize Maximum number of audit logs waiting to be written
+     * @param batchSize Maximum number of audit logs written in one batch
+     * @param flushInterval Maximum time between the commit and the write of an audit log (in milliseconds)
+     * @param bufferTimeout Maximum time to wait for room in the buffer (in milliseconds)
+     */
+    public AuditLogService(int bufferSize, int batchSize, int flushInterval, int bufferTimeout) {
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.bufferTimeout = bufferTimeout;
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Audit log service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Audit log service shutting down");
+        List<AuditLog> batch = new ArrayList<>();
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    @Override
+    protected void run() {
+        while (isRunning()) {
+            try {
+                List<AuditLog> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                // The remaining audit logs are written on shut down
+                return;
+            } catch (Throwable e) {
+                log.error("Exception during audit logs writing", e);
+            }
+        }
+    }
+
+    /**
+     * Wait for the next batch, until it is full or the flush interval is elapsed.
+     *
+     * @return Audit logs to write
+     * @throws InterruptedException e
+     */
+    private List<AuditLog> nextBatch() throws InterruptedException {
+        List<AuditLog> batch = new ArrayList<>();
+        AuditLog auditLog = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (auditLog == null) {
+            return batch;
+        }
+        batch.add(auditLog);
+
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while (batch.size() < batchSize) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            long timeout = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || timeout <= 0) {
+                break;
+            }
+            auditLog = buffer.poll(timeout, TimeUnit.MILLISECONDS);
+            if (auditLog == null) {
+                break;
+            }
+            batch.add(auditLog);
+        }
+        return batch;
+    }
+
+    /**
+     * Add committed audit logs to the buffer.
+     *
+     * @param auditLogList Audit logs
+     */
+    public void add(List<AuditLog> auditLogList) {
+        if (!isRunning()) {
+            write(auditLogList);
+            return;
+        }
+
+        for (int i = 0; i < auditLogList.size(); i++) {
+            boolean added;
+            try {
+                added = buffer.offer(auditLogList.get(i), bufferTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                added = false;
+            }
+            if (!added) {
+                log.warn("Audit log buffer full, writing " + (auditLogList.size() - i) + " audit logs in the current thread");
+                write(auditLogList.subList(i, auditLogList.size()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write audit logs in a new entity manager and transaction.
+     * The thread context of the calling thread is never used, it may be closing a request.
+     *
+     * @param auditLogList Audit logs
+     */
+    protected void write(List<AuditLog> auditLogList) {
+        AuditLogUtil.writeBatch(auditLogList);
+    }
+
+    /**
+     * Returns the number of audit logs waiting to be written.
+     *
+     * @return Number of audit logs
+     */
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.dao.AuthenticationTokenDao;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication token service.
+ * Last connection dates are written behind in batches, out of the requests.
+ *
+ * @author bgamard
+ */
+public class AuthenticationTokenService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationTokenService.class);
+
+    /**
+     * Last connection dates waiting to be written, by authentication token ID.
+     */
+    private final Map<String, Date> lastConnectionDateMap = new ConcurrentHashMap<>();
+
+    @Override
+    protected void startUp() {
+        log.info("Authentication token service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Authentication token service shutting down");
+        flush();
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            flush();
+        } catch (Throwable e) {
+            log.error("Exception during last connection dates flushing", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Update the last connection date of an authentication token.
+     * In unit tests, the date is written immediately.
+     *
+     * @param id Authentication token ID
+     */
+    public void updateLastConnectionDate(String id) {
+        if (EnvironmentUtil.isUnitTest()) {
+            new AuthenticationTokenDao().updateLastConnectionDate(id);
+        } else {
+            lastConnectionDateMap.put(id, new Date());
+        }
+    }
+
+    /**
+     * Write the pending last connection dates.
+     */
+    public void flush() {
+        Map<String, Date> batch = new HashMap<>();
+        for (String id : new ArrayList<>(lastConnectionDateMap.keySet())) {
+            Date lastConnectionDate = lastConnectionDateMap.remove(id);
+            if (lastConnectionDate != null) {
+                batch.put(id, lastConnectionDate);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        TransactionUtil.handle(() -> new AuthenticationTokenDao().updateLastConnectionDate(batch));
+        log.info("Last connection date updated for " + batch.size() + " authentication tokens");
+    }
+}
@@ -0,0 +1,349 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * File processing service.
+ * Thumbnails and text extraction run on dedicated thread pools, apart from the event bus,
+ * with a queue for cheap work and a queue for expensive work (OCR, conversions).
+ * Interactive work is always processed before bulk work.
+ *
+ * @author bgamard
+ */
+public class FileProcessingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Cost of a file processing task.
+     */
+    public enum Cost {
+        /**
+         * Thumbnails and text extraction.
+         */
+        CHEAP,
+
+        /**
+         * OCR and conversions.
+         */
+        EXPENSIVE
+    }
+
+    /**
+     * Executor of cheap tasks.
+     */
+    private ThreadPoolExecutor cheapExecutor;
+
+    /**
+     * Executor of expensive tasks.
+     */
+    private ThreadPoolExecutor expensiveExecutor;
+
+    /**
+     * Maximum number of outstanding tasks before bulk work waits.
+     */
+    private final int capacity = ConfigUtil.getEnvIntegerValue(Constants.FILE_PROCESSING_CAPACITY_ENV, 1000);
+
+    /**
+     * Number of queued or running tasks.
+     */
+    private final AtomicInteger outstandingCount = new AtomicInteger();
+
+    /**
+     * Sequence of the submitted tasks, to keep the submission order for the same priority.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Timings by processing stage.
+     */
+    private final Map<String, StageStatistics> stageStatisticsMap = new ConcurrentHashMap<>();
+
+    @Override
+    protected void startUp() {
+        log.info("File processing service starting up");
+        int processorCount = Runtime.getRuntime().availableProcessors();
+        cheapExecutor = newExecutor("file-processing-cheap",
+                ConfigUtil.getEnvIntegerValue(Constants.FILE_PROCESSING_CHEAP_THREADS_ENV, Math.max(processorCount / 2, 2)));
+        expensiveExecutor = newExecutor("file-processing-expensive",
+                ConfigUtil.getEnvIntegerValue(Constants.FILE_PROCESSING_EXPENSIVE_THREADS_ENV, Math.max(processorCount / 4, 1)));
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("File processing service shutting down");
+        for (ThreadPoolExecutor executor : new ThreadPoolExecutor[] { cheapExecutor, expensiveExecutor }) {
+            try {
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+        }
+    }
+
+    /**
+     * Creates a new executor ordering its tasks by priority.
+     *
+     * @param name Name of the threads
+     * @param threadCount Number of threads
+     * @return Executor
+     */
+    private ThreadPoolExecutor newExecutor(String name, int threadCount) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                1L, TimeUnit.MINUTES,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Submit a file processing task.
+     * In unit tests, the task is run synchronously.
+     *
+     * @param cost Cost of the task
+     * @param bulk True if nobody is waiting for the result
+     * @param runnable Task
+     */
+    public void submit(Cost cost, boolean bulk, Runnable runnable) {
+        FileProcessingTask task = new FileProcessingTask(cost, bulk, runnable);
+        outstandingCount.incrementAndGet();
+        if (EnvironmentUtil.isUnitTest()) {
+            task.run();
+        } else {
+            try {
+                (cost == Cost.CHEAP ? cheapExecutor : expensiveExecutor).execute(task);
+            } catch (RejectedExecutionException e) {
+                // The service is shutting down, the task will never run
+                taskDone();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Release the capacity taken by a task.
+     */
+    private void taskDone() {
+        outstandingCount.decrementAndGet();
+        synchronized (outstandingCount) {
+            outstandingCount.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until the number of outstanding tasks is below the capacity.
+     * Bulk producers call this before submitting more work, and outside of any transaction
+     * to not hold a database connection while waiting.
+     *
+     * @throws InterruptedException e
+     */
+    public void awaitCapacity() throws InterruptedException {
+        synchronized (outstandingCount) {
+            while (outstandingCount.get() >= capacity && isRunning()) {
+                log.info("File processing capacity reached, waiting for " + outstandingCount.get() + " tasks");
+                outstandingCount.wait(1000);
+            }
+        }
+    }
+
+    /**
+     * Record the duration of a processing stage.
+     *
+     * @param stage Stage name
+     * @param duration Duration (in milliseconds)
+     */
+    public void recordStage(String stage, long duration) {
+        stageStatisticsMap.computeIfAbsent(stage, k -> new StageStatistics()).record(duration);
+    }
+
+    /**
+     * Returns the number of queued or running tasks.
+     *
+     * @return Number of tasks
+     */
+    public int getOutstandingCount() {
+        return outstandingCount.get();
+    }
+
+    /**
+     * Returns the number of queued tasks.
+     *
+     * @param cost Cost of the tasks
+     * @return Number of queued tasks
+     */
+    public int getQueuedCount(Cost cost) {
+        ThreadPoolExecutor executor = cost == Cost.CHEAP ? cheapExecutor : expensiveExecutor;
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of running tasks.
+     *
+     * @param cost Cost of the tasks
+     * @return Number of running tasks
+     */
+    public int getRunningCount(Cost cost) {
+        ThreadPoolExecutor executor = cost == Cost.CHEAP ? cheapExecutor : expensiveExecutor;
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    /**
+     * Returns the maximum number of outstanding tasks before bulk work waits.
+     *
+     * @return Capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the timings by processing stage.
+     *
+     * @return Timings, sorted by stage name
+     */
+    public Map<String, StageStatistics> getStageStatistics() {
+        return new TreeMap<>(stageStatisticsMap);
+    }
+
+    /**
+     * A file processing task.
+     */
+    private class FileProcessingTask implements Runnable, Comparable<FileProcessingTask> {
+        /**
+         * Cost of the task.
+         */
+        private final Cost cost;
+
+        /**
+         * True if nobody is waiting for the result.
+         */
+        private final boolean bulk;
+
+        /**
+         * Task.
+         */
+        private final Runnable runnable;
+
+        /**
+         * Submission order.
+         */
+        private final long sequence = FileProcessingService.this.sequence.incrementAndGet();
+
+        /**
+         * Submission date (in milliseconds).
+         */
+        private final long submitDate = System.currentTimeMillis();
+
+        /**
+         * Constructor of FileProcessingTask.
+         *
+         * @param cost Cost of the task
+         * @param bulk True if nobody is waiting for the result
+         * @param runnable Task
+         */
+        private FileProcessingTask(Cost cost, boolean bulk, Runnable runnable) {
+            this.cost = cost;
+            this.bulk = bulk;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            recordStage("wait_" + cost.name().toLowerCase(), System.currentTimeMillis() - submitDate);
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                log.error("Error processing a file", e);
+            } finally {
+                taskDone();
+            }
+        }
+
+        @Override
+        public int compareTo(FileProcessingTask o) {
+            if (bulk != o.bulk) {
+                return bulk ? 1 : -1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    /**
+     * Timings of a processing stage.
+     */
+    public static class StageStatistics {
+        /**
+         * Number of runs.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Total duration (in milliseconds).
+         */
+        private final LongAdder totalTime = new LongAdder();
+
+        /**
+         * Maximum duration (in milliseconds).
+         */
+        private final AtomicLong maxTime = new AtomicLong();
+
+        /**
+         * Record a run.
+         *
+         * @param duration Duration (in milliseconds)
+         */
+        private void record(long duration) {
+            count.increment();
+            totalTime.add(duration);
+            maxTime.accumulateAndGet(duration, Math::max);
+        }
+
+        /**
+         * Returns the number of runs.
+         *
+         * @return Number of runs
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the total duration.
+         *
+         * @return Total duration (in milliseconds)
+         */
+        public long getTotalTime() {
+            return totalTime.sum();
+        }
+
+        /**
+         * Returns the maximum duration.
+         *
+         * @return Maximum duration (in milliseconds)
+         */
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package com.sismics.docs.core.service;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.DocumentCreatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.Tag;
@@ -17,35 +22,99 @@ import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.EmailUtil;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.mail.*;
+import javax.mail.internet.MimeMessage;
 import javax.mail.search.FlagTerm;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Inbox scanning service.
+ * The inbox stays opened and new messages are waited for with IMAP IDLE, or polled if the server doesn't support it.
+ * Messages are imported in parallel, each in its own transaction.
+ * The UID of the last imported message is stored to skip the older messages.
  *
  * @author bgamard
  */
-public class InboxService extends AbstractScheduledService {
+public class InboxService extends AbstractExecutionThreadService {
     /**
      * Logger.
      */
     private static final Logger log = LoggerFactory.getLogger(InboxService.class);
 
+    /**
+     * Maximum number of import attempts of a message.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Delay between two synchronizations without IMAP IDLE, and maximum duration of an IMAP IDLE (in seconds).
+     */
+    private final int pollInterval = ConfigUtil.getEnvIntegerValue(Constants.INBOX_POLL_INTERVAL_ENV, 60);
+
+    /**
+     * Number of messages imported in parallel.
+     */
+    private final int threadCount = ConfigUtil.getEnvIntegerValue(Constants.INBOX_IMPORT_THREADS_ENV, 4);
+
+    /**
+     * Executor importing the messages.
+     */
+    private final ExecutorService importExecutor = Executors.newFixedThreadPool(threadCount,
+            new ThreadFactoryBuilder().setNameFormat("inbox-import-%d").setDaemon(true).build());
+
+    /**
+     * Executor ending the IMAP IDLE after the polling interval.
+     */
+    private final ScheduledExecutorService idleExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("inbox-idle-%d").setDaemon(true).build());
+
+    /**
+     * Lock waited on between two synchronizations.
+     */
+    private final Object waitLock = new Object();
+
+    /**
+     * Inbox kept opened by the service.
+     */
+    private volatile Folder openedInbox;
+
+    /**
+     * Failed import attempts by message UID.
+     */
+    private final Map<Long, Integer> attemptMap = new ConcurrentHashMap<>();
+
     /**
      * Last synchronization data.
      */
-    private Date lastSyncDate;
-    private int lastSyncMessageCount = 0;
-    private String lastSyncError;
+    private volatile Date lastSyncDate;
+    private volatile int lastSyncMessageCount = 0;
+    private volatile int lastSyncFailureCount = 0;
+    private volatile long lastSyncDuration = 0;
+    private volatile String lastSyncError;
+
+    /**
+     * Import statistics.
+     */
+    private final LongAdder importedCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong lastLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
 
     public InboxService() {
     }
@@ -58,59 +127,227 @@ public class InboxService extends AbstractScheduledService {
     @Override
     protected void shutDown() {
         log.info("Inbox service shutting down");
+        idleExecutor.shutdownNow();
+        importExecutor.shutdown();
     }
-    
+
     @Override
-    protected void runOneIteration() {
+    protected void triggerShutdown() {
+        closeInbox(openedInbox, false);
+        synchronized (waitLock) {
+            waitLock.notifyAll();
+        }
+    }
+
+    @Override
+    protected void run() {
+        while (isRunning()) {
+            try {
+                // In unit tests, the inbox is only synchronized on demand
+                InboxConfig config = EnvironmentUtil.isUnitTest() ? null : loadConfig();
+                if (config != null && config.enabled) {
+                    listen(config);
+                } else {
+                    waitFor(pollInterval);
+                }
+            } catch (Throwable e) {
+                log.error("Exception during inbox synching", e);
+                lastSyncError = e.getMessage();
+                waitFor(pollInterval);
+            }
+        }
+    }
+
+    /**
+     * Keep the inbox opened and synchronize it on each new message, until the configuration changes.
+     *
+     * @param config Inbox configuration
+     * @throws Exception e
+     */
+    private void listen(InboxConfig config) throws Exception {
+        Folder inbox = openInbox(config);
+        openedInbox = inbox;
         try {
-            syncInbox();
-        } catch (Throwable e) {
-            log.error("Exception during inbox synching", e);
+            boolean idleSupported = inbox instanceof IMAPFolder && ((IMAPStore) inbox.getStore()).hasCapability("IDLE");
+            log.info("Listening to the IMAP inbox " + (idleSupported ? "with IMAP IDLE" : "by polling"));
+            while (isRunning()) {
+                syncInbox(inbox, config);
+                if (idleSupported) {
+                    idle((IMAPFolder) inbox);
+                } else {
+                    waitFor(pollInterval);
+                }
+
+                InboxConfig newConfig = loadConfig();
+                if (!newConfig.enabled || !newConfig.connection.equals(config.connection)) {
+                    return;
+                }
+                config = newConfig;
+            }
+        } catch (FolderClosedException | StoreClosedException e) {
+            // The connection is lost, it will be opened again
+            log.info("IMAP inbox connection closed");
+        } finally {
+            openedInbox = null;
+            closeInbox(inbox, false);
         }
     }
 
     /**
-     * Synchronize the inbox.
+     * Wait for new messages with IMAP IDLE, at most for the polling interval.
+     *
+     * @param inbox Opened inbox
+     * @throws MessagingException e
      */
-    public void syncInbox() {
-        TransactionUtil.handle(() -> {
-            Boolean enabled = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED);
-            if (!enabled) {
+    private void idle(IMAPFolder inbox) throws MessagingException {
+        // Any command on the folder ends the IMAP IDLE
+        ScheduledFuture<?> timeout = idleExecutor.schedule(() -> {
+            try {
+                inbox.doCommand(protocol -> {
+                    protocol.simpleCommand("NOOP", null);
+                    return null;
+                });
+            } catch (MessagingException e) {
+                // NOP
+            }
+        }, pollInterval, TimeUnit.SECONDS);
+
+        try {
+            inbox.idle(true);
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Wait before the next synchronization, unless the service is stopping.
+     *
+     * @param seconds Time to wait (in seconds)
+     */
+    private void waitFor(int seconds) {
+        synchronized (waitLock) {
+            if (!isRunning()) {
                 return;
             }
+            try {
+                waitLock.wait(TimeUnit.SECONDS.toMillis(seconds));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-            log.info("Synchronizing IMAP inbox...");
-            Folder inbox = null;
-            lastSyncError = null;
+    /**
+     * Synchronize the inbox, with a new connection.
+     */
+    public void syncInbox() {
+        InboxConfig config = loadConfig();
+        if (!config.enabled) {
+            return;
+        }
+
+        Folder inbox = null;
+        try {
+            inbox = openInbox(config);
+            syncInbox(inbox, config);
+        } catch (FolderClosedException e) {
+            // Ignore this, we will just continue importing on the next cycle
+        } catch (Exception e) {
+            log.error("Error syncing the inbox", e);
             lastSyncDate = new Date();
-            lastSyncMessageCount = 0;
-            try {
-                Map<String, String> tagsNameToId = getAllTags();
-
-                inbox = openInbox();
-                Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
-                log.info(messages.length + " messages found");
-                for (Message message : messages) {
-                    importMessage(message, tagsNameToId);
-                    lastSyncMessageCount++;
-                }
-            } catch (FolderClosedException e) {
-                // Ignore this, we will just continue importing on the next cycle
-            } catch (Exception e) {
-                log.error("Error syncing the inbox", e);
-                lastSyncError = e.getMessage();
-            } finally {
-                try {
-                    if (inbox != null) {
-                        // The parameter controls if the messages flagged to be deleted, should actually get deleted.
-                        inbox.close(ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED));
-                        inbox.getStore().close();
+            lastSyncError = e.getMessage();
+        } finally {
+            closeInbox(inbox, config.deleteImported);
+        }
+    }
+
+    /**
+     * Import the unread messages after the last imported one.
+     *
+     * @param inbox Opened inbox
+     * @param config Inbox configuration
+     * @throws Exception e
+     */
+    private synchronized void syncInbox(Folder inbox, InboxConfig config) throws Exception {
+        log.info("Synchronizing IMAP inbox...");
+        long startTime = System.currentTimeMillis();
+        lastSyncError = null;
+        lastSyncDate = new Date();
+        lastSyncMessageCount = 0;
+        lastSyncFailureCount = 0;
+        int messageCount = 0;
+        int messageFailureCount = 0;
+
+        // The UIDs are valid for this mailbox and UID validity only
+        UIDFolder uidFolder = (UIDFolder) inbox;
+        String mailbox = config.connection + ";" + uidFolder.getUIDValidity();
+        long lastUid = getLastUid(mailbox);
+
+        // Search for the unread messages after the last imported one
+        Message[] messages = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        FetchProfile fetchProfile = new FetchProfile();
+        fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+        fetchProfile.add(FetchProfile.Item.FLAGS);
+        inbox.fetch(messages, fetchProfile);
+        List<Message> messageList = new ArrayList<>();
+        for (Message message : messages) {
+            if (uidFolder.getUID(message) > lastUid && !message.isSet(Flags.Flag.SEEN)) {
+                messageList.add(message);
+            }
+        }
+        log.info(messageList.size() + " messages found");
+
+        AtomicReference<Map<String, String>> tagsNameToId = new AtomicReference<>();
+        TransactionUtil.handle(() -> tagsNameToId.set(getAllTags()));
+
+        // Import the messages by chunks, the last imported UID is stored after each chunk
+        boolean retrying = false;
+        for (List<Message> chunk : Lists.partition(messageList, threadCount * 2)) {
+            // The messages are downloaded by the folder connection, and imported in parallel
+            Map<Message, Future<Boolean>> importMap = new LinkedHashMap<>();
+            for (Message message : chunk) {
+                MimeMessage mimeMessage = new MimeMessage((MimeMessage) message);
+                Date receivedDate = message.getReceivedDate();
+                importMap.put(message, importExecutor.submit(() -> importMessage(mimeMessage, receivedDate, tagsNameToId.get())));
+            }
+
+            for (Map.Entry<Message, Future<Boolean>> entry : importMap.entrySet()) {
+                Message message = entry.getKey();
+                long uid = uidFolder.getUID(message);
+                if (entry.getValue().get()) {
+                    attemptMap.remove(uid);
+                    if (config.deleteImported) {
+                        message.setFlag(Flags.Flag.DELETED, true);
                     }
-                } catch (Exception e) {
-                    // NOP
+                    messageCount++;
+                } else {
+                    messageFailureCount++;
+                    int attempt = attemptMap.merge(uid, 1, Integer::sum);
+                    if (attempt < MAX_ATTEMPTS) {
+                        // Keep the message unread, it will be imported again on the next synchronization
+                        message.setFlag(Flags.Flag.SEEN, false);
+                        retrying = true;
+                    } else {
+                        log.error("Giving up importing message UID " + uid + " after " + attempt + " attempts");
+                        attemptMap.remove(uid);
+                    }
+                }
+
+                // The UIDs after a message to retry are unread or already imported
+                if (!retrying) {
+                    lastUid = uid;
                 }
             }
-        });
+            saveLastUid(mailbox, lastUid);
+        }
+
+        if (config.deleteImported && messageCount > 0 && openedInbox == inbox) {
+            inbox.expunge();
+        }
+
+        lastSyncMessageCount = messageCount;
+        lastSyncFailureCount = messageFailureCount;
+        lastSyncDuration = System.currentTimeMillis() - startTime;
     }
 
     /**
@@ -119,45 +356,58 @@ public class InboxService extends AbstractScheduledService {
      * @return Number of messages currently in the remote inbox
      */
     public int testInbox() {
-        Boolean enabled = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED);
-        if (!enabled) {
+        InboxConfig config = loadConfig();
+        if (!config.enabled) {
             return -1;
         }
 
         Folder inbox = null;
         try {
-            inbox = openInbox();
+            inbox = openInbox(config);
             return inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false)).length;
         } catch (Exception e) {
             log.error("Error testing inbox", e);
             return -1;
         } finally {
-            try {
-                if (inbox != null) {
-                    inbox.close(false);
-                    inbox.getStore().close();
-                }
-            } catch (Exception e) {
-                // NOP
-            }
+            closeInbox(inbox, false);
         }
     }
 
-    @Override
-    protected Scheduler scheduler() {
-        return Scheduler.newFixedDelaySchedule(0, 1, TimeUnit.MINUTES);
+    /**
+     * Read the inbox configuration.
+     *
+     * @return Inbox configuration
+     */
+    private InboxConfig loadConfig() {
+        InboxConfig config = new InboxConfig();
+        TransactionUtil.handle(() -> {
+            config.enabled = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED);
+            if (!config.enabled) {
+                return;
+            }
+            config.hostname = ConfigUtil.getConfigStringValue(ConfigType.INBOX_HOSTNAME);
+            config.port = ConfigUtil.getConfigStringValue(ConfigType.INBOX_PORT);
+            config.username = ConfigUtil.getConfigStringValue(ConfigType.INBOX_USERNAME);
+            config.password = ConfigUtil.getConfigStringValue(ConfigType.INBOX_PASSWORD);
+            config.folder = ConfigUtil.getConfigStringValue(ConfigType.INBOX_FOLDER);
+            config.deleteImported = ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED);
+            config.connection = Hashing.sha256().hashString(config.hostname + ":" + config.port + "\n"
+                    + config.username + "\n" + config.password + "\n" + config.folder, Charsets.UTF_8).toString();
+        });
+        return config;
     }
 
     /**
      * Open the remote inbox.
      *
+     * @param config Inbox configuration
      * @return Opened inbox folder
      * @throws Exception e
      */
-    private Folder openInbox() throws Exception {
+    private Folder openInbox(InboxConfig config) throws Exception {
         Properties properties = new Properties();
-        String port = ConfigUtil.getConfigStringValue(ConfigType.INBOX_PORT);
-        properties.put("mail.imap.host", ConfigUtil.getConfigStringValue(ConfigType.INBOX_HOSTNAME));
+        String port = config.port;
+        properties.put("mail.imap.host", config.hostname);
         properties.put("mail.imap.port", port);
         boolean isSsl = "993".equals(port);
         properties.put("mail.imap.ssl.enable", String.valueOf(isSsl));
@@ -178,14 +428,113 @@ public class InboxService extends AbstractScheduledService {
         Session session = Session.getInstance(properties);
 
         Store store = session.getStore("imap");
-        store.connect(ConfigUtil.getConfigStringValue(ConfigType.INBOX_USERNAME),
-                ConfigUtil.getConfigStringValue(ConfigType.INBOX_PASSWORD));
+        store.connect(config.username, config.password);
 
-        Folder inbox = store.getFolder(ConfigUtil.getConfigStringValue(ConfigType.INBOX_FOLDER));
+        Folder inbox = store.getFolder(config.folder);
         inbox.open(Folder.READ_WRITE);
         return inbox;
     }
 
+    /**
+     * Close the remote inbox.
+     *
+     * @param inbox Inbox folder, may be null
+     * @param expunge True to remove the messages flagged as deleted
+     */
+    private void closeInbox(Folder inbox, boolean expunge) {
+        try {
+            if (inbox != null) {
+                if (inbox.isOpen()) {
+                    inbox.close(expunge);
+                }
+                inbox.getStore().close();
+            }
+        } catch (Exception e) {
+            // NOP
+        }
+    }
+
+    /**
+     * Returns the UID of the last imported message.
+     *
+     * @param mailbox Mailbox and UID validity
+     * @return Last imported UID, 0 if no message was imported in this mailbox
+     */
+    private long getLastUid(String mailbox) {
+        AtomicLong lastUid = new AtomicLong();
+        TransactionUtil.handle(() -> {
+            ConfigDao configDao = new ConfigDao();
+            Config mailboxConfig = configDao.getById(ConfigType.INBOX_MAILBOX);
+            Config lastUidConfig = configDao.getById(ConfigType.INBOX_LAST_UID);
+            if (mailboxConfig != null && mailbox.equals(mailboxConfig.getValue()) && lastUidConfig != null) {
+                lastUid.set(Long.parseLong(lastUidConfig.getValue()));
+            }
+        });
+        return lastUid.get();
+    }
+
+    /**
+     * Store the UID of the last imported message.
+     *
+     * @param mailbox Mailbox and UID validity
+     * @param lastUid Last imported UID
+     */
+    private void saveLastUid(String mailbox, long lastUid) {
+        TransactionUtil.handle(() -> {
+            ConfigDao configDao = new ConfigDao();
+            configDao.update(ConfigType.INBOX_MAILBOX, mailbox);
+            configDao.update(ConfigType.INBOX_LAST_UID, Long.toString(lastUid));
+        });
+    }
+
+    /**
+     * Import an email in its own transaction.
+     *
+     * @param message Downloaded message
+     * @param receivedDate Date the message was received by the server
+     * @param tags Tags by name, null if disabled
+     * @return True if the message is imported
+     */
+    private boolean importMessage(MimeMessage message, Date receivedDate, Map<String, String> tags) {
+        long startTime = System.currentTimeMillis();
+        try {
+            // Do not pile up more work than the file processing can handle, before opening the transaction
+            AppContext.getInstance().getFileProcessingService().awaitCapacity();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        AtomicBoolean imported = new AtomicBoolean();
+        try {
+            TransactionUtil.handle(() -> {
+                try {
+                    importMessage(message, tags);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                imported.set(true);
+            });
+        } catch (Exception e) {
+            log.error("Error importing a message", e);
+            imported.set(false);
+        }
+
+        if (!imported.get()) {
+            failureCount.increment();
+            return false;
+        }
+
+        importedCount.increment();
+        totalTime.add(System.currentTimeMillis() - startTime);
+        if (receivedDate != null) {
+            long lag = System.currentTimeMillis() - receivedDate.getTime();
+            lastLag.set(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+        }
+        return true;
+    }
+
     /**
      * Import an email.
      *
@@ -262,11 +611,7 @@ public class InboxService extends AbstractScheduledService {
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
             FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
-                    document.getLanguage(), "admin", document.getId());
-        }
-
-        if (ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED)) {
-            message.setFlag(Flags.Flag.DELETED, true);
+                    document.getLanguage(), "admin", document.getId(), true);
         }
     }
 
@@ -289,15 +634,147 @@ public class InboxService extends AbstractScheduledService {
         return tagsNameToId;
     }
 
+    /**
+     * Returns the date of the last synchronization.
+     *
+     * @return Last synchronization date, null if the inbox was never synchronized
+     */
     public Date getLastSyncDate() {
         return lastSyncDate;
     }
 
+    /**
+     * Returns the number of messages imported by the last synchronization.
+     *
+     * @return Number of messages
+     */
     public int getLastSyncMessageCount() {
         return lastSyncMessageCount;
     }
 
+    /**
+     * Returns the number of messages which failed to import during the last synchronization.
+     *
+     * @return Number of messages
+     */
+    public int getLastSyncFailureCount() {
+        return lastSyncFailureCount;
+    }
+
+    /**
+     * Returns the duration of the last synchronization.
+     *
+     * @return Duration (in milliseconds)
+     */
+    public long getLastSyncDuration() {
+        return lastSyncDuration;
+    }
+
+    /**
+     * Returns the error of the last synchronization.
+     *
+     * @return Error message, null if the last synchronization succeeded
+     */
     public String getLastSyncError() {
         return lastSyncError;
     }
+
+    /**
+     * Returns true if the inbox is kept opened.
+     *
+     * @return True if listening to the inbox
+     */
+    public boolean isListening() {
+        return openedInbox != null;
+    }
+
+    /**
+     * Returns the number of imported messages since startup.
+     *
+     * @return Number of messages
+     */
+    public long getImportedCount() {
+        return importedCount.sum();
+    }
+
+    /**
+     * Returns the number of failed imports since startup.
+     *
+     * @return Number of failed imports
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Returns the total duration of the imports since startup.
+     *
+     * @return Total duration (in milliseconds)
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * Returns the delay between the reception and the import of the last imported message.
+     *
+     * @return Delay (in milliseconds)
+     */
+    public long getLastLag() {
+        return lastLag.get();
+    }
+
+    /**
+     * Returns the maximum delay between the reception and the import of a message.
+     *
+     * @return Delay (in milliseconds)
+     */
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    /**
+     * Inbox configuration.
+     */
+    private static class InboxConfig {
+        /**
+         * True if the inbox scanning is enabled.
+         */
+        private boolean enabled;
+
+        /**
+         * IMAP hostname.
+         */
+        private String hostname;
+
+        /**
+         * IMAP port.
+         */
+        private String port;
+
+        /**
+         * IMAP username.
+         */
+        private String username;
+
+        /**
+         * IMAP password.
+         */
+        private String password;
+
+        /**
+         * Folder to scan.
+         */
+        private String folder;
+
+        /**
+         * True to delete the imported messages.
+         */
+        private boolean deleteImported;
+
+        /**
+         * Hash of the connection parameters.
+         */
+        private String connection;
+    }
 }
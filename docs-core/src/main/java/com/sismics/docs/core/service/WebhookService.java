@@ -0,0 +1,434 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.WebhookEvent;
+import com.sismics.docs.core.dao.WebhookDeliveryDao;
+import com.sismics.docs.core.dao.dto.WebhookDeliveryDto;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import okhttp3.*;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Webhook service.
+ * Events are stored in an outbox table and POST-ed to the webhooks by the service thread,
+ * with a limited number of concurrent calls by webhook.
+ * Failed deliveries are retried with an exponential backoff.
+ *
+ * @author bgamard
+ */
+public class WebhookService extends AbstractExecutionThreadService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(WebhookService.class);
+
+    /**
+     * JSON media type.
+     */
+    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    /**
+     * Maximum number of events sent in one call.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum delay between two attempts (in milliseconds).
+     */
+    private static final long MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Maximum number of concurrent calls by webhook.
+     */
+    private final int concurrency = ConfigUtil.getEnvIntegerValue(Constants.WEBHOOK_CONCURRENCY_ENV, 2);
+
+    /**
+     * Time window grouping the events (in seconds), 0 to send each event alone.
+     */
+    private final int batchWindow = ConfigUtil.getEnvIntegerValue(Constants.WEBHOOK_BATCH_WINDOW_ENV, 0);
+
+    /**
+     * Delay before the first retry (in seconds).
+     */
+    private final int retryDelay = ConfigUtil.getEnvIntegerValue(Constants.WEBHOOK_RETRY_DELAY_ENV, 10);
+
+    /**
+     * Maximum number of attempts.
+     */
+    private final int maxAttempts = ConfigUtil.getEnvIntegerValue(Constants.WEBHOOK_MAX_ATTEMPTS_ENV, 10);
+
+    /**
+     * OkHttp client.
+     */
+    private static final OkHttpClient client = newClient();
+
+    /**
+     * IDs of the deliveries being sent.
+     */
+    private final Set<String> inFlightIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Statistics by webhook ID.
+     */
+    private final Map<String, EndpointStatistics> endpointStatisticsMap = new ConcurrentHashMap<>();
+
+    /**
+     * Lock waited on between two dispatches.
+     */
+    private final Object waitLock = new Object();
+
+    /**
+     * True if new deliveries are waiting to be dispatched.
+     */
+    private boolean wakeRequested = false;
+
+    /**
+     * Creates the OkHttp client.
+     *
+     * @return OkHttp client
+     */
+    private static OkHttpClient newClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64); // Limited by webhook
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .callTimeout(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Webhook service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        // The deliveries in flight stay in the outbox and will be sent again on the next startup
+        log.info("Webhook service shutting down");
+    }
+
+    @Override
+    protected void triggerShutdown() {
+        wake();
+    }
+
+    @Override
+    protected void run() {
+        while (isRunning()) {
+            try {
+                dispatch();
+            } catch (Throwable e) {
+                log.error("Exception during webhooks dispatching", e);
+            }
+            waitForDeliveries();
+        }
+    }
+
+    /**
+     * Wait for new deliveries, at most one second to check the retries due.
+     */
+    private void waitForDeliveries() {
+        synchronized (waitLock) {
+            try {
+                if (!wakeRequested && isRunning()) {
+                    waitLock.wait(TimeUnit.SECONDS.toMillis(1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                wakeRequested = false;
+            }
+        }
+    }
+
+    /**
+     * Wake up the service thread to dispatch the new deliveries.
+     */
+    private void wake() {
+        synchronized (waitLock) {
+            wakeRequested = true;
+            waitLock.notifyAll();
+        }
+    }
+
+    /**
+     * Store an event to deliver to the webhooks listening to it.
+     * Without batch window, the service thread is woken up to send it once committed.
+     *
+     * @param event Event
+     * @param entityId ID of the document or file
+     */
+    public void enqueue(WebhookEvent event, String entityId) {
+        Date nextDate = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(batchWindow));
+        TransactionUtil.handle(() -> {
+            int count = new WebhookDeliveryDao().create(event, entityId, nextDate);
+            if (count > 0 && batchWindow <= 0) {
+                ThreadLocalContext.get().addCommitTask(this::wake);
+            }
+        });
+    }
+
+    /**
+     * Send the deliveries due.
+     */
+    private void dispatch() {
+        List<WebhookDeliveryDto> webhookDeliveryDtoList = new ArrayList<>();
+        TransactionUtil.handle(() -> webhookDeliveryDtoList.addAll(new WebhookDeliveryDao().findDue(new Date(), 1000)));
+
+        // Group the deliveries by webhook
+        Map<String, List<WebhookDeliveryDto>> webhookDeliveryDtoMap = new LinkedHashMap<>();
+        for (WebhookDeliveryDto webhookDeliveryDto : webhookDeliveryDtoList) {
+            if (!inFlightIdSet.contains(webhookDeliveryDto.getId())) {
+                webhookDeliveryDtoMap.computeIfAbsent(webhookDeliveryDto.getWebhookId(), k -> new ArrayList<>()).add(webhookDeliveryDto);
+            }
+        }
+
+        for (Map.Entry<String, List<WebhookDeliveryDto>> entry : webhookDeliveryDtoMap.entrySet()) {
+            EndpointStatistics endpointStatistics = endpointStatisticsMap.computeIfAbsent(entry.getKey(), k -> new EndpointStatistics());
+            for (List<WebhookDeliveryDto> batch : Lists.partition(entry.getValue(), batchWindow > 0 ? BATCH_SIZE : 1)) {
+                if (endpointStatistics.inFlightCount.get() >= concurrency) {
+                    break;
+                }
+                send(batch, endpointStatistics);
+            }
+        }
+    }
+
+    /**
+     * Send deliveries to a webhook, without waiting for the response.
+     * In unit tests, the webhook is called synchronously.
+     *
+     * @param batch Deliveries to the same webhook
+     * @param endpointStatistics Statistics of the webhook
+     */
+    private void send(List<WebhookDeliveryDto> batch, EndpointStatistics endpointStatistics) {
+        List<String> idList = batch.stream().map(WebhookDeliveryDto::getId).collect(Collectors.toList());
+        inFlightIdSet.addAll(idList);
+        endpointStatistics.inFlightCount.incrementAndGet();
+        long startTime = System.currentTimeMillis();
+
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(batch.get(0).getUrl())
+                    .post(RequestBody.create(buildPayload(batch).toString(), JSON))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            complete(batch, idList, endpointStatistics, startTime, e.getMessage());
+            return;
+        }
+
+        if (EnvironmentUtil.isUnitTest()) {
+            try (Response response = client.newCall(request).execute()) {
+                complete(batch, idList, endpointStatistics, startTime,
+                        response.isSuccessful() ? null : "HTTP " + response.code());
+            } catch (IOException e) {
+                complete(batch, idList, endpointStatistics, startTime, e.toString());
+            }
+            return;
+        }
+
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                complete(batch, idList, endpointStatistics, startTime, e.toString());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    complete(batch, idList, endpointStatistics, startTime,
+                            response.isSuccessful() ? null : "HTTP " + response.code());
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the payload of a call.
+     * Batched events are sent as {"events": [{"event": "Event name", "id": "ID of the document or file"}]}.
+     *
+     * @param batch Deliveries
+     * @return Payload
+     */
+    private JsonObject buildPayload(List<WebhookDeliveryDto> batch) {
+        if (batchWindow <= 0) {
+            return Json.createObjectBuilder()
+                    .add("event", batch.get(0).getEvent())
+                    .add("id", batch.get(0).getEntityId())
+                    .build();
+        }
+
+        JsonArrayBuilder events = Json.createArrayBuilder();
+        for (WebhookDeliveryDto webhookDeliveryDto : batch) {
+            events.add(Json.createObjectBuilder()
+                    .add("event", webhookDeliveryDto.getEvent())
+                    .add("id", webhookDeliveryDto.getEntityId()));
+        }
+        return Json.createObjectBuilder()
+                .add("events", events)
+                .build();
+    }
+
+    /**
+     * Remove delivered deliveries from the outbox, or schedule a new attempt.
+     *
+     * @param batch Deliveries
+     * @param idList IDs of the deliveries
+     * @param endpointStatistics Statistics of the webhook
+     * @param startTime Start time of the call
+     * @param error Error, null if delivered
+     */
+    private void complete(List<WebhookDeliveryDto> batch, List<String> idList, EndpointStatistics endpointStatistics,
+                          long startTime, String error) {
+        String url = batch.get(0).getUrl();
+        long duration = System.currentTimeMillis() - startTime;
+        try {
+            WebhookDeliveryDao webhookDeliveryDao = new WebhookDeliveryDao();
+            if (error == null) {
+                TransactionUtil.handle(() -> webhookDeliveryDao.delete(idList));
+                log.info("Successfully called the webhook at: " + url + " with " + batch.size() + " events");
+                return;
+            }
+
+            int attempt = batch.stream().mapToInt(WebhookDeliveryDto::getAttempt).max().orElse(0) + 1;
+            if (attempt >= maxAttempts) {
+                TransactionUtil.handle(() -> webhookDeliveryDao.delete(idList));
+                log.error("Error calling the webhook at: " + url + ", giving up after " + attempt + " attempts: " + error);
+                return;
+            }
+
+            long delay = Math.min(TimeUnit.SECONDS.toMillis(retryDelay) << Math.min(attempt - 1, 20), MAX_RETRY_DELAY);
+            Date nextDate = new Date(System.currentTimeMillis() + delay);
+            TransactionUtil.handle(() -> webhookDeliveryDao.reschedule(idList, nextDate, StringUtils.abbreviate(error, 500)));
+            log.warn("Error calling the webhook at: " + url + ", retrying in " + delay / 1000 + "s: " + error);
+        } finally {
+            // Recorded once the outbox is updated
+            endpointStatistics.record(duration, error == null);
+            inFlightIdSet.removeAll(idList);
+            endpointStatistics.inFlightCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the statistics of a webhook.
+     *
+     * @param webhookId Webhook ID
+     * @return Statistics, null if the webhook was never called
+     */
+    public EndpointStatistics getEndpointStatistics(String webhookId) {
+        return endpointStatisticsMap.get(webhookId);
+    }
+
+    /**
+     * Statistics of the calls to a webhook.
+     */
+    public static class EndpointStatistics {
+        /**
+         * Number of calls in flight.
+         */
+        private final AtomicInteger inFlightCount = new AtomicInteger();
+
+        /**
+         * Number of calls.
+         */
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Number of failed calls.
+         */
+        private final LongAdder failureCount = new LongAdder();
+
+        /**
+         * Total duration of the calls (in milliseconds).
+         */
+        private final LongAdder totalTime = new LongAdder();
+
+        /**
+         * Maximum duration of a call (in milliseconds).
+         */
+        private final AtomicLong maxTime = new AtomicLong();
+
+        /**
+         * Record a call.
+         *
+         * @param duration Duration (in milliseconds)
+         * @param success True if the webhook answered successfully
+         */
+        private void record(long duration, boolean success) {
+            count.increment();
+            if (!success) {
+                failureCount.increment();
+            }
+            totalTime.add(duration);
+            maxTime.accumulateAndGet(duration, Math::max);
+        }
+
+        /**
+         * Returns the number of calls in flight.
+         *
+         * @return Number of calls
+         */
+        public int getInFlightCount() {
+            return inFlightCount.get();
+        }
+
+        /**
+         * Returns the number of calls.
+         *
+         * @return Number of calls
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the number of failed calls.
+         *
+         * @return Number of failed calls
+         */
+        public long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        /**
+         * Returns the total duration of the calls.
+         *
+         * @return Total duration (in milliseconds)
+         */
+        public long getTotalTime() {
+            return totalTime.sum();
+        }
+
+        /**
+         * Returns the maximum duration of a call.
+         *
+         * @return Maximum duration (in milliseconds)
+         */
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+    }
+}
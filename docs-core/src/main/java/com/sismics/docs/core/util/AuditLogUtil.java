@@ -1,19 +1,51 @@
 package com.sismics.docs.core.util;
 
 import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.AuditLogDao;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.AuditLog;
 import com.sismics.docs.core.model.jpa.Loggable;
+import com.sismics.docs.core.service.AuditLogService;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Audit log utilities.
+ * Audit logs are written after the commit of the current transaction,
+ * or in the current transaction if DOCS_AUDIT_LOG_TRANSACTIONAL is set.
  * 
  * @author bgamard
  */
 public class AuditLogUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuditLogUtil.class);
+
+    /**
+     * True if the audit logs are written in the transaction of the audited changes.
+     */
+    private static volatile boolean transactional = ConfigUtil.getEnvIntegerValue(Constants.AUDIT_LOG_TRANSACTIONAL_ENV, 0) == 1;
+
+    /**
+     * Write the audit logs in the transaction of the audited changes or after its commit.
+     *
+     * @param transactional True to write the audit logs in the transaction of the audited changes
+     */
+    public static void setTransactional(boolean transactional) {
+        AuditLogUtil.transactional = transactional;
+    }
+
     /**
      * Create an audit log.
      * 
@@ -26,18 +58,58 @@ public class AuditLogUtil {
             userId = "admin";
         }
 
-        // Get the entity ID
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        String entityId = (String) em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(loggable);
-        
         // Create the audit log
-        AuditLogDao auditLogDao = new AuditLogDao();
         AuditLog auditLog = new AuditLog();
         auditLog.setUserId(userId);
-        auditLog.setEntityId(entityId);
+        auditLog.setEntityId(loggable.getId());
         auditLog.setEntityClass(loggable.getClass().getSimpleName());
         auditLog.setType(type);
         auditLog.setMessage(loggable.toMessage());
-        auditLogDao.create(auditLog);
+        if (transactional) {
+            AuditLogDao auditLogDao = new AuditLogDao();
+            auditLogDao.create(auditLog);
+        } else {
+            auditLog.setId(UUID.randomUUID().toString());
+            auditLog.setCreateDate(new Date());
+            ThreadLocalContext.get().addAuditLog(auditLog);
+        }
+    }
+
+    /**
+     * Write the audit logs of a committed transaction.
+     * In unit tests, the audit logs are written immediately.
+     *
+     * @param auditLogList Audit logs
+     */
+    public static void write(List<AuditLog> auditLogList) {
+        AuditLogService auditLogService = EnvironmentUtil.isUnitTest() ? null : AppContext.getInstance().getAuditLogService();
+        if (auditLogService == null) {
+            writeBatch(auditLogList);
+        } else {
+            auditLogService.add(auditLogList);
+        }
+    }
+
+    /**
+     * Write audit logs in a dedicated entity manager and transaction.
+     * The thread context is left untouched, this is called after the commit of the audited changes.
+     *
+     * @param auditLogList Audit logs
+     */
+    public static void writeBatch(List<AuditLog> auditLogList) {
+        EntityManager em = EMF.get().createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            new AuditLogDao().createBatch(em, auditLogList);
+            tx.commit();
+        } catch (Exception e) {
+            log.error("Error writing " + auditLogList.size() + " audit logs", e);
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } finally {
+            em.close();
+        }
     }
 }
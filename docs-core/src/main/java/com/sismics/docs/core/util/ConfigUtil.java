@@ -1,8 +1,11 @@
 package com.sismics.docs.core.util;
 
+import com.google.common.base.Strings;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.model.jpa.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ResourceBundle;
 
@@ -12,6 +15,11 @@ import java.util.ResourceBundle;
  * @author jtremeaux
  */
 public class ConfigUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ConfigUtil.class);
+
     /**
      * Returns the textual value of a configuration parameter.
      * 
@@ -75,4 +83,25 @@ public class ConfigUtil {
         
         return Boolean.parseBoolean(value);
     }
+
+    /**
+     * Returns the integer value of an environment variable.
+     *
+     * @param name Name of the environment variable
+     * @param defaultValue Value returned if the environment variable is undefined or invalid
+     * @return Integer value of the environment variable
+     */
+    public static int getEnvIntegerValue(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn(name + " needs to be a number. Falling back to " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
 }
@@ -68,6 +68,24 @@ public class DirectoryUtil {
         return getDataSubDirectory("lucene");
     }
     
+    /**
+     * Returns the lucene index rebuild directory.
+     *
+     * @return Lucene index rebuild directory.
+     */
+    public static Path getLuceneRebuildDirectory() {
+        return getDataSubDirectory("lucene_rebuild");
+    }
+
+    /**
+     * Returns the search suggestions directory.
+     *
+     * @return Search suggestions directory.
+     */
+    public static Path getSuggesterDirectory() {
+        return getDataSubDirectory("suggester");
+    }
+
     /**
      * Returns the storage directory.
      * 
@@ -1,6 +1,10 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.model.context.AppContext;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -8,15 +12,20 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +37,20 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * AES block size.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Derived keys, by private key.
+     * The key derivation is slow by design, and done for each file, thumbnail and ZIP entry.
+     */
+    private static final Cache<String, DerivedKey> derivedKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(ConfigUtil.getEnvIntegerValue(Constants.ENCRYPTION_KEY_CACHE_SIZE_ENV, 1000))
+            .expireAfterAccess(ConfigUtil.getEnvIntegerValue(Constants.ENCRYPTION_KEY_CACHE_EXPIRY_ENV, 60), TimeUnit.MINUTES)
+            .build();
     
     static {
         // Initialize Bouncy Castle provider
@@ -61,6 +84,31 @@ public class EncryptionUtil {
         return new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE));
     }
 
+    /**
+     * Decrypt a file from a position using the specified private key.
+     * Only the blocks from this position are decrypted, thanks to the CTR mode.
+     *
+     * @param file Encrypted file
+     * @param privateKey Private key
+     * @param position Position of the first byte to decrypt
+     * @return Decrypted stream
+     * @throws Exception e
+     */
+    public static InputStream decryptInputStream(Path file, String privateKey, long position) throws Exception {
+        long block = position / BLOCK_SIZE;
+        SeekableByteChannel channel = Files.newByteChannel(file);
+        InputStream is;
+        try {
+            channel.position(block * BLOCK_SIZE);
+            is = new CipherInputStream(Channels.newInputStream(channel), getCipher(privateKey, Cipher.DECRYPT_MODE, block));
+            ByteStreams.skipFully(is, position - block * BLOCK_SIZE);
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+        return is;
+    }
+
     /**
      * Decrypt a file to a temporary file using the specified private key.
      *
@@ -105,11 +153,74 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
+        return getCipher(privateKey, mode, 0);
+    }
+
+    /**
+     * Initialize a Cipher starting at a block.
+     * The counter of the first block is derived from the private key, and incremented for each block.
+     *
+     * @param privateKey Private key
+     * @param mode Mode (encrypt or decrypt)
+     * @param block Index of the first block
+     * @return Cipher
+     * @throws Exception e
+     */
+    private static Cipher getCipher(String privateKey, int mode, long block) throws Exception {
+        DerivedKey derivedKey = derivedKeyCache.get(privateKey, () -> deriveKey(privateKey));
+        byte[] iv = derivedKey.iv;
+        if (block > 0) {
+            // Add the block index to the initial counter, modulo 2^128
+            byte[] counter = new BigInteger(1, iv).add(BigInteger.valueOf(block)).toByteArray();
+            iv = new byte[BLOCK_SIZE];
+            int length = Math.min(counter.length, BLOCK_SIZE);
+            System.arraycopy(counter, counter.length - length, iv, BLOCK_SIZE - length, length);
+        }
+        Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+        cipher.init(mode, derivedKey.key, new IvParameterSpec(iv));
+        return cipher;
+    }
+
+    /**
+     * Derive the AES key and the initial counter from a private key.
+     *
+     * @param privateKey Private key
+     * @return Derived key
+     * @throws Exception e
+     */
+    private static DerivedKey deriveKey(String privateKey) throws Exception {
         PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
         SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
         SecretKey desKey = skf.generateSecret(keySpec);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
-        return cipher;
+        cipher.init(Cipher.ENCRYPT_MODE, desKey);
+        return new DerivedKey(new SecretKeySpec(desKey.getEncoded(), "AES"), cipher.getIV());
+    }
+
+    /**
+     * Clear the derived keys kept in memory.
+     */
+    public static void clearKeyCache() {
+        derivedKeyCache.invalidateAll();
+    }
+
+    /**
+     * AES key and initial counter derived from a private key.
+     */
+    private static class DerivedKey {
+        /**
+         * AES key.
+         */
+        private final SecretKey key;
+
+        /**
+         * Initial counter.
+         */
+        private final byte[] iv;
+
+        private DerivedKey(SecretKey key, byte[] iv) {
+            this.key = key;
+            this.iv = iv;
+        }
     }
 }
@@ -89,6 +89,7 @@ public class FileUtil {
         Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
         Path webFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_web");
         Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_thumb");
+        Path pdfFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_pdf");
         
         if (Files.exists(storedFile)) {
             Files.delete(storedFile);
@@ -99,6 +100,9 @@ public class FileUtil {
         if (Files.exists(thumbnailFile)) {
             Files.delete(thumbnailFile);
         }
+        if (Files.exists(pdfFile)) {
+            Files.delete(pdfFile);
+        }
     }
 
     /**
@@ -115,6 +119,25 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, false);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param bulk True if the file is imported in bulk, and processed after interactive work.
+     *             Bulk importers wait for the file processing capacity before opening their transaction
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId, boolean bulk) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -199,6 +222,7 @@ public class FileUtil {
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setBulk(bulk);
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
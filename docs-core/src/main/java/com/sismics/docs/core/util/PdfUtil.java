@@ -7,9 +7,11 @@ import com.google.common.io.Resources;
 import com.lowagie.text.FontFactory;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.format.PdfFormatHandler;
 import com.sismics.docs.core.util.pdf.PdfPage;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -18,15 +20,18 @@ import org.apache.pdfbox.pdmodel.font.DocsPDType1Font;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.crypto.CipherInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 /**
  * PDF utilities.
@@ -39,8 +44,30 @@ public class PdfUtil {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfUtil.class);
 
+    /**
+     * Maximum number of simultaneous exports.
+     */
+    private static final int EXPORT_CONCURRENCY = ConfigUtil.getEnvIntegerValue(Constants.PDF_EXPORT_CONCURRENCY_ENV, 2);
+
+    /**
+     * Permits to export, exports beyond the concurrency wait for a permit.
+     */
+    private static final Semaphore exportSemaphore = new Semaphore(EXPORT_CONCURRENCY, true);
+
+    /**
+     * Main memory usable by each export (in bytes).
+     */
+    private static final long EXPORT_MEMORY = ConfigUtil.getEnvIntegerValue(Constants.PDF_EXPORT_MEMORY_ENV, 64) * 1024L * 1024L / EXPORT_CONCURRENCY;
+
+    /**
+     * Temporary storage usable by each export (in bytes), 0 for unlimited.
+     */
+    private static final long EXPORT_STORAGE = ConfigUtil.getEnvIntegerValue(Constants.PDF_EXPORT_STORAGE_ENV, 0) * 1024L * 1024L;
+
     /**
      * Convert a document and its files to a merged PDF file.
+     * The number of simultaneous exports and their memory usage are limited,
+     * exports beyond the limit wait for another one to end.
      * 
      * @param documentDto Document DTO
      * @param fileList List of files
@@ -51,9 +78,30 @@ public class PdfUtil {
      */
     public static void convertToPdf(DocumentDto documentDto, List<File> fileList,
             boolean fitImageToPage, boolean metadata, int margin, OutputStream outputStream) throws Exception {
+        exportSemaphore.acquire();
+        try {
+            convertToPdf(documentDto, fileList, fitImageToPage, metadata, margin, outputStream,
+                    MemoryUsageSetting.setupMixed(EXPORT_MEMORY, EXPORT_STORAGE > 0 ? EXPORT_STORAGE : -1));
+        } finally {
+            exportSemaphore.release();
+        }
+    }
+
+    /**
+     * Convert a document and its files to a merged PDF file.
+     *
+     * @param documentDto Document DTO
+     * @param fileList List of files
+     * @param fitImageToPage Fit images to the page
+     * @param metadata Add a page with metadata
+     * @param margin Margins in millimeters
+     * @param outputStream Output stream to write to, will be closed
+     * @param memUsageSettings Memory usage
+     */
+    private static void convertToPdf(DocumentDto documentDto, List<File> fileList,
+            boolean fitImageToPage, boolean metadata, int margin, OutputStream outputStream, MemoryUsageSetting memUsageSettings) throws Exception {
         // Setup PDFBox
         Closer closer = Closer.create();
-        MemoryUsageSetting memUsageSettings = MemoryUsageSetting.setupMixed(1000000); // 1MB max memory usage
         memUsageSettings.setTempDir(new java.io.File(System.getProperty("java.io.tmpdir"))); // To OS temp
 
         // Create a blank PDF
@@ -103,12 +151,19 @@ public class PdfUtil {
             
             // Add files
             for (File file : fileList) {
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-
-                // Decrypt the file to a temporary file
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
                 FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
-                if (formatHandler != null) {
+                if (formatHandler == null) {
+                    continue;
+                }
+
+                if (formatHandler.isConvertedToPdf()) {
+                    // Append the converted PDF, from the cache if possible
+                    new PdfFormatHandler().appendToPdf(getPdfFragment(file, formatHandler, memUsageSettings),
+                            doc, fitImageToPage, margin, memUsageSettings, closer);
+                } else {
+                    // Decrypt the file to a temporary file
+                    Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+                    Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
                     formatHandler.appendToPdf(unencryptedFile, doc, fitImageToPage, margin, memUsageSettings, closer);
                 }
             }
@@ -118,6 +173,59 @@ public class PdfUtil {
         }
     }
 
+    /**
+     * Returns a file converted to PDF, converting it if it is not cached yet.
+     *
+     * @param file File
+     * @param formatHandler Format handler
+     * @param memUsageSettings Memory usage
+     * @return Unencrypted PDF file
+     * @throws Exception e
+     */
+    private static Path getPdfFragment(File file, FormatHandler formatHandler, MemoryUsageSetting memUsageSettings) throws Exception {
+        Path cachedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_pdf");
+        if (Files.exists(cachedFile)) {
+            return EncryptionUtil.decryptFile(cachedFile, file.getPrivateKey());
+        }
+
+        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+        Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
+        return createPdfFragment(file.getId(), unencryptedFile, formatHandler, file.getPrivateKey(), memUsageSettings);
+    }
+
+    /**
+     * Convert a file to PDF and cache it, encrypted, next to the stored file.
+     * The cache is not used if the private key is unknown.
+     *
+     * @param fileId File ID
+     * @param unencryptedFile Unencrypted file
+     * @param formatHandler Format handler
+     * @param privateKey Private key of the file
+     * @param memUsageSettings Memory usage
+     * @return Unencrypted PDF file
+     * @throws Exception e
+     */
+    public static Path createPdfFragment(String fileId, Path unencryptedFile, FormatHandler formatHandler,
+            String privateKey, MemoryUsageSetting memUsageSettings) throws Exception {
+        Path pdfFile = AppContext.getInstance().getFileService().createTemporaryFile();
+        try (Closer closer = Closer.create();
+             PDDocument doc = new PDDocument(memUsageSettings)) {
+            formatHandler.appendToPdf(unencryptedFile, doc, false, 0, memUsageSettings, closer);
+            doc.save(pdfFile.toFile());
+        }
+
+        if (privateKey != null) {
+            // Write to a temporary file first, a partial PDF is never cached
+            Path cachedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_pdf");
+            Path tmpFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_pdf.tmp");
+            try (InputStream inputStream = new CipherInputStream(Files.newInputStream(pdfFile), EncryptionUtil.getEncryptionCipher(privateKey))) {
+                Files.copy(inputStream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmpFile, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return pdfFile;
+    }
+
     /**
      * Register fonts.
      */
@@ -0,0 +1,92 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the permission decisions.
+ * Decisions are always cached for the current request, and shared between requests
+ * for a few seconds if DOCS_PERMISSION_CACHE_EXPIRY is set.
+ *
+ * @author bgamard
+ */
+public class PermissionCache {
+    /**
+     * Decisions shared between requests, by source ID, by decision key. Null if disabled.
+     */
+    private static final Cache<String, ConcurrentMap<String, Boolean>> sharedCache;
+
+    static {
+        int expiry = ConfigUtil.getEnvIntegerValue(Constants.PERMISSION_CACHE_EXPIRY_ENV, 0);
+        sharedCache = expiry <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Returns a cached permission decision, or computes it.
+     *
+     * @param sourceId ACL source entity ID
+     * @param perm Necessary permission
+     * @param targetIdList List of targets
+     * @param decision Permission decision to compute
+     * @return True if the source is accessible
+     */
+    public static boolean get(String sourceId, PermType perm, List<String> targetIdList, Supplier<Boolean> decision) {
+        String key = sourceId + " " + perm.name() + " " + String.join(",", new TreeSet<>(targetIdList));
+        Map<String, Boolean> requestCache = ThreadLocalContext.get().getPermissionCache();
+        Boolean result = requestCache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        ConcurrentMap<String, Boolean> sourceCache = null;
+        if (sharedCache != null) {
+            sourceCache = sharedCache.asMap().computeIfAbsent(sourceId, k -> new ConcurrentHashMap<>());
+            result = sourceCache.get(key);
+        }
+        if (result == null) {
+            result = decision.get();
+            if (sourceCache != null) {
+                sourceCache.put(key, result);
+            }
+        }
+        requestCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Invalidate the permission decisions on a source.
+     *
+     * @param sourceId ACL source entity ID
+     */
+    public static void invalidate(String sourceId) {
+        ThreadLocalContext.get().getPermissionCache().keySet().removeIf(key -> key.startsWith(sourceId + " "));
+        if (sharedCache != null) {
+            sharedCache.invalidate(sourceId);
+        }
+    }
+
+    /**
+     * Invalidate all permission decisions.
+     * Permissions inherited from a tag are cached on each tagged document.
+     */
+    public static void invalidateAll() {
+        ThreadLocalContext.get().getPermissionCache().clear();
+        if (sharedCache != null) {
+            sharedCache.invalidateAll();
+        }
+    }
+}
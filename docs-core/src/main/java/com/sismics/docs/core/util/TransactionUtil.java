@@ -40,6 +40,7 @@ public class TransactionUtil {
         }
         ThreadLocalContext context = ThreadLocalContext.get();
         context.setEntityManager(em);
+        context.startUnitOfWork();
         EntityTransaction tx = em.getTransaction();
         tx.begin();
         
@@ -75,6 +76,8 @@ public class TransactionUtil {
                 } catch (Exception e) {
                     log.error("Error closing entity manager", e);
                 }
+                context.flushAuditLogs();
+                context.runCommitTasks();
             }
         }
 
@@ -89,8 +92,11 @@ public class TransactionUtil {
      * Commits the current transaction, and flushes the changes to the database.
      */
     public static void commit() {
-        EntityTransaction tx = ThreadLocalContext.get().getEntityManager().getTransaction();
+        ThreadLocalContext context = ThreadLocalContext.get();
+        EntityTransaction tx = context.getEntityManager().getTransaction();
         tx.commit();
         tx.begin();
+        context.flushAuditLogs();
+        context.runCommitTasks();
     }
 }
@@ -0,0 +1,299 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.mime.MimeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP export utilities.
+ * The files already compressed are stored without compression, so they are decrypted ahead in parallel
+ * to compute their size and checksum. The other files are decrypted and compressed on the fly.
+ *
+ * @author bgamard
+ */
+public class ZipUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ZipUtil.class);
+
+    /**
+     * Number of stored files decrypted in parallel.
+     */
+    private static final int THREAD_COUNT = ConfigUtil.getEnvIntegerValue(Constants.ZIP_EXPORT_THREADS_ENV,
+            Math.max(Runtime.getRuntime().availableProcessors() / 2, 2));
+
+    /**
+     * Maximum size of the stored files decrypted ahead of the ZIP stream, in bytes.
+     */
+    private static final long READ_AHEAD_SIZE = ConfigUtil.getEnvIntegerValue(Constants.ZIP_EXPORT_READ_AHEAD_ENV, 64) * 1024L * 1024L;
+
+    /**
+     * Executor decrypting the files.
+     */
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT,
+            new ThreadFactoryBuilder().setNameFormat("zip-export-%d").setDaemon(true).build());
+
+    /**
+     * MIME types already compressed, stored without compression.
+     */
+    private static final Set<String> COMPRESSED_MIME_TYPES = Sets.newHashSet(
+            MimeType.IMAGE_JPEG, MimeType.IMAGE_PNG, MimeType.IMAGE_GIF,
+            MimeType.APPLICATION_ZIP, MimeType.APPLICATION_PDF,
+            MimeType.OPEN_DOCUMENT_TEXT, MimeType.OFFICE_DOCUMENT, MimeType.OFFICE_PRESENTATION, MimeType.OFFICE_SHEET,
+            MimeType.VIDEO_WEBM, MimeType.VIDEO_MP4);
+
+    /**
+     * Write files to a ZIP stream.
+     * The private key of each file must be set.
+     * Entries larger than 4 GB are written in the ZIP64 format.
+     *
+     * @param fileList List of files
+     * @param outputStream Output stream to write to
+     * @throws Exception e
+     */
+    public static void zipFiles(List<File> fileList, OutputStream outputStream) throws Exception {
+        ReadAhead readAhead = new ReadAhead(fileList.iterator());
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            int index = 0;
+            PendingFile pendingFile;
+            while ((pendingFile = readAhead.next()) != null) {
+                File file = pendingFile.file;
+                ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
+                if (!pendingFile.isStored()) {
+                    // Compress the file while decrypting it
+                    zipOutputStream.putNextEntry(zipEntry);
+                    try (InputStream decryptedStream = openDecryptedStream(file)) {
+                        ByteStreams.copy(decryptedStream, zipOutputStream);
+                    }
+                    zipOutputStream.closeEntry();
+                } else {
+                    // Store the file decrypted ahead
+                    DecryptedFile decryptedFile = get(pendingFile.future);
+                    try {
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(decryptedFile.size);
+                        zipEntry.setCompressedSize(decryptedFile.size);
+                        zipEntry.setCrc(decryptedFile.crc);
+                        zipOutputStream.putNextEntry(zipEntry);
+                        Files.copy(decryptedFile.path, zipOutputStream);
+                        zipOutputStream.closeEntry();
+                    } finally {
+                        decryptedFile.delete();
+                        readAhead.release(pendingFile);
+                    }
+                }
+                index++;
+            }
+        } finally {
+            readAhead.cancel();
+        }
+    }
+
+    /**
+     * Wait for a file to be decrypted.
+     *
+     * @param future Decryption result
+     * @return Decrypted file
+     * @throws Exception e
+     */
+    private static DecryptedFile get(Future<DecryptedFile> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Open a decrypted stream of a file.
+     *
+     * @param file File
+     * @return Decrypted stream
+     * @throws Exception e
+     */
+    private static InputStream openDecryptedStream(File file) throws Exception {
+        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+        return file.getPrivateKey() == null ? Files.newInputStream(storedFile)
+                : EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), file.getPrivateKey());
+    }
+
+    /**
+     * Decrypt a file to a temporary file, computing its size and checksum.
+     *
+     * @param file File
+     * @return Decrypted file
+     * @throws Exception e
+     */
+    private static DecryptedFile decrypt(File file) throws Exception {
+        Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
+        CRC32 crc = new CRC32();
+        long size;
+        try (InputStream decryptedStream = openDecryptedStream(file);
+             OutputStream tmpOutputStream = Files.newOutputStream(tmpFile)) {
+            size = ByteStreams.copy(new CheckedInputStream(decryptedStream, crc), tmpOutputStream);
+        } catch (Exception e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+        return new DecryptedFile(file, tmpFile, size, crc.getValue());
+    }
+
+    /**
+     * Files to write, the stored ones being decrypted ahead within the read-ahead size.
+     */
+    private static class ReadAhead {
+        private final Iterator<File> fileIterator;
+        private final Deque<PendingFile> pendingFileQueue = new ArrayDeque<>();
+        private PendingFile waitingFile;
+        private long size;
+        private int count;
+
+        private ReadAhead(Iterator<File> fileIterator) {
+            this.fileIterator = fileIterator;
+        }
+
+        /**
+         * Returns the next file to write, after starting the decryption of the next stored files.
+         *
+         * @return Next file, null if all files are written
+         * @throws IOException e
+         */
+        private PendingFile next() throws IOException {
+            fill();
+            return pendingFileQueue.poll();
+        }
+
+        private void fill() throws IOException {
+            // A stored file waits for the files decrypted ahead to be written
+            if (waitingFile != null) {
+                if (!start(waitingFile)) {
+                    return;
+                }
+                waitingFile = null;
+            }
+
+            // The files compressed on the fly are queued until the next stored file
+            while (fileIterator.hasNext()) {
+                PendingFile pendingFile = new PendingFile(fileIterator.next());
+                pendingFileQueue.add(pendingFile);
+                if (pendingFile.isStored() && !start(pendingFile)) {
+                    waitingFile = pendingFile;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Start decrypting a stored file, if it fits in the read-ahead.
+         * A file is always decrypted if no other is, even if it is larger.
+         *
+         * @param pendingFile File to decrypt
+         * @return True if the decryption is started
+         */
+        private boolean start(PendingFile pendingFile) {
+            if (count > 0 && (count >= THREAD_COUNT || size + pendingFile.size > READ_AHEAD_SIZE)) {
+                return false;
+            }
+            size += pendingFile.size;
+            count++;
+            pendingFile.future = executor.submit(() -> decrypt(pendingFile.file));
+            return true;
+        }
+
+        /**
+         * Release the read-ahead of a written file.
+         *
+         * @param pendingFile Written file
+         */
+        private void release(PendingFile pendingFile) {
+            size -= pendingFile.size;
+            count--;
+        }
+
+        /**
+         * Cleanup the files decrypted for nothing.
+         */
+        private void cancel() {
+            for (PendingFile pendingFile : pendingFileQueue) {
+                if (pendingFile.future != null && !pendingFile.future.cancel(false)) {
+                    try {
+                        get(pendingFile.future).delete();
+                    } catch (Exception e) {
+                        // NOP
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A file to write to the ZIP stream.
+     */
+    private static class PendingFile {
+        private final File file;
+        private final long size;
+        private Future<DecryptedFile> future;
+
+        private PendingFile(File file) throws IOException {
+            this.file = file;
+            // The encrypted size of the stored files bounds the read-ahead, -1 for the files compressed on the fly
+            this.size = COMPRESSED_MIME_TYPES.contains(file.getMimeType())
+                    ? Files.size(DirectoryUtil.getStorageDirectory().resolve(file.getId())) : -1;
+        }
+
+        private boolean isStored() {
+            return size >= 0;
+        }
+    }
+
+    /**
+     * A file decrypted to a temporary file.
+     */
+    private static class DecryptedFile {
+        private final File file;
+        private final Path path;
+        private final long size;
+        private final long crc;
+
+        private DecryptedFile(File file, Path path, long size, long crc) {
+            this.file = file;
+            this.path = path;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Unable to delete the temporary file " + path, e);
+            }
+        }
+    }
+}
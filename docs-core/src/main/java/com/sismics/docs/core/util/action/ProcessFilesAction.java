@@ -50,6 +50,7 @@ public class ProcessFilesAction implements Action {
                 event.setLanguage(documentDto.getLanguage());
                 event.setFileId(file.getId());
                 event.setUnencryptedFile(unencryptedFile);
+                event.setBulk(true);
                 ThreadLocalContext.get().addAsyncEvent(event);
             }
         } catch (Exception e) {
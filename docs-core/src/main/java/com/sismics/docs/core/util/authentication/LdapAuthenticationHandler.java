@@ -1,5 +1,9 @@
 package com.sismics.docs.core.util.authentication;
 
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.ConfigDao;
@@ -8,22 +12,32 @@ import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.ClasspathScanner;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.directory.api.ldap.model.cursor.EntryCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.ldap.client.api.DefaultLdapConnectionFactory;
+import org.apache.directory.ldap.client.api.LdapConnection;
 import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionFactory;
 import org.apache.directory.ldap.client.api.LdapConnectionPool;
 import org.apache.directory.ldap.client.api.ValidatingPoolableLdapConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * LDAP authentication handler.
+ * The LDAP configuration is read once, until the next reset.
+ * Successful binds are cached for a few seconds if DOCS_LDAP_BIND_CACHE_EXPIRY is set.
  *
  * @author bgamard
  */
@@ -35,69 +49,161 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
     private static final Logger log = LoggerFactory.getLogger(LdapAuthenticationHandler.class);
 
     /**
-     * LDAP connection pool.
+     * Salt of the cached credentials, never persisted.
      */
-    private static LdapConnectionPool pool;
+    private static final byte[] SALT = new byte[16];
 
     /**
-     * Reset the LDAP pool.
+     * Hashed credentials of the successful binds, by username. Null if disabled.
      */
-    public static void reset() {
-        if (pool != null) {
+    private static volatile Cache<String, byte[]> bindCache;
+
+    /**
+     * Number of authentications served by the bind cache.
+     */
+    private static final LongAdder bindCacheHitCount = new LongAdder();
+
+    /**
+     * Creates the factory of the LDAP connections.
+     */
+    private static volatile Supplier<LdapConnectionFactory> connectionFactoryProvider = LdapAuthenticationHandler::newConnectionFactory;
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+        setBindCacheExpiry(ConfigUtil.getEnvIntegerValue(Constants.LDAP_BIND_CACHE_EXPIRY_ENV, 0));
+    }
+
+    /**
+     * Cache the successful binds.
+     *
+     * @param expiry Expiry of the cached binds (in seconds), 0 to disable the cache
+     */
+    static void setBindCacheExpiry(int expiry) {
+        bindCache = expiry <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Replace the factory of the LDAP connections, applied on the next reset.
+     *
+     * @param provider Creates the factory, null to connect to the configured LDAP
+     */
+    static void setConnectionFactoryProvider(Supplier<LdapConnectionFactory> provider) {
+        connectionFactoryProvider = provider == null ? LdapAuthenticationHandler::newConnectionFactory : provider;
+    }
+
+    /**
+     * LDAP configuration, null until initialized.
+     */
+    private static volatile LdapSettings settings;
+
+    /**
+     * Reset the LDAP pool and configuration.
+     */
+    public static synchronized void reset() {
+        if (settings != null && settings.pool != null) {
             try {
-                pool.close();
+                settings.pool.close();
             } catch (Exception e) {
                 // NOP
             }
         }
-        pool = null;
+        settings = null;
+        Cache<String, byte[]> cache = bindCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
     }
 
     /**
-     * Initialize the LDAP pool.
+     * Initialize the LDAP configuration and pool.
+     *
+     * @return LDAP configuration
      */
-    private static void init() {
+    private static synchronized LdapSettings init() {
+        if (settings != null) {
+            return settings;
+        }
+
         ConfigDao configDao = new ConfigDao();
         Config ldapEnabled = configDao.getById(ConfigType.LDAP_ENABLED);
-        if (pool != null || ldapEnabled == null || !Boolean.parseBoolean(ldapEnabled.getValue())) {
-            return;
+        if (ldapEnabled == null || !Boolean.parseBoolean(ldapEnabled.getValue())) {
+            settings = new LdapSettings();
+            return settings;
         }
 
+        GenericObjectPoolConfig<LdapConnection> poolConfig = new GenericObjectPoolConfig<>();
+        int poolSize = ConfigUtil.getEnvIntegerValue(Constants.LDAP_POOL_SIZE_ENV, 8);
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxIdle(poolSize);
+        poolConfig.setMaxWaitMillis(ConfigUtil.getEnvIntegerValue(Constants.LDAP_POOL_MAX_WAIT_ENV, 10000));
+
+        // The factory binds the connections again as admin when they are released
+        LdapConnectionFactory factory = connectionFactoryProvider.get();
+        LdapSettings ldapSettings = new LdapSettings();
+        ldapSettings.pool = new LdapConnectionPool(new ValidatingPoolableLdapConnectionFactory(factory), poolConfig);
+        ldapSettings.baseDn = ConfigUtil.getConfigStringValue(ConfigType.LDAP_BASE_DN);
+        ldapSettings.filter = ConfigUtil.getConfigStringValue(ConfigType.LDAP_FILTER);
+        ldapSettings.defaultEmail = ConfigUtil.getConfigStringValue(ConfigType.LDAP_DEFAULT_EMAIL);
+        ldapSettings.defaultStorage = ConfigUtil.getConfigLongValue(ConfigType.LDAP_DEFAULT_STORAGE);
+        settings = ldapSettings;
+        return settings;
+    }
+
+    /**
+     * Creates the factory of the connections to the configured LDAP, bound as admin.
+     *
+     * @return Connection factory
+     */
+    private static LdapConnectionFactory newConnectionFactory() {
         LdapConnectionConfig config = new LdapConnectionConfig();
         config.setLdapHost(ConfigUtil.getConfigStringValue(ConfigType.LDAP_HOST));
         config.setLdapPort(ConfigUtil.getConfigIntegerValue(ConfigType.LDAP_PORT));
         config.setName(ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_DN));
         config.setCredentials(ConfigUtil.getConfigStringValue(ConfigType.LDAP_ADMIN_PASSWORD));
-
-        DefaultLdapConnectionFactory factory = new DefaultLdapConnectionFactory(config);
-        pool = new LdapConnectionPool(new ValidatingPoolableLdapConnectionFactory(factory), null);
+        return new DefaultLdapConnectionFactory(config);
     }
 
     @Override
     public User authenticate(String username, String password) {
-        init();
-        if (pool == null) {
+        LdapSettings ldapSettings = settings;
+        if (ldapSettings == null) {
+            ldapSettings = init();
+        }
+        if (ldapSettings.pool == null) {
             return null;
         }
 
+        // Check the recently authenticated credentials
+        UserDao userDao = new UserDao();
+        byte[] credentials = hashCredentials(username, password);
+        Cache<String, byte[]> cache = bindCache;
+        if (cache != null) {
+            byte[] cachedCredentials = cache.getIfPresent(username);
+            if (cachedCredentials != null && MessageDigest.isEqual(cachedCredentials, credentials)) {
+                User user = userDao.getActiveByUsername(username);
+                if (user != null) {
+                    bindCacheHitCount.increment();
+                    return user;
+                }
+            }
+        }
+
         // Fetch and authenticate the user
         Entry userEntry;
         try {
-            EntryCursor cursor = pool.getConnection().search(ConfigUtil.getConfigStringValue(ConfigType.LDAP_BASE_DN),
-                    ConfigUtil.getConfigStringValue(ConfigType.LDAP_FILTER).replace("USERNAME", username), SearchScope.SUBTREE);
-            if (cursor.next()) {
-                userEntry = cursor.get();
-                pool.getConnection().bind(userEntry.getDn(), password);
-            } else {
-                // User not found
-                return null;
-            }
+            userEntry = bind(ldapSettings, username, password);
         } catch (Exception e) {
             log.error("Error authenticating \"" + username + "\" using the LDAP", e);
             return null;
         }
+        if (userEntry == null) {
+            // User not found
+            return null;
+        }
 
-        UserDao userDao = new UserDao();
         User user = userDao.getActiveByUsername(username);
         if (user == null) {
             // The user is valid but never authenticated, create the user now
@@ -108,12 +214,12 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
             user.setPassword(UUID.randomUUID().toString()); // No authentication using the internal database
             Attribute mailAttribute = userEntry.get("mail");
             if (mailAttribute == null || mailAttribute.get() == null) {
-                user.setEmail(ConfigUtil.getConfigStringValue(ConfigType.LDAP_DEFAULT_EMAIL));
+                user.setEmail(ldapSettings.defaultEmail);
             } else {
                 Value value = mailAttribute.get();
                 user.setEmail(value.getString());
             }
-            user.setStorageQuota(ConfigUtil.getConfigLongValue(ConfigType.LDAP_DEFAULT_STORAGE));
+            user.setStorageQuota(ldapSettings.defaultStorage);
             try {
                 userDao.create(user, "admin");
             } catch (Exception e) {
@@ -122,6 +228,85 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
             }
         }
 
+        if (cache != null) {
+            cache.put(username, credentials);
+        }
         return user;
     }
+
+    /**
+     * Search a user and bind with its password, using a single pooled connection.
+     *
+     * @param ldapSettings LDAP configuration
+     * @param username Username
+     * @param password Password
+     * @return User entry, or null if the user is not found
+     * @throws Exception e
+     */
+    private static Entry bind(LdapSettings ldapSettings, String username, String password) throws Exception {
+        LdapConnection connection = ldapSettings.pool.getConnection();
+        try {
+            Entry userEntry;
+            try (EntryCursor cursor = connection.search(ldapSettings.baseDn,
+                    ldapSettings.filter.replace("USERNAME", username), SearchScope.SUBTREE)) {
+                if (!cursor.next()) {
+                    return null;
+                }
+                userEntry = cursor.get();
+            }
+            connection.bind(userEntry.getDn(), password);
+            return userEntry;
+        } finally {
+            ldapSettings.pool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Hash the credentials with the salt of this process.
+     *
+     * @param username Username
+     * @param password Password
+     * @return Hashed credentials
+     */
+    private static byte[] hashCredentials(String username, String password) {
+        return Hashing.sha256().newHasher()
+                .putBytes(SALT)
+                .putString(username, Charsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(password, Charsets.UTF_8)
+                .hash().asBytes();
+    }
+
+    /**
+     * Returns the LDAP connection pool.
+     *
+     * @return Connection pool, or null if the LDAP is disabled or not used yet
+     */
+    public static LdapConnectionPool getPool() {
+        LdapSettings ldapSettings = settings;
+        return ldapSettings == null ? null : ldapSettings.pool;
+    }
+
+    /**
+     * Returns the number of authentications served by the bind cache.
+     *
+     * @return Number of cache hits
+     */
+    public static long getBindCacheHitCount() {
+        return bindCacheHitCount.sum();
+    }
+
+    /**
+     * LDAP configuration.
+     */
+    private static class LdapSettings {
+        /**
+         * Connection pool, null if the LDAP is disabled.
+         */
+        private LdapConnectionPool pool;
+        private String baseDn;
+        private String filter;
+        private String defaultEmail;
+        private Long defaultStorage;
+    }
 }
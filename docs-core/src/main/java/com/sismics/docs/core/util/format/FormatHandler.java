@@ -40,6 +40,29 @@ public interface FormatHandler {
      */
     String extractContent(String language, Path file) throws Exception;
 
+    /**
+     * Returns true if processing this file is expensive (OCR, conversion).
+     * Expensive files are processed on a dedicated queue.
+     *
+     * @param language Language
+     * @param file File
+     * @return True if expensive
+     * @throws Exception e
+     */
+    default boolean isExpensive(String language, Path file) throws Exception {
+        return false;
+    }
+
+    /**
+     * Returns true if this format is converted to be appended to a PDF.
+     * The converted PDF is cached, so it must not depend on the page options.
+     *
+     * @return True if converted
+     */
+    default boolean isConvertedToPdf() {
+        return false;
+    }
+
     /**
      * Append to a PDF.
      *
@@ -54,6 +54,12 @@ public class ImageFormatHandler implements FormatHandler {
         }
     }
 
+    @Override
+    public boolean isExpensive(String language, Path file) {
+        // The content is extracted by OCR
+        return language != null;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDPage page = new PDPage(PDRectangle.A4); // Images into A4 pages
@@ -43,6 +43,17 @@ public class OdtFormatHandler implements FormatHandler {
         return new PdfFormatHandler().extractContent(language, getGeneratedPdf(file));
     }
 
+    @Override
+    public boolean isExpensive(String language, Path file) {
+        // The document is converted to PDF
+        return true;
+    }
+
+    @Override
+    public boolean isConvertedToPdf() {
+        return true;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         // Use the PDF format handler
@@ -28,6 +28,11 @@ public class PdfFormatHandler implements FormatHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(PdfFormatHandler.class);
 
+    /**
+     * Size above which processing a PDF is considered expensive (in bytes).
+     */
+    private static final long EXPENSIVE_SIZE = 1024 * 1024;
+
     @Override
     public boolean accept(String mimeType) {
         return mimeType.equals(MimeType.APPLICATION_PDF);
@@ -72,6 +77,17 @@ public class PdfFormatHandler implements FormatHandler {
         return content;
     }
 
+    @Override
+    public boolean isExpensive(String language, Path file) throws Exception {
+        if (language == null) {
+            return false;
+        }
+
+        // Large PDFs are likely made of scanned pages to OCR-ize, or long to extract.
+        // The PDF is not parsed here, this only chooses a queue
+        return Files.size(file) > EXPENSIVE_SIZE;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
@@ -53,6 +53,17 @@ public class PptxFormatHandler implements FormatHandler {
         return new SlideShowExtractor<>(pptx).getText();
     }
 
+    @Override
+    public boolean isExpensive(String language, Path file) {
+        // The slides are rendered
+        return true;
+    }
+
+    @Override
+    public boolean isConvertedToPdf() {
+        return true;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         XMLSlideShow pptx = loadPPtxFile(file);
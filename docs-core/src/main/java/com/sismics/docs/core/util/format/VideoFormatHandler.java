@@ -71,6 +71,12 @@ public class VideoFormatHandler implements FormatHandler {
         }
     }
 
+    @Override
+    public boolean isExpensive(String language, Path file) {
+        // The thumbnail is extracted by ffmpeg
+        return true;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) {
         // Video cannot be appended to PDF files
@@ -0,0 +1,157 @@
+package com.sismics.docs.core.util.indexing;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an index rebuild.
+ *
+ * @author bgamard
+ */
+public class IndexRebuildProgress {
+    /**
+     * True if a rebuild is running.
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Start date of the last rebuild.
+     */
+    private volatile Long startDate;
+
+    /**
+     * End date of the last rebuild.
+     */
+    private volatile Long endDate;
+
+    /**
+     * Number of indexed documents.
+     */
+    private final AtomicLong documentCount = new AtomicLong();
+
+    /**
+     * Number of documents to index.
+     */
+    private volatile long documentTotal;
+
+    /**
+     * Number of indexed files.
+     */
+    private final AtomicLong fileCount = new AtomicLong();
+
+    /**
+     * Number of files to index.
+     */
+    private volatile long fileTotal;
+
+    /**
+     * Number of documents and files indexed since the rebuild started (or resumed).
+     */
+    private final AtomicLong indexedCount = new AtomicLong();
+
+    /**
+     * Start a rebuild.
+     *
+     * @return False if a rebuild is already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        startDate = System.currentTimeMillis();
+        endDate = null;
+        documentCount.set(0);
+        fileCount.set(0);
+        indexedCount.set(0);
+        return true;
+    }
+
+    /**
+     * Restore the counts of a resumed rebuild.
+     *
+     * @param documentCount Number of documents already indexed
+     * @param fileCount Number of files already indexed
+     */
+    public void restore(long documentCount, long fileCount) {
+        this.documentCount.set(documentCount);
+        this.fileCount.set(fileCount);
+    }
+
+    /**
+     * End the current rebuild.
+     */
+    public void end() {
+        endDate = System.currentTimeMillis();
+        running.set(false);
+    }
+
+    /**
+     * Count indexed documents.
+     *
+     * @param count Number of documents
+     */
+    public void addDocuments(int count) {
+        documentCount.addAndGet(count);
+        indexedCount.addAndGet(count);
+    }
+
+    /**
+     * Count indexed files.
+     *
+     * @param count Number of files
+     */
+    public void addFiles(int count) {
+        fileCount.addAndGet(count);
+        indexedCount.addAndGet(count);
+    }
+
+    /**
+     * Returns the number of documents and files indexed per second since the rebuild started.
+     *
+     * @return Throughput
+     */
+    public double getThroughput() {
+        Long startDate = this.startDate;
+        if (startDate == null) {
+            return 0;
+        }
+        long endDate = this.endDate == null ? System.currentTimeMillis() : this.endDate;
+        return indexedCount.get() * 1000d / Math.max(endDate - startDate, 1);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Long getStartDate() {
+        return startDate;
+    }
+
+    public Long getEndDate() {
+        return endDate;
+    }
+
+    public long getDocumentCount() {
+        return documentCount.get();
+    }
+
+    public long getDocumentTotal() {
+        return documentTotal;
+    }
+
+    public void setDocumentTotal(long documentTotal) {
+        this.documentTotal = documentTotal;
+    }
+
+    public long getFileCount() {
+        return fileCount.get();
+    }
+
+    public long getFileTotal() {
+        return fileTotal;
+    }
+
+    public void setFileTotal(long fileTotal) {
+        this.fileTotal = fileTotal;
+    }
+}
@@ -107,6 +107,33 @@ public interface IndexingHandler {
      */
     void deleteAcl(String sourceId, PermType perm, String targetId);
 
+    /**
+     * Rebuild the index from the database.
+     * The current index is still searched until the rebuilt index replaces it.
+     *
+     * @throws Exception e
+     */
+    void rebuildIndex() throws Exception;
+
+    /**
+     * Returns the progress of the last index rebuild.
+     *
+     * @return Index rebuild progress
+     */
+    IndexRebuildProgress getRebuildProgress();
+
+    /**
+     * Returns the time elapsed since the first index change not yet reflected in the search suggestions.
+     *
+     * @return Staleness of the search suggestions (in milliseconds)
+     */
+    long getSuggesterStaleness();
+
+    /**
+     * Commit the pending index changes now and make them searchable, instead of waiting for the next group commit.
+     */
+    void commit();
+
     /**
      * Searches documents by criteria.
      *
@@ -2,11 +2,13 @@ package com.sismics.docs.core.util.indexing;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.*;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -14,45 +16,69 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
+import com.sismics.util.context.ThreadLocalContext;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
+import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.*;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.NIOFSDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.persistence.EntityManager;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
+import java.text.BreakIterator;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Lucene indexing handler.
- * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Documents and files are indexed in Lucene. By default, the index is only used for fulltext search
+ * and other search criteria are still using the database.
+ * In Lucene search mode, the index also filters, sorts and paginates documents,
+ * and the database is only used to hydrate the returned page.
  *
  * @author bgamard
  */
@@ -63,21 +89,120 @@ public class LuceneIndexingHandler implements IndexingHandler {
      */
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
+    /**
+     * Version of the index structure, stored in the commit user data.
+     * Must be incremented when the indexed fields change, to trigger a full reindex.
+     */
+    private static final String INDEX_VERSION = "3";
+
+    /**
+     * Sortable fields in Lucene search mode, by SQL column index.
+     */
+    private static final Map<Integer, SortField> SORT_FIELD_MAP = ImmutableMap.of(
+            1, new SortField("title_exact", SortField.Type.STRING),
+            3, new SortField("create_date", SortField.Type.LONG),
+            4, new SortField("language", SortField.Type.STRING),
+            8, new SortField("update_date", SortField.Type.LONG));
+
+    /**
+     * Number of documents or files indexed in a batch when rebuilding the index.
+     */
+    private static final int REBUILD_BATCH_SIZE = 100;
+
+    /**
+     * Field type of the file content.
+     * Offsets are indexed in the postings to highlight without analyzing the content again.
+     */
+    private static final FieldType CONTENT_FIELD_TYPE = new FieldType(TextField.TYPE_STORED);
+    static {
+        CONTENT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_FIELD_TYPE.freeze();
+    }
+
     /**
      * Lucene directory.
      */
     private Directory directory;
 
     /**
-     * Directory reader.
+     * Near-real-time searcher manager, sharing searchers between requests.
      */
-    private DirectoryReader directoryReader;
+    private SearcherManager searcherManager;
+
+    /**
+     * Commit interval (in seconds), 0 to commit after each change.
+     */
+    private volatile int commitInterval;
+
+    /**
+     * Number of index changes triggering a commit before the end of the commit interval, 0 to disable.
+     */
+    private volatile int commitOperations;
+
+    /**
+     * Number of index changes since the last commit.
+     */
+    private final AtomicInteger pendingOperations = new AtomicInteger();
 
     /**
      * Index writer.
      */
     private IndexWriter indexWriter;
 
+    /**
+     * Search terms suggester, built in the background from the indexed titles.
+     */
+    private volatile Lookup suggester;
+
+    /**
+     * Date of the first index change not yet reflected in the suggester, 0 if up to date.
+     */
+    private final AtomicLong suggesterChangeDate = new AtomicLong();
+
+    /**
+     * Persisted suggester file, null if the suggester is only kept in memory.
+     */
+    private Path suggesterFile;
+
+    /**
+     * Index rebuild directory path, null if the rebuilt index is only kept in memory.
+     */
+    private Path rebuildDirectoryPath;
+
+    /**
+     * Index writer of the index being rebuilt, null if no rebuild is running.
+     * Changes to the current index are also written to the rebuilt index.
+     */
+    private volatile IndexWriter rebuildIndexWriter;
+
+    /**
+     * Lock switching the current index to the rebuilt index.
+     * Index changes and searcher refreshes hold the read lock, the switch holds the write lock.
+     */
+    private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+
+    /**
+     * Lock ordering the rebuilt batches and the changes written to the rebuilt index.
+     * Batches hold the read lock from the database read to the index write, the changes hold the write lock,
+     * so a change is never overwritten by the data of a batch read before it.
+     */
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    /**
+     * Called with the IDs of each rebuilt batch, between the database read and the index write.
+     */
+    private volatile Consumer<List<String>> rebuildBatchListener;
+
+    /**
+     * Progress of the last index rebuild.
+     */
+    private final IndexRebuildProgress rebuildProgress = new IndexRebuildProgress();
+
+    /**
+     * Executor running the index maintenance tasks (searcher refresh, commit and suggester refresh).
+     */
+    private volatile ScheduledExecutorService maintenanceExecutor;
+
     @Override
     public boolean accept() {
         // Embedded Lucene can always start
@@ -117,6 +242,8 @@ public class LuceneIndexingHandler implements IndexingHandler {
             Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
             log.info("Using file Lucene storage: {}", luceneDirectory);
             directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            suggesterFile = DirectoryUtil.getSuggesterDirectory().resolve("title.bin");
+            rebuildDirectoryPath = DirectoryUtil.getLuceneRebuildDirectory();
         }
 
         // Create an index writer
@@ -126,6 +253,7 @@ public class LuceneIndexingHandler implements IndexingHandler {
         indexWriter = new IndexWriter(directory, config);
 
         // Check index version and rebuild it if necessary
+        boolean outdated = false;
         if (DirectoryReader.indexExists(directory)) {
             log.info("Checking index health and version");
             try (CheckIndex checkIndex = new CheckIndex(directory)) {
@@ -134,16 +262,421 @@ public class LuceneIndexingHandler implements IndexingHandler {
                     throw new Exception("Index is dirty");
                 }
             }
+            outdated = !INDEX_VERSION.equals(SegmentInfos.readLatestCommit(directory).getUserData().get("version"));
+        }
+        indexWriter.setLiveCommitData(ImmutableMap.of("version", INDEX_VERSION).entrySet());
+
+        // Searchers are opened from the index writer and see uncommitted changes
+        searcherManager = new SearcherManager(indexWriter, null);
+
+        if (outdated) {
+            // The indexed fields have changed since this index was built
+            log.info("Lucene index is outdated, scheduling a full reindex");
+            RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+            AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+        } else if (rebuildDirectoryPath != null) {
+            try (Directory rebuildDirectory = new NIOFSDirectory(rebuildDirectoryPath, NoLockFactory.INSTANCE)) {
+                if (DirectoryReader.indexExists(rebuildDirectory)) {
+                    // A rebuild was interrupted, resume it
+                    log.info("Resuming the interrupted index rebuild");
+                    RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
+                    AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
+                }
+            }
+        }
+
+        initSuggester();
+        initMaintenance();
+    }
+
+    /**
+     * Schedule the index maintenance tasks.
+     * In unit tests, the maintenance is done synchronously after each index change.
+     */
+    private void initMaintenance() {
+        if (EnvironmentUtil.isUnitTest()) {
+            return;
+        }
+
+        startMaintenance(ConfigUtil.getEnvIntegerValue(Constants.INDEX_COMMIT_INTERVAL_ENV, 10),
+                ConfigUtil.getEnvIntegerValue(Constants.INDEX_COMMIT_OPERATIONS_ENV, 1000),
+                ConfigUtil.getEnvIntegerValue(Constants.SEARCHER_REFRESH_INTERVAL_ENV, 1000),
+                ConfigUtil.getEnvIntegerValue(Constants.SUGGESTER_REFRESH_INTERVAL_ENV, 60));
+    }
+
+    /**
+     * Schedule the index maintenance tasks: group commits and refreshes of the searcher and suggester.
+     *
+     * @param commitInterval Commit interval (in seconds), 0 to commit after each change
+     * @param commitOperations Number of index changes triggering a commit before the end of the commit interval, 0 to disable
+     * @param searcherRefreshInterval Searcher refresh interval (in milliseconds)
+     * @param suggesterRefreshInterval Suggester refresh interval (in seconds)
+     */
+    public synchronized void startMaintenance(int commitInterval, int commitOperations, int searcherRefreshInterval, int suggesterRefreshInterval) {
+        stopMaintenance();
+        this.commitInterval = commitInterval;
+        this.commitOperations = commitOperations;
+        maintenanceExecutor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "lucene-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.scheduleWithFixedDelay(this::refreshSearcher, searcherRefreshInterval, searcherRefreshInterval, TimeUnit.MILLISECONDS);
+        if (commitInterval > 0) {
+            maintenanceExecutor.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.SECONDS);
+        }
+        maintenanceExecutor.scheduleWithFixedDelay(this::refreshSuggester, 0, suggesterRefreshInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the index maintenance tasks, commit the pending changes and make them searchable.
+     * The following changes are committed, and the searcher and suggester refreshed, synchronously.
+     */
+    public synchronized void stopMaintenance() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+        }
+        commitInterval = 0;
+        commitOperations = 0;
+        if (indexWriter != null && indexWriter.isOpen()) {
+            commit();
         }
     }
 
+    /**
+     * Refresh the shared searcher if the index changed.
+     */
+    private void refreshSearcher() {
+        switchLock.readLock().lock();
+        try {
+            searcherManager.maybeRefresh();
+        } catch (Exception e) {
+            log.error("Error refreshing the index searcher", e);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if some index changes are not committed yet.
+     *
+     * @return True if some changes are not committed
+     */
+    boolean hasUncommittedChanges() {
+        return indexWriter.hasUncommittedChanges();
+    }
+
+    /**
+     * Commit the pending index changes, including the changes written to the rebuilt index,
+     * and refresh the searcher so they are searchable.
+     */
+    @Override
+    public void commit() {
+        switchLock.readLock().lock();
+        try {
+            pendingOperations.set(0);
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+            IndexWriter rebuildIndexWriter = this.rebuildIndexWriter;
+            if (rebuildIndexWriter != null && rebuildIndexWriter.hasUncommittedChanges()) {
+                rebuildIndexWriter.commit();
+            }
+            searcherManager.maybeRefreshBlocking();
+        } catch (Exception e) {
+            log.error("Cannot commit index writer", e);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Initialize the search terms suggester.
+     * The persisted suggester is loaded if available, it is then refreshed by the maintenance tasks.
+     */
+    private void initSuggester() {
+        if (suggesterFile != null && Files.exists(suggesterFile)) {
+            try (InputStream inputStream = Files.newInputStream(suggesterFile)) {
+                Lookup lookup = newSuggester();
+                lookup.load(inputStream);
+                suggester = lookup;
+                log.info("Search suggester loaded from: {}", suggesterFile);
+            } catch (Exception e) {
+                log.warn("Unable to load the search suggester, it will be rebuilt", e);
+            }
+        }
+
+        if (suggester == null) {
+            // Nothing loaded, build the suggester as soon as possible
+            suggesterChangeDate.compareAndSet(0, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Create a new empty suggester.
+     *
+     * @return Suggester
+     */
+    private Lookup newSuggester() {
+        return new FuzzySuggester(new ByteBuffersDirectory(), "suggester", new StandardAnalyzer());
+    }
+
+    /**
+     * Rebuild the search terms suggester if the index changed since the last build.
+     * The current suggester keeps serving lookups until the new one is ready.
+     */
+    private void refreshSuggester() {
+        long changeDate = suggesterChangeDate.getAndSet(0);
+        if (changeDate == 0) {
+            return;
+        }
+
+        try {
+            Lookup lookup = newSuggester();
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                lookup.build(new LuceneDictionary(searcher.getIndexReader(), "title"));
+            } finally {
+                searcherManager.release(searcher);
+            }
+            suggester = lookup;
+
+            if (suggesterFile != null) {
+                Path tmpFile = suggesterFile.resolveSibling(suggesterFile.getFileName() + ".tmp");
+                try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+                    lookup.store(outputStream);
+                }
+                Files.move(tmpFile, suggesterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (Exception e) {
+            // Keep the change pending to retry on the next refresh
+            suggesterChangeDate.accumulateAndGet(changeDate, (current, pending) -> current == 0 ? pending : Math.min(current, pending));
+            log.error("Error refreshing the search suggester", e);
+        }
+    }
+
+    @Override
+    public void rebuildIndex() throws Exception {
+        if (!rebuildProgress.start()) {
+            log.info("An index rebuild is already running");
+            return;
+        }
+
+        log.info("Rebuilding index");
+        Directory rebuildDirectory = rebuildDirectoryPath == null ?
+                new ByteBuffersDirectory() : new NIOFSDirectory(rebuildDirectoryPath, NoLockFactory.INSTANCE);
+        int threadCount = ConfigUtil.getEnvIntegerValue(Constants.REBUILD_THREADS_ENV, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        boolean switched = false;
+        try {
+            // Resume from the last checkpoint if it matches the current index structure
+            Map<String, String> checkpoint = DirectoryReader.indexExists(rebuildDirectory) ?
+                    SegmentInfos.readLatestCommit(rebuildDirectory).getUserData() : new HashMap<>();
+            IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+            config.setCommitOnClose(false);
+            config.setMergeScheduler(new ConcurrentMergeScheduler());
+            if (INDEX_VERSION.equals(checkpoint.get("version")) && checkpoint.containsKey("doctype")) {
+                log.info("Resuming index rebuild from checkpoint: {}", checkpoint);
+                rebuildProgress.restore(Long.parseLong(checkpoint.get("document_count")), Long.parseLong(checkpoint.get("file_count")));
+            } else {
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                checkpoint = ImmutableMap.of("doctype", "document", "last_id", "");
+            }
+            IndexWriter writer = new IndexWriter(rebuildDirectory, config);
+            rebuildIndexWriter = writer;
+
+            TransactionUtil.handle(() -> {
+                rebuildProgress.setDocumentTotal(new DocumentDao().getDocumentCount());
+                rebuildProgress.setFileTotal(new FileDao().getFileCount());
+            });
+
+            // Index documents then files
+            String lastId = checkpoint.get("last_id");
+            if (checkpoint.get("doctype").equals("document")) {
+                rebuildIndex(writer, executor, threadCount, "document", lastId);
+                lastId = "";
+            }
+            rebuildIndex(writer, executor, threadCount, "file", lastId);
+
+            // Switch to the rebuilt index
+            switchLock.writeLock().lock();
+            try {
+                rebuildIndexWriter = null;
+                writer.commit();
+                writer.close();
+                indexWriter.deleteAll();
+                indexWriter.addIndexes(rebuildDirectory);
+                indexWriter.commit();
+                searcherManager.maybeRefreshBlocking();
+                switched = true;
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+            suggesterChangeDate.compareAndSet(0, System.currentTimeMillis());
+            log.info("Rebuilding index done");
+        } finally {
+            executor.shutdownNow();
+            IndexWriter writer = rebuildIndexWriter;
+            if (writer != null) {
+                // The rebuild failed, keep the last checkpoint to resume it
+                switchLock.writeLock().lock();
+                try {
+                    rebuildIndexWriter = null;
+                    writer.rollback();
+                } finally {
+                    switchLock.writeLock().unlock();
+                }
+            }
+            rebuildDirectory.close();
+            if (switched && rebuildDirectoryPath != null) {
+                // The rebuilt index has been switched, clean it up
+                Files.walk(rebuildDirectoryPath)
+                        .sorted(Comparator.reverseOrder())
+                        .map(Path::toFile)
+                        .forEach(java.io.File::delete);
+            }
+            rebuildProgress.end();
+        }
+    }
+
+    /**
+     * Rebuild the index of a document type.
+     * Batches are indexed in parallel, and a checkpoint is committed after each round of batches.
+     *
+     * @param writer Index writer of the rebuilt index
+     * @param executor Executor indexing the batches
+     * @param threadCount Number of threads of the executor
+     * @param doctype Document type (document or file)
+     * @param lastId Last indexed ID
+     * @throws Exception e
+     */
+    private void rebuildIndex(IndexWriter writer, ExecutorService executor, int threadCount, String doctype, String lastId) throws Exception {
+        int roundSize = threadCount * REBUILD_BATCH_SIZE;
+        while (true) {
+            // Next round of IDs, in ID order
+            List<String> idList = new ArrayList<>();
+            String fromId = lastId;
+            TransactionUtil.handle(() -> idList.addAll(doctype.equals("document") ?
+                    new DocumentDao().findIdList(fromId, roundSize) : new FileDao().findIdList(fromId, roundSize)));
+            if (idList.isEmpty()) {
+                return;
+            }
+
+            List<Future<?>> futureList = new ArrayList<>();
+            for (List<String> batch : Lists.partition(idList, REBUILD_BATCH_SIZE)) {
+                futureList.add(executor.submit(() -> {
+                    rebuildBatch(writer, doctype, batch);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futureList) {
+                future.get();
+            }
+
+            // Checkpoint
+            lastId = idList.get(idList.size() - 1);
+            writer.setLiveCommitData(ImmutableMap.of(
+                    "version", INDEX_VERSION,
+                    "doctype", doctype,
+                    "last_id", lastId,
+                    "document_count", Long.toString(rebuildProgress.getDocumentCount()),
+                    "file_count", Long.toString(rebuildProgress.getFileCount())).entrySet());
+            writer.commit();
+        }
+    }
+
+    /**
+     * Index a batch of documents or files in the rebuilt index.
+     *
+     * @param writer Index writer of the rebuilt index
+     * @param doctype Document type (document or file)
+     * @param idList IDs to index
+     * @throws Exception e
+     */
+    private void rebuildBatch(IndexWriter writer, String doctype, List<String> idList) throws Exception {
+        rebuildLock.readLock().lock();
+        try {
+            rebuildBatchLocked(writer, doctype, idList);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        if (doctype.equals("document")) {
+            rebuildProgress.addDocuments(idList.size());
+        } else {
+            rebuildProgress.addFiles(idList.size());
+        }
+    }
+
+    /**
+     * Index a batch of documents or files in the rebuilt index, holding the rebuild read lock.
+     *
+     * @param writer Index writer of the rebuilt index
+     * @param doctype Document type (document or file)
+     * @param idList IDs to index
+     * @throws Exception e
+     */
+    private void rebuildBatchLocked(IndexWriter writer, String doctype, List<String> idList) throws Exception {
+        List<org.apache.lucene.document.Document> luceneDocumentList = new ArrayList<>();
+        AtomicBoolean loaded = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            if (doctype.equals("document")) {
+                List<Document> documentList = new DocumentDao().getDocuments(idList);
+                Map<String, Multimap<String, String>> filterFieldMap = findFilterFields(idList);
+                for (Document document : documentList) {
+                    luceneDocumentList.add(getDocumentFromDocument(document, filterFieldMap.get(document.getId())));
+                }
+            } else {
+                for (File file : new FileDao().getFiles(idList)) {
+                    luceneDocumentList.add(getDocumentFromFile(file));
+                }
+            }
+            loaded.set(true);
+        });
+        if (!loaded.get()) {
+            throw new Exception("Error loading the batch starting at " + doctype + " " + idList.get(0));
+        }
+
+        Consumer<List<String>> rebuildBatchListener = this.rebuildBatchListener;
+        if (rebuildBatchListener != null) {
+            rebuildBatchListener.accept(idList);
+        }
+
+        // Documents of an interrupted rebuild are replaced,
+        // the changes made since the database read are written after this batch
+        writer.deleteDocuments(idList.stream().map(id -> new Term("id", id)).toArray(Term[]::new));
+        writer.addDocuments(luceneDocumentList);
+    }
+
+    /**
+     * Set the listener called with the IDs of each rebuilt batch, between the database read and the index write.
+     *
+     * @param rebuildBatchListener Listener, null to remove it
+     */
+    void setRebuildBatchListener(Consumer<List<String>> rebuildBatchListener) {
+        this.rebuildBatchListener = rebuildBatchListener;
+    }
+
+    @Override
+    public IndexRebuildProgress getRebuildProgress() {
+        return rebuildProgress;
+    }
+
+    @Override
+    public long getSuggesterStaleness() {
+        long changeDate = suggesterChangeDate.get();
+        return changeDate == 0 ? 0 : System.currentTimeMillis() - changeDate;
+    }
+
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        // Do not lose the changes waiting for the next group commit
+        stopMaintenance();
+        if (searcherManager != null) {
             try {
-                directoryReader.close();
+                searcherManager.close();
             } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                log.error("Error closing the searcher manager", e);
             }
         }
         if (indexWriter != null) {
@@ -169,9 +702,11 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void createDocuments(List<Document> documentList) {
+        Map<String, Multimap<String, String>> filterFieldMap = findFilterFields(
+                documentList.stream().map(Document::getId).collect(Collectors.toList()));
         handle(indexWriter -> {
             for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
                 indexWriter.addDocument(luceneDocument);
             }
         });
@@ -189,8 +724,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void createDocument(final Document document) {
+        Map<String, Multimap<String, String>> filterFieldMap = findFilterFields(Lists.newArrayList(document.getId()));
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
             indexWriter.addDocument(luceneDocument);
         });
     }
@@ -213,8 +749,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void updateDocument(final Document document) {
+        Map<String, Multimap<String, String>> filterFieldMap = findFilterFields(Lists.newArrayList(document.getId()));
         handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
             indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
         });
     }
@@ -226,40 +763,67 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAcl(sourceId, perm);
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAcl(sourceId, perm);
+    }
+
+    /**
+     * Reindex the documents which read permission depends on an ACL source.
+     *
+     * @param sourceId Source ID (a document or a tag)
+     * @param perm Permission type
+     */
+    @SuppressWarnings("unchecked")
+    private void updateAcl(String sourceId, PermType perm) {
+        if (perm != PermType.READ) {
+            // Only read permission is indexed
+            return;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        javax.persistence.Query q = em.createNativeQuery("select d.DOC_ID_C from T_DOCUMENT d " +
+                " where d.DOC_ID_C = :sourceId and d.DOC_DELETEDATE_D is null " +
+                " union " +
+                " select dt.DOT_IDDOCUMENT_C from T_DOCUMENT_TAG dt, T_DOCUMENT d " +
+                " where dt.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt.DOT_IDTAG_C = :sourceId " +
+                " and dt.DOT_DELETEDATE_D is null and d.DOC_DELETEDATE_D is null");
+        q.setParameter("sourceId", sourceId);
+        List<String> documentIdList = q.getResultList();
+
+        for (List<String> documentIdPartition : Lists.partition(documentIdList, 100)) {
+            List<Document> documentList = new DocumentDao().getDocuments(documentIdPartition);
+            Map<String, Multimap<String, String>> filterFieldMap = findFilterFields(documentIdPartition);
+            handle(indexWriter -> {
+                for (Document document : documentList) {
+                    org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, filterFieldMap.get(document.getId()));
+                    indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+                }
+            });
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        if (isLuceneSearch(criteria, sortCriteria)) {
+            findByCriteriaInIndex(paginatedList, suggestionList, criteria, sortCriteria);
+            return;
+        }
+
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
+        Query searchQuery = null;
 
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" f.count c6, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C " +
-                "  left join (SELECT count(f.FIL_ID_C) count, f.FIL_IDDOC_C " +
-                "   FROM T_FILE f " +
-                "   WHERE f.FIL_DELETEDATE_D is null group by f.FIL_IDDOC_C) f on f.FIL_IDDOC_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        StringBuilder sb = buildSelectQuery();
+        boolean fulltextSearch = !Strings.isNullOrEmpty(criteria.getSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
 
         // Add search criterias
         if (criteria.getTargetIdList() != null) {
-            if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList()) && !fulltextSearch) {
+                // With a fulltext search, read permission is checked in the index instead
                 // Read permission is enough for searching
                 sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
                 sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
@@ -268,14 +832,15 @@ public class LuceneIndexingHandler implements IndexingHandler {
             }
             parameterMap.put("targetIdList", criteria.getTargetIdList());
         }
-        if (!Strings.isNullOrEmpty(criteria.getSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
+        if (fulltextSearch) {
+            searchQuery = buildSearchQuery(criteria.getSearch(), criteria.getFullSearch());
+            Set<String> documentIdSet = search(searchQuery, criteria.getTargetIdList());
+            if (documentIdSet.isEmpty()) {
                 // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
+                documentIdSet.add(UUID.randomUUID().toString());
             }
             criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
+            parameterMap.put("documentIdList", documentIdSet);
 
             suggestSearchTerms(criteria.getFullSearch(), suggestionList);
         }
@@ -356,7 +921,193 @@ public class LuceneIndexingHandler implements IndexingHandler {
         QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
         List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
 
-        // Assemble results
+        List<DocumentDto> documentDtoList = assembleResults(l);
+        if (searchQuery != null) {
+            highlight(documentDtoList, searchQuery);
+        }
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Searches documents by criteria, filtering, sorting and paginating in the index.
+     * Only the returned page is hydrated from the database.
+     *
+     * @param paginatedList List of documents (updated by side effects)
+     * @param suggestionList Suggestion of search query (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @throws Exception e
+     */
+    private void findByCriteriaInIndex(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        IndexSearcher searcher = searcherManager.acquire();
+        List<String> documentIdList = new ArrayList<>();
+        Query searchQuery = null;
+        try {
+            BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+
+            // Fulltext search on documents, and on files through their parent document
+            if (!Strings.isNullOrEmpty(criteria.getSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
+                searchQuery = buildSearchQuery(criteria.getSearch(), criteria.getFullSearch());
+                queryBuilder.add(new BooleanQuery.Builder()
+                        .add(searchQuery, BooleanClause.Occur.SHOULD)
+                        .add(new TermInSetQuery("id", collectValues(searcher, withDoctype(searchQuery, "file"), "document_id")), BooleanClause.Occur.SHOULD)
+                        .build(), BooleanClause.Occur.MUST);
+
+                suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+            }
+
+            // Add search criterias
+            if (criteria.getTargetIdList() != null && !SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+                // Read permission is enough for searching
+                queryBuilder.add(new TermInSetQuery("acl_target_id", toBytesRefList(criteria.getTargetIdList())), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+                queryBuilder.add(LongPoint.newRangeQuery("create_date",
+                        criteria.getCreateDateMin() == null ? Long.MIN_VALUE : criteria.getCreateDateMin().getTime(),
+                        criteria.getCreateDateMax() == null ? Long.MAX_VALUE : criteria.getCreateDateMax().getTime()), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+                queryBuilder.add(LongPoint.newRangeQuery("update_date",
+                        criteria.getUpdateDateMin() == null ? Long.MIN_VALUE : criteria.getUpdateDateMin().getTime(),
+                        criteria.getUpdateDateMax() == null ? Long.MAX_VALUE : criteria.getUpdateDateMax().getTime()), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getTitle() != null) {
+                queryBuilder.add(new TermQuery(new Term("title_exact", criteria.getTitle())), BooleanClause.Occur.FILTER);
+            }
+            for (List<String> tagIdList : criteria.getTagIdList()) {
+                queryBuilder.add(new TermInSetQuery("tag_id", toBytesRefList(tagIdList)), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getExcludedTagIdList() != null) {
+                for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+                    queryBuilder.add(new TermInSetQuery("tag_id", toBytesRefList(tagIdList)), BooleanClause.Occur.MUST_NOT);
+                }
+            }
+            if (criteria.getShared() != null && criteria.getShared()) {
+                queryBuilder.add(new TermQuery(new Term("shared", "true")), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getMimeType() != null) {
+                queryBuilder.add(new TermQuery(new Term("mime_type", criteria.getMimeType())), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getLanguage() != null) {
+                queryBuilder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
+            }
+            if (criteria.getCreatorId() != null) {
+                queryBuilder.add(new TermQuery(new Term("creator_id", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
+            }
+
+            // Collect the current page only, starting after the cursor if any, ties are broken on the document ID
+            SortField sortField = SORT_FIELD_MAP.get(sortCriteria.getColumn());
+            Sort sort = new Sort(new SortField(sortField.getField(), sortField.getType(), !sortCriteria.isAsc()),
+                    new SortField("id", SortField.Type.STRING));
+            int offset = paginatedList.getOffset();
+            FieldDoc after = null;
+            if (paginatedList.getAfter() != null) {
+                Object[] cursor = PaginatedLists.decodeCursor(paginatedList.getAfter());
+                Object sortValue = cursor[0] instanceof String ? new BytesRef((String) cursor[0]) : cursor[0];
+                if (sortValue instanceof Date) {
+                    sortValue = ((Date) sortValue).getTime();
+                }
+                after = new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[] { sortValue, new BytesRef((String) cursor[1]) });
+                offset = 0;
+            }
+
+            // Without count, hits are only counted up to the current page
+            int hitCount = Math.max(offset + paginatedList.getLimit(), 1);
+            TopFieldCollector collector = TopFieldCollector.create(sort, hitCount, after,
+                    paginatedList.isCountEnabled() ? Integer.MAX_VALUE : hitCount);
+            searcher.search(queryBuilder.build(), collector);
+            TopDocs topDocs = collector.topDocs(offset, paginatedList.getLimit());
+            if (paginatedList.isCountEnabled()) {
+                paginatedList.setResultCount((int) topDocs.totalHits.value);
+            }
+
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                documentIdList.add(searcher.doc(scoreDoc.doc).get("id"));
+            }
+
+            // Cursor of the next page
+            paginatedList.setNext(null);
+            if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs.length == paginatedList.getLimit()) {
+                FieldDoc last = (FieldDoc) topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+                Object sortValue = last.fields[0] instanceof BytesRef ? ((BytesRef) last.fields[0]).utf8ToString() : last.fields[0];
+                paginatedList.setNext(PaginatedLists.encodeCursor(sortValue, ((BytesRef) last.fields[1]).utf8ToString()));
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        if (documentIdList.isEmpty()) {
+            paginatedList.setResultList(new ArrayList<>());
+            return;
+        }
+
+        // Hydrate the current page from the database
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("targetIdList", criteria.getTargetIdList() == null ? Lists.newArrayList("") : criteria.getTargetIdList());
+        parameterMap.put("documentIdList", documentIdList);
+        StringBuilder sb = buildSelectQuery()
+                .append(" where d.DOC_ID_C in (:documentIdList) and d.DOC_DELETEDATE_D is null ");
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+
+        // Keep the index order
+        List<DocumentDto> documentDtoList = assembleResults(l);
+        documentDtoList.sort(Comparator.comparingInt(documentDto -> documentIdList.indexOf(documentDto.getId())));
+        if (searchQuery != null) {
+            highlight(documentDtoList, searchQuery);
+        }
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Returns true if the search can be fully executed in the index.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return True if the search is executed in the index
+     */
+    private boolean isLuceneSearch(DocumentCriteria criteria, SortCriteria sortCriteria) {
+        if (!"LUCENE".equalsIgnoreCase(System.getenv(Constants.SEARCH_MODE_ENV))) {
+            return false;
+        }
+
+        // Active routes depend on the current route step, which is not indexed
+        return (criteria.getActiveRoute() == null || !criteria.getActiveRoute())
+                && sortCriteria != null && SORT_FIELD_MAP.containsKey(sortCriteria.getColumn());
+    }
+
+    /**
+     * Build the select query returning the columns of a document DTO.
+     *
+     * @return Select query
+     */
+    private StringBuilder buildSelectQuery() {
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" f.count c6, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C " +
+                "  left join (SELECT count(f.FIL_ID_C) count, f.FIL_IDDOC_C " +
+                "   FROM T_FILE f " +
+                "   WHERE f.FIL_DELETEDATE_D is null group by f.FIL_IDDOC_C) f on f.FIL_IDDOC_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        return sb;
+    }
+
+    /**
+     * Assemble document DTOs from the select query results.
+     *
+     * @param l Select query results
+     * @return List of document DTOs
+     */
+    private List<DocumentDto> assembleResults(List<Object[]> l) {
         List<DocumentDto> documentDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
@@ -374,11 +1125,10 @@ public class LuceneIndexingHandler implements IndexingHandler {
             documentDto.setActiveRoute(o[i++] != null);
             documentDto.setCurrentStepName((String) o[i++]);
             documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
             documentDtoList.add(documentDto);
         }
 
-        paginatedList.setResultList(documentDtoList);
+        return documentDtoList;
     }
 
     /**
@@ -389,14 +1139,12 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @throws Exception e
      */
     private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
+        Lookup suggester = this.suggester;
+        if (suggester == null) {
+            // The suggester is not built yet
             return;
         }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
         int lastIndex = search.lastIndexOf(' ');
         String suggestQuery = search.substring(Math.max(lastIndex, 0));
         List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
@@ -407,13 +1155,43 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     /**
      * Fulltext search in files and documents.
+     * Files are matched through their parent document, read permission is checked on the indexed ACLs.
+     *
+     * @param query Fulltext query
+     * @param targetIdList List of targets, null to skip the permission check
+     * @return Matching document IDs
+     * @throws Exception e
+     */
+    Set<String> search(Query query, List<String> targetIdList) throws Exception {
+        Set<String> documentIdSet = new HashSet<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER)
+                    .add(new BooleanQuery.Builder()
+                            .add(query, BooleanClause.Occur.SHOULD)
+                            .add(new TermInSetQuery("id", collectValues(searcher, withDoctype(query, "file"), "document_id")), BooleanClause.Occur.SHOULD)
+                            .build(), BooleanClause.Occur.MUST);
+            if (targetIdList != null && !SecurityUtil.skipAclCheck(targetIdList)) {
+                queryBuilder.add(new TermInSetQuery("acl_target_id", toBytesRefList(targetIdList)), BooleanClause.Occur.FILTER);
+            }
+            for (BytesRef documentId : collectValues(searcher, queryBuilder.build(), "id")) {
+                documentIdSet.add(documentId.utf8ToString());
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        return documentIdSet;
+    }
+
+    /**
+     * Build the fulltext query on files and documents.
      *
      * @param searchQuery Search query on metadatas
      * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
-     * @throws Exception e
+     * @return Query
      */
-    private Map<String, String> search(String searchQuery, String fullSearchQuery) throws Exception {
+    private Query buildSearchQuery(String searchQuery, String fullSearchQuery) {
         // The fulltext query searches in all fields
         searchQuery = searchQuery + " " + fullSearchQuery;
 
@@ -421,7 +1199,7 @@ public class LuceneIndexingHandler implements IndexingHandler {
         Analyzer analyzer = new StandardAnalyzer();
 
         // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
+        return new BooleanQuery.Builder()
                 .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
@@ -435,44 +1213,114 @@ public class LuceneIndexingHandler implements IndexingHandler {
                 .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
                 .build();
+    }
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
-        }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
-
-        SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
-        SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
-                }
+    /**
+     * Highlight the files content of a page of documents.
+     *
+     * @param documentDtoList Page of documents (updated by side effects)
+     * @param query Fulltext query
+     * @throws Exception e
+     */
+    private void highlight(List<DocumentDto> documentDtoList, Query query) throws Exception {
+        if (documentDtoList.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> highlightMap = Maps.newHashMap();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // Search only in the files of this page
+            Query fileQuery = new BooleanQuery.Builder()
+                    .add(withDoctype(query, "file"), BooleanClause.Occur.MUST)
+                    .add(new TermInSetQuery("document_id", toBytesRefList(documentDtoList.stream()
+                            .map(DocumentDto::getId).collect(Collectors.toList()))), BooleanClause.Occur.FILTER)
+                    .build();
+            int hitCount = searcher.count(fileQuery);
+            if (hitCount == 0) {
+                return;
             }
+            TopDocs topDocs = searcher.search(fileQuery, hitCount);
 
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
+            // Use the offsets stored in the postings
+            UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, new StandardAnalyzer());
+            highlighter.setFormatter(new DefaultPassageFormatter("<strong>", "</strong>", "... ", true));
+            highlighter.setBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(BreakIterator.getWordInstance(Locale.ROOT), 100, 0.5f));
+            highlighter.setMaxNoHighlightPassages(0);
+            String[] highlights = highlighter.highlight("content", fileQuery, topDocs, 1);
+
+            // Keep the best highlight of each document
+            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                if (highlights[i] != null) {
+                    String documentId = searcher.doc(topDocs.scoreDocs[i].doc, Collections.singleton("document_id")).get("document_id");
+                    highlightMap.putIfAbsent(documentId, highlights[i]);
+                }
             }
+        } finally {
+            searcherManager.release(searcher);
         }
+        for (DocumentDto documentDto : documentDtoList) {
+            documentDto.setHighlight(highlightMap.get(documentDto.getId()));
+        }
+    }
 
-        return documentMap;
+    /**
+     * Restrict a query to a document type.
+     *
+     * @param query Query
+     * @param doctype Document type (document or file)
+     * @return Restricted query
+     */
+    private Query withDoctype(Query query, String doctype) {
+        return new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", doctype)), BooleanClause.Occur.FILTER)
+                .add(query, BooleanClause.Occur.MUST)
+                .build();
+    }
+
+    /**
+     * Collect the values of a doc values field on the documents matching a query.
+     * Stored fields are not loaded.
+     *
+     * @param searcher Index searcher
+     * @param query Query
+     * @param field Sorted doc values field
+     * @return Values
+     * @throws IOException e
+     */
+    private Set<BytesRef> collectValues(IndexSearcher searcher, Query query, String field) throws IOException {
+        Set<BytesRef> valueSet = new HashSet<>();
+        searcher.search(query, new SimpleCollector() {
+            private SortedDocValues docValues;
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                docValues = DocValues.getSorted(context.reader(), field);
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (docValues.advanceExact(doc)) {
+                    valueSet.add(BytesRef.deepCopyOf(docValues.binaryValue()));
+                }
+            }
+
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return valueSet;
+    }
+
+    /**
+     * Convert a list of strings to a list of terms.
+     *
+     * @param valueList List of strings
+     * @return List of terms
+     */
+    private List<BytesRef> toBytesRefList(Collection<String> valueList) {
+        return valueList.stream().map(BytesRef::new).collect(Collectors.toList());
     }
 
     /**
@@ -488,15 +1336,72 @@ public class LuceneIndexingHandler implements IndexingHandler {
         return simpleQueryParser;
     }
 
+    /**
+     * Find the values of the filter fields of documents.
+     *
+     * @param documentIdList Document IDs
+     * @return Filter field values by field name, by document ID
+     */
+    private Map<String, Multimap<String, String>> findFilterFields(List<String> documentIdList) {
+        Map<String, Multimap<String, String>> filterFieldMap = new HashMap<>();
+        for (String documentId : documentIdList) {
+            filterFieldMap.put(documentId, HashMultimap.create());
+        }
+        if (documentIdList.isEmpty()) {
+            return filterFieldMap;
+        }
+
+        findFilterField(filterFieldMap, "tag_id", "select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null", documentIdList);
+        findFilterField(filterFieldMap, "mime_type", "select f.FIL_IDDOC_C, f.FIL_MIMETYPE_C from T_FILE f " +
+                " where f.FIL_IDDOC_C in (:documentIdList) and f.FIL_DELETEDATE_D is null", documentIdList);
+        findFilterField(filterFieldMap, "share_id", "select a.ACL_SOURCEID_C, s.SHA_ID_C from T_ACL a, T_SHARE s " +
+                " where a.ACL_TARGETID_C = s.SHA_ID_C and a.ACL_SOURCEID_C in (:documentIdList) " +
+                " and a.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null", documentIdList);
+
+        // Read permission is given directly on the document, or inherited from a tag
+        findFilterField(filterFieldMap, "acl_target_id", "select a.ACL_SOURCEID_C, a.ACL_TARGETID_C from T_ACL a " +
+                " where a.ACL_SOURCEID_C in (:documentIdList) and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null " +
+                " union " +
+                " select dt.DOT_IDDOCUMENT_C, a.ACL_TARGETID_C from T_DOCUMENT_TAG dt, T_ACL a " +
+                " where a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null " +
+                " and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null", documentIdList);
+
+        return filterFieldMap;
+    }
+
+    /**
+     * Find the values of a filter field of documents.
+     *
+     * @param filterFieldMap Filter field values by field name, by document ID (updated by side effects)
+     * @param field Field name
+     * @param query Native query returning document IDs and values
+     * @param documentIdList Document IDs
+     */
+    @SuppressWarnings("unchecked")
+    private void findFilterField(Map<String, Multimap<String, String>> filterFieldMap, String field, String query, List<String> documentIdList) {
+        javax.persistence.Query q = ThreadLocalContext.get().getEntityManager().createNativeQuery(query);
+        q.setParameter("documentIdList", documentIdList);
+        List<Object[]> l = q.getResultList();
+        for (Object[] o : l) {
+            Multimap<String, String> fieldMap = filterFieldMap.get((String) o[0]);
+            if (fieldMap != null && o[1] != null) {
+                fieldMap.put(field, (String) o[1]);
+            }
+        }
+    }
+
     /**
      * Build Lucene document from database document.
      *
      * @param document Document
+     * @param filterFieldMap Filter field values by field name
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, Multimap<String, String> filterFieldMap) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(document.getId())));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
         if (document.getDescription() != null) {
@@ -527,6 +1432,32 @@ public class LuceneIndexingHandler implements IndexingHandler {
             luceneDocument.add(new TextField("rights", document.getRights(), Field.Store.NO));
         }
 
+        // Filter and sort fields
+        luceneDocument.add(new StringField("title_exact", document.getTitle(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("title_exact", new BytesRef(document.getTitle())));
+        luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("language", new BytesRef(document.getLanguage())));
+        luceneDocument.add(new StringField("creator_id", document.getUserId(), Field.Store.NO));
+        luceneDocument.add(new LongPoint("create_date", document.getCreateDate().getTime()));
+        luceneDocument.add(new NumericDocValuesField("create_date", document.getCreateDate().getTime()));
+        long updateDate = document.getUpdateDate() == null ? document.getCreateDate().getTime() : document.getUpdateDate().getTime();
+        luceneDocument.add(new LongPoint("update_date", updateDate));
+        luceneDocument.add(new NumericDocValuesField("update_date", updateDate));
+        if (filterFieldMap != null) {
+            for (String tagId : filterFieldMap.get("tag_id")) {
+                luceneDocument.add(new StringField("tag_id", tagId, Field.Store.NO));
+            }
+            for (String mimeType : filterFieldMap.get("mime_type")) {
+                luceneDocument.add(new StringField("mime_type", mimeType, Field.Store.NO));
+            }
+            for (String targetId : filterFieldMap.get("acl_target_id")) {
+                luceneDocument.add(new StringField("acl_target_id", targetId, Field.Store.NO));
+            }
+            if (!filterFieldMap.get("share_id").isEmpty()) {
+                luceneDocument.add(new StringField("shared", "true", Field.Store.NO));
+            }
+        }
+
         return luceneDocument;
     }
 
@@ -539,67 +1470,68 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private org.apache.lucene.document.Document getDocumentFromFile(File file) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id", new BytesRef(file.getId())));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
         if (file.getName() != null) {
             luceneDocument.add(new TextField("filename", file.getName(), Field.Store.NO));
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
         }
         if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+            luceneDocument.add(new Field("content", file.getContent(), CONTENT_FIELD_TYPE));
         }
 
         return luceneDocument;
     }
 
-    /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
-     *
-     * @return the directoryReader
-     */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
-            try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
-                }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
-            }
-        } else {
-            try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
-                }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
-            }
-        }
-        return directoryReader;
-    }
-
     /**
      * Encapsulate a process into a Lucene context.
+     * Changes are visible to searches after the next searcher refresh,
+     * and committed according to the commit interval and the number of pending changes.
      *
      * @param runnable Runnable
      */
     private void handle(LuceneRunnable runnable) {
+        switchLock.readLock().lock();
         try {
             runnable.run(indexWriter);
+
+            // Keep the index being rebuilt up to date, after the batches being read
+            IndexWriter rebuildIndexWriter = this.rebuildIndexWriter;
+            if (rebuildIndexWriter != null) {
+                rebuildLock.writeLock().lock();
+                try {
+                    runnable.run(rebuildIndexWriter);
+                } finally {
+                    rebuildLock.writeLock().unlock();
+                }
+            }
         } catch (Exception e) {
             log.error("Error in running index writing", e);
+        } finally {
+            switchLock.readLock().unlock();
         }
 
-        try {
-            indexWriter.commit();
-        } catch (IOException e) {
-            log.error("Cannot commit index writer", e);
+        // Without a commit interval, each change is committed immediately,
+        // otherwise changes are committed together at the end of the interval or after enough changes
+        ScheduledExecutorService maintenanceExecutor = this.maintenanceExecutor;
+        if (maintenanceExecutor == null || commitInterval == 0) {
+            commit();
+        } else if (commitOperations > 0 && pendingOperations.incrementAndGet() == commitOperations) {
+            try {
+                maintenanceExecutor.execute(this::commit);
+            } catch (RejectedExecutionException e) {
+                // The maintenance is shut down, commit in the current thread
+                commit();
+            }
+        }
+
+        // The searcher and suggester will pick up this change on their next refresh
+        suggesterChangeDate.compareAndSet(0, System.currentTimeMillis());
+        if (maintenanceExecutor == null) {
+            refreshSuggester();
         }
     }
 
@@ -27,6 +27,21 @@ public class PaginatedList<T> {
      * List of records of the current page.
      */
     private List<T> resultList;
+
+    /**
+     * Cursor after which the page starts, null to start at the offset.
+     */
+    private String after;
+
+    /**
+     * Cursor of the next page, null if this is the last page.
+     */
+    private String next;
+
+    /**
+     * True if the total number of records is counted.
+     */
+    private boolean countEnabled = true;
     
     /**
      * Constructor of PaginatedList.
@@ -92,4 +107,58 @@ public class PaginatedList<T> {
     public int getOffset() {
         return offset;
     }
+
+    /**
+     * Getter of after.
+     *
+     * @return after
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * Setter of after.
+     *
+     * @param after after
+     */
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    /**
+     * Getter of next.
+     *
+     * @return next
+     */
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * Setter of next.
+     *
+     * @param next next
+     */
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    /**
+     * Getter of countEnabled.
+     *
+     * @return countEnabled
+     */
+    public boolean isCountEnabled() {
+        return countEnabled;
+    }
+
+    /**
+     * Setter of countEnabled.
+     *
+     * @param countEnabled countEnabled
+     */
+    public void setCountEnabled(boolean countEnabled) {
+        this.countEnabled = countEnabled;
+    }
 }
@@ -1,7 +1,15 @@
 package com.sismics.docs.core.util.jpa;
 
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import javax.persistence.Query;
-import java.util.List;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utilities for paginated lists.
@@ -19,6 +27,14 @@ public class PaginatedLists {
      */
     private static final int MAX_PAGE_SIZE = 100;
 
+    /**
+     * Cached result counts, reused when fetching the next pages of a query.
+     */
+    private static final Cache<String, Integer> resultCountCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
     /**
      * Constructs a paginated list.
      * 
@@ -55,6 +71,16 @@ public class PaginatedLists {
      * @param queryParam Query parameters
      */
     private static <E> void executeCountQuery(PaginatedList<E> paginatedList, QueryParam queryParam) {
+        // The count is cached for the next pages of the same query
+        String cacheKey = queryParam.getQueryString() + queryParam.getParameterMap();
+        if (paginatedList.getAfter() != null) {
+            Integer resultCount = resultCountCache.getIfPresent(cacheKey);
+            if (resultCount != null) {
+                paginatedList.setResultCount(resultCount);
+                return;
+            }
+        }
+
         StringBuilder sb = new StringBuilder("select count(*) as result_count from (");
         sb.append(queryParam.getQueryString());
         sb.append(") as t1");
@@ -65,6 +91,122 @@ public class PaginatedLists {
         
         Number resultCount = (Number) q.getSingleResult();
         paginatedList.setResultCount(resultCount.intValue());
+        resultCountCache.put(cacheKey, resultCount.intValue());
+    }
+
+    /**
+     * Executes a query and returns the data of the current page, starting after the cursor if any.
+     * The records are sorted on the sort column then on the ID column (c0), to build the cursor of the next page.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which the next cursor is set by side effects
+     * @param queryParam Query parameters
+     * @param sortCriteria Sort criteria
+     * @return List of results
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> List<Object[]> executeKeysetQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
+        String sortColumn = "t.c" + sortCriteria.getColumn();
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        StringBuilder sb = new StringBuilder("select t.*, ")
+                .append(sortColumn)
+                .append(" sort_value from (")
+                .append(queryParam.getQueryString())
+                .append(") t ");
+
+        // Null values are always last
+        if (paginatedList.getAfter() != null) {
+            Object[] cursor = decodeCursor(paginatedList.getAfter());
+            parameterMap.put("afterId", cursor[1]);
+            if (cursor[0] == null) {
+                sb.append(" where ").append(sortColumn).append(" is null and t.c0 > :afterId ");
+            } else {
+                parameterMap.put("afterValue", cursor[0]);
+                sb.append(" where (").append(sortColumn).append(sortCriteria.isAsc() ? " > " : " < ").append(":afterValue")
+                        .append(" or (").append(sortColumn).append(" = :afterValue and t.c0 > :afterId)")
+                        .append(" or ").append(sortColumn).append(" is null) ");
+            }
+        }
+        sb.append(" order by ").append(sortColumn).append(sortCriteria.isAsc() ? " asc" : " desc").append(" nulls last, t.c0 asc");
+
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        if (paginatedList.getAfter() == null) {
+            q.setFirstResult(paginatedList.getOffset());
+        }
+        q.setMaxResults(paginatedList.getLimit());
+        List<Object[]> l = q.getResultList();
+
+        // Remove the sort value added to the results, and keep it in the cursor
+        List<Object[]> resultList = new ArrayList<>();
+        for (Object[] o : l) {
+            resultList.add(Arrays.copyOf(o, o.length - 1));
+        }
+        paginatedList.setNext(null);
+        if (!l.isEmpty() && l.size() == paginatedList.getLimit()) {
+            Object[] last = l.get(l.size() - 1);
+            paginatedList.setNext(encodeCursor(last[last.length - 1], (String) last[0]));
+        }
+        return resultList;
+    }
+
+    /**
+     * Encode the cursor of a record.
+     *
+     * @param sortValue Value of the sort column (string, number, timestamp or null)
+     * @param id Record ID
+     * @return Opaque cursor
+     */
+    public static String encodeCursor(Object sortValue, String id) {
+        String value;
+        if (sortValue == null) {
+            value = "n";
+        } else if (sortValue instanceof Date) {
+            value = "t" + ((Date) sortValue).getTime();
+        } else if (sortValue instanceof Long || sortValue instanceof Integer || sortValue instanceof BigInteger) {
+            value = "l" + sortValue;
+        } else if (sortValue instanceof Number) {
+            value = "d" + sortValue;
+        } else {
+            value = "s" + sortValue;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((id + "\n" + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor.
+     *
+     * @param cursor Opaque cursor
+     * @return Value of the sort column and record ID
+     * @throws IllegalArgumentException If the cursor is invalid
+     */
+    public static Object[] decodeCursor(String cursor) {
+        List<String> partList = Splitter.on('\n').limit(2).splitToList(
+                new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        if (partList.size() != 2 || partList.get(1).isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        String value = partList.get(1).substring(1);
+        Object sortValue;
+        switch (partList.get(1).charAt(0)) {
+            case 'n':
+                sortValue = null;
+                break;
+            case 't':
+                sortValue = new Timestamp(Long.parseLong(value));
+                break;
+            case 'l':
+                sortValue = Long.parseLong(value);
+                break;
+            case 'd':
+                sortValue = Double.parseDouble(value);
+                break;
+            case 's':
+                sortValue = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return new Object[] { sortValue, partList.get(0) };
     }
 
     /**
@@ -97,6 +239,8 @@ public class PaginatedLists {
 
     /**
      * Executes a paginated request with 2 native queries (one to count the number of results, and one to return the page).
+     * The count query is skipped if the count is disabled or cached, and the page starts after the cursor if any.
+     * The query must select the record ID as c0.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -104,8 +248,27 @@ public class PaginatedLists {
      * @return List of results
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
-        QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
-        executeCountQuery(paginatedList, sortedQueryParam);
-        return executeResultQuery(paginatedList, sortedQueryParam);
+        if (paginatedList.isCountEnabled()) {
+            executeCountQuery(paginatedList, queryParam);
+        }
+        return executeKeysetQuery(paginatedList, queryParam, sortCriteria);
+    }
+
+    /**
+     * Executes a paginated request whose page query is already restricted to the current page.
+     * The results are counted with a distinct query, not restricted to the current page.
+     * The query must select the record ID as c0.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param countQueryParam Count query parameters
+     * @param queryParam Query parameters
+     * @param sortCriteria Sort criteria
+     * @return List of results
+     */
+    public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam countQueryParam, QueryParam queryParam, SortCriteria sortCriteria) {
+        if (paginatedList.isCountEnabled()) {
+            executeCountQuery(paginatedList, countQueryParam);
+        }
+        return executeKeysetQuery(paginatedList, queryParam, sortCriteria);
     }
 }
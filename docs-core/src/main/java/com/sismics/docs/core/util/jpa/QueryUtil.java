@@ -6,6 +6,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
 import com.sismics.util.context.ThreadLocalContext;
+import org.hibernate.FlushMode;
+import org.hibernate.query.NativeQuery;
 
 /**
  * Query utilities.
@@ -29,6 +31,23 @@ public class QueryUtil {
         return query;
     }
     
+    /**
+     * Creates a native query updating a single table.
+     * Otherwise, Hibernate evicts the whole second-level cache when the query is executed.
+     * Pending changes are still flushed first, as for any other native query.
+     *
+     * @param queryString Query
+     * @param tableName Updated table name
+     * @return Native query
+     */
+    public static Query createNativeUpdate(String queryString, String tableName) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        return em.createNativeQuery(queryString)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(tableName)
+                .setHibernateFlushMode(FlushMode.ALWAYS);
+    }
+    
     /**
      * Returns sorted query parameters.
      * 
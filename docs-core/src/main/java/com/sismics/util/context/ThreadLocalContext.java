@@ -1,11 +1,17 @@
 package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.ConfigUtil;
 
 import javax.persistence.EntityManager;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Context associated to a user request, and stored in a ThreadLocal.
@@ -23,11 +29,32 @@ public class ThreadLocalContext {
      */
     private EntityManager entityManager;
 
+    /**
+     * True if the entities stay in the entity manager for the whole unit of work.
+     * Otherwise, the entity manager is flushed and cleared each time it is used.
+     */
+    private boolean unitOfWork;
+
     /**
      * List of async events posted during this request.
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * Audit logs created during this request, written after commit.
+     */
+    private List<AuditLog> auditLogList = Lists.newArrayList();
+
+    /**
+     * Tasks run synchronously after the commit of this request.
+     */
+    private List<Runnable> commitTaskList = Lists.newArrayList();
+
+    /**
+     * Permission decisions taken during this request.
+     */
+    private Map<String, Boolean> permissionCache = new HashMap<>();
+
     /**
      * Private constructor.
      */
@@ -62,7 +89,7 @@ public class ThreadLocalContext {
      * @return entityManager
      */
     public EntityManager getEntityManager() {
-        if (entityManager != null && entityManager.isOpen()) {
+        if (!unitOfWork && entityManager != null && entityManager.isOpen()) {
             // This disables the L1 cache
             entityManager.flush();
             entityManager.clear();
@@ -79,6 +106,42 @@ public class ThreadLocalContext {
         this.entityManager = entityManager;
     }
 
+    /**
+     * Use the entity manager as a unit of work, if enabled in the environment.
+     * The entities are then flushed before the queries needing them and at commit,
+     * and stay in the first level cache until the end of the transaction.
+     */
+    public void startUnitOfWork() {
+        unitOfWork = ConfigUtil.getEnvIntegerValue(Constants.UNIT_OF_WORK_ENV, 1) == 1;
+    }
+
+    /**
+     * Getter of unitOfWork.
+     *
+     * @return unitOfWork
+     */
+    public boolean isUnitOfWork() {
+        return unitOfWork;
+    }
+
+    /**
+     * Setter of unitOfWork.
+     *
+     * @param unitOfWork unitOfWork
+     */
+    public void setUnitOfWork(boolean unitOfWork) {
+        this.unitOfWork = unitOfWork;
+    }
+
+    /**
+     * Getter of permissionCache.
+     *
+     * @return permissionCache
+     */
+    public Map<String, Boolean> getPermissionCache() {
+        return permissionCache;
+    }
+
     /**
      * Add an async event to the queue to be fired after the current request.
      *
@@ -88,6 +151,47 @@ public class ThreadLocalContext {
         asyncEventList.add(asyncEvent);
     }
 
+    /**
+     * Add an audit log to be written after the current transaction commit.
+     *
+     * @param auditLog Audit log
+     */
+    public void addAuditLog(AuditLog auditLog) {
+        auditLogList.add(auditLog);
+    }
+
+    /**
+     * Hand over the audit logs of the committed transaction to the audit log writer.
+     */
+    public void flushAuditLogs() {
+        if (auditLogList.isEmpty()) {
+            return;
+        }
+        List<AuditLog> committedAuditLogList = auditLogList;
+        auditLogList = Lists.newArrayList();
+        AuditLogUtil.write(committedAuditLogList);
+    }
+
+    /**
+     * Add a task to run synchronously after the current transaction commit, before the async events are fired.
+     *
+     * @param commitTask Task
+     */
+    public void addCommitTask(Runnable commitTask) {
+        commitTaskList.add(commitTask);
+    }
+
+    /**
+     * Run the tasks of the committed transaction.
+     */
+    public void runCommitTasks() {
+        List<Runnable> committedTaskList = commitTaskList;
+        commitTaskList = Lists.newArrayList();
+        for (Runnable commitTask : committedTaskList) {
+            commitTask.run();
+        }
+    }
+
     /**
      * Fire all pending async events.
      */
@@ -1,6 +1,7 @@
 package com.sismics.util.jpa;
 
 import com.google.common.base.Strings;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.internal.util.config.ConfigurationHelper;
@@ -69,6 +70,19 @@ public final class EMF {
                 InputStream is = hibernatePropertiesUrl.openStream();
                 Properties properties = new Properties();
                 properties.load(is);
+
+                // Hibernate system properties override the file, as in Hibernate's own configuration
+                for (String key : System.getProperties().stringPropertyNames()) {
+                    if (key.startsWith("hibernate.") || key.startsWith("javax.persistence.")) {
+                        properties.put(key, System.getProperty(key));
+                    }
+                }
+
+                // The file configures its own connection pool, unless another one is explicitly set
+                String poolProvider = System.getenv("DATABASE_POOL_PROVIDER");
+                if (!Strings.isNullOrEmpty(poolProvider)) {
+                    properties.put("hibernate.connection.provider_class", poolProvider);
+                }
                 return properties;
             }
         } catch (IOException | IllegalArgumentException e) {
@@ -100,13 +114,53 @@ public final class EMF {
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.max_fetch_depth", "5");
-        props.put("hibernate.cache.use_second_level_cache", "false");
-        props.put("hibernate.c3p0.min_size", "1");
-        props.put("hibernate.c3p0.max_size", "10");
+
+        // Second-level cache of the read-mostly entities, disabled by default
+        int cacheSize = ConfigUtil.getEnvIntegerValue("DATABASE_CACHE_SIZE", 0); // Entries by region, 0 to disable
+        int cacheExpiry = ConfigUtil.getEnvIntegerValue("DATABASE_CACHE_EXPIRY", 0); // In seconds, 0 to keep entries until evicted
+        if (cacheSize > 0) {
+            props.put("hibernate.cache.use_second_level_cache", "true");
+            props.put("hibernate.cache.use_query_cache", "true");
+            props.put("hibernate.cache.region.factory_class", LocalRegionFactory.class.getName());
+            props.put("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+            props.put("hibernate.cache.default_cache_concurrency_strategy", "read-write");
+            props.put("hibernate.generate_statistics", "true");
+            props.put("hibernate.session.events.log", "false");
+            props.put(LocalRegionFactory.MAX_ENTRIES, String.valueOf(cacheSize));
+            props.put(LocalRegionFactory.EXPIRY, String.valueOf(cacheExpiry));
+        } else {
+            props.put("hibernate.cache.use_second_level_cache", "false");
+        }
+
+        // Connection pool
+        String poolProvider = System.getenv("DATABASE_POOL_PROVIDER");
+        int poolSize = ConfigUtil.getEnvIntegerValue("DATABASE_POOL_SIZE", 10);
+        int poolMinSize = ConfigUtil.getEnvIntegerValue("DATABASE_POOL_MIN_SIZE", 1);
+        int statementCacheSize = ConfigUtil.getEnvIntegerValue("DATABASE_STATEMENT_CACHE_SIZE", 0);
+        int acquireTimeout = ConfigUtil.getEnvIntegerValue("DATABASE_ACQUIRE_TIMEOUT", 0); // In milliseconds, 0 to wait indefinitely
+        int leakDetection = ConfigUtil.getEnvIntegerValue("DATABASE_LEAK_DETECTION", 0); // In seconds, 0 to disable
+        props.put("hibernate.connection.provider_class", Strings.isNullOrEmpty(poolProvider) ? MeteredConnectionProvider.class.getName() : poolProvider);
+        props.put("hibernate.c3p0.min_size", String.valueOf(poolMinSize));
+        props.put("hibernate.c3p0.max_size", String.valueOf(poolSize));
         props.put("hibernate.c3p0.timeout", "5000");
-        props.put("hibernate.c3p0.max_statements", "0");
+        props.put("hibernate.c3p0.max_statements", String.valueOf(statementCacheSize));
         props.put("hibernate.c3p0.acquire_increment", "1");
         props.put("hibernate.c3p0.idle_test_period", "10");
+        props.put("hibernate.c3p0.checkoutTimeout", String.valueOf(acquireTimeout));
+        if (leakDetection > 0) {
+            props.put("hibernate.c3p0.unreturnedConnectionTimeout", String.valueOf(leakDetection));
+            props.put("hibernate.c3p0.debugUnreturnedConnectionStackTraces", "true");
+        }
+
+        // Same settings for HikariCP, if configured as the provider
+        props.put("hibernate.hikari.minimumIdle", String.valueOf(poolMinSize));
+        props.put("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize));
+        if (acquireTimeout > 0) {
+            props.put("hibernate.hikari.connectionTimeout", String.valueOf(acquireTimeout));
+        }
+        if (leakDetection > 0) {
+            props.put("hibernate.hikari.leakDetectionThreshold", String.valueOf(leakDetection * 1000L));
+        }
         return props;
     }
     
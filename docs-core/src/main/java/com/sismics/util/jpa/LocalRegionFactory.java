@@ -0,0 +1,273 @@
+package com.sismics.util.jpa;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Second-level cache regions stored in bounded in-process caches.
+ * Hits and misses are counted by Hibernate if hibernate.generate_statistics is set.
+ *
+ * @author bgamard
+ */
+public class LocalRegionFactory extends RegionFactoryTemplate {
+    /**
+     * Maximum number of entries by region.
+     */
+    public static final String MAX_ENTRIES = "hibernate.cache.local.max_entries";
+
+    /**
+     * Expiry of the entries (in seconds), 0 to keep them until evicted.
+     */
+    public static final String EXPIRY = "hibernate.cache.local.expiry";
+
+    /**
+     * Last configured region factory.
+     */
+    private static volatile LocalRegionFactory instance;
+
+    /**
+     * Regions, by name.
+     */
+    private final Map<String, LocalStorageAccess> storageAccessMap = new ConcurrentHashMap<>();
+
+    /**
+     * Session factory using the regions.
+     */
+    private volatile SessionFactoryImplementor sessionFactory;
+
+    /**
+     * Maximum number of entries by region.
+     */
+    private int maxEntries;
+
+    /**
+     * Expiry of the entries (in seconds), 0 to keep them until evicted.
+     */
+    private int expiry;
+
+    /**
+     * Constructor of LocalRegionFactory, called by Hibernate.
+     */
+    public LocalRegionFactory() {
+        instance = this;
+    }
+
+    /**
+     * Returns the region factory of the entity manager factory.
+     *
+     * @return Region factory, or null if the second-level cache is disabled
+     */
+    public static LocalRegionFactory getInstance() {
+        return instance;
+    }
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+        maxEntries = ConfigurationHelper.getInt(MAX_ENTRIES, configValues, 1000);
+        expiry = ConfigurationHelper.getInt(EXPIRY, configValues, 0);
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        storageAccessMap.values().forEach(LocalStorageAccess::release);
+        storageAccessMap.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig, DomainDataRegionBuildingContext buildingContext) {
+        sessionFactory = buildingContext.getSessionFactory();
+        return createStorageAccess(regionConfig.getRegionName(), true);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        this.sessionFactory = sessionFactory;
+        return createStorageAccess(regionName, true);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        this.sessionFactory = sessionFactory;
+        // Evicting a timestamp would let stale query results through
+        return createStorageAccess(regionName, false);
+    }
+
+    /**
+     * Creates the storage of a region.
+     *
+     * @param regionName Region name
+     * @param bounded True if the entries can be evicted
+     * @return Storage
+     */
+    private LocalStorageAccess createStorageAccess(String regionName, boolean bounded) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (bounded) {
+            builder.maximumSize(maxEntries);
+            if (expiry > 0) {
+                builder.expireAfterWrite(expiry, TimeUnit.SECONDS);
+            }
+        }
+        LocalStorageAccess storageAccess = new LocalStorageAccess(builder.build());
+        storageAccessMap.put(regionName, storageAccess);
+        return storageAccess;
+    }
+
+    /**
+     * Returns the statistics of the regions.
+     *
+     * @return Statistics, by region name
+     */
+    public Map<String, RegionStatistics> getRegionStatistics() {
+        SessionFactoryImplementor sessionFactory = this.sessionFactory;
+        Statistics statistics = sessionFactory == null ? null : sessionFactory.getStatistics();
+        Map<String, RegionStatistics> regionStatisticsMap = new TreeMap<>();
+        for (Map.Entry<String, LocalStorageAccess> entry : storageAccessMap.entrySet()) {
+            Cache<Object, Object> cache = entry.getValue().cache;
+            CacheRegionStatistics cacheRegionStatistics = null;
+            if (statistics != null && statistics.isStatisticsEnabled()) {
+                cacheRegionStatistics = statistics.getCacheRegionStatistics(entry.getKey());
+            }
+            regionStatisticsMap.put(entry.getKey(), new RegionStatistics(cache.size(), cache.stats().evictionCount(), cacheRegionStatistics));
+        }
+        return regionStatisticsMap;
+    }
+
+    /**
+     * Storage of a region.
+     */
+    private static class LocalStorageAccess implements DomainDataStorageAccess {
+        private final Cache<Object, Object> cache;
+
+        private LocalStorageAccess(Cache<Object, Object> cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            return cache.getIfPresent(key);
+        }
+
+        @Override
+        public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            if (value == null) {
+                cache.invalidate(key);
+            } else {
+                cache.put(key, value);
+            }
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return cache.asMap().containsKey(key);
+        }
+
+        @Override
+        public void evictData() {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public void evictData(Object key) {
+            cache.invalidate(key);
+        }
+
+        @Override
+        public void release() {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Statistics of a region.
+     */
+    public static class RegionStatistics {
+        /**
+         * Number of entries.
+         */
+        private final long size;
+
+        /**
+         * Number of evicted entries.
+         */
+        private final long evictionCount;
+
+        /**
+         * Hibernate statistics of the region, null if disabled.
+         */
+        private final CacheRegionStatistics cacheRegionStatistics;
+
+        /**
+         * Constructor of RegionStatistics.
+         *
+         * @param size Number of entries
+         * @param evictionCount Number of evicted entries
+         * @param cacheRegionStatistics Hibernate statistics of the region, null if disabled
+         */
+        private RegionStatistics(long size, long evictionCount, CacheRegionStatistics cacheRegionStatistics) {
+            this.size = size;
+            this.evictionCount = evictionCount;
+            this.cacheRegionStatistics = cacheRegionStatistics;
+        }
+
+        /**
+         * Returns the number of entries.
+         *
+         * @return Number of entries
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the number of entries found in the region.
+         *
+         * @return Number of hits, 0 if the statistics are disabled
+         */
+        public long getHitCount() {
+            return cacheRegionStatistics == null ? 0 : cacheRegionStatistics.getHitCount();
+        }
+
+        /**
+         * Returns the number of entries not found in the region.
+         *
+         * @return Number of misses, 0 if the statistics are disabled
+         */
+        public long getMissCount() {
+            return cacheRegionStatistics == null ? 0 : cacheRegionStatistics.getMissCount();
+        }
+
+        /**
+         * Returns the number of entries put in the region.
+         *
+         * @return Number of puts, 0 if the statistics are disabled
+         */
+        public long getPutCount() {
+            return cacheRegionStatistics == null ? 0 : cacheRegionStatistics.getPutCount();
+        }
+
+        /**
+         * Returns the number of entries evicted from the region.
+         *
+         * @return Number of evictions
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+    }
+}
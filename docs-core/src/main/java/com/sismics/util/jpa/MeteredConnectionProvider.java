@@ -0,0 +1,134 @@
+package com.sismics.util.jpa;
+
+import com.mchange.v2.c3p0.PooledDataSource;
+import org.hibernate.c3p0.internal.C3P0ConnectionProvider;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * c3p0 connection provider measuring the connection acquisitions.
+ *
+ * @author bgamard
+ */
+public class MeteredConnectionProvider extends C3P0ConnectionProvider {
+    /**
+     * Last configured provider.
+     */
+    private static volatile MeteredConnectionProvider instance;
+
+    /**
+     * Number of acquired connections.
+     */
+    private final LongAdder acquireCount = new LongAdder();
+
+    /**
+     * Total time spent acquiring connections (in nanoseconds).
+     */
+    private final LongAdder acquireTime = new LongAdder();
+
+    /**
+     * Maximum time spent acquiring a connection (in nanoseconds).
+     */
+    private final AtomicLong acquireTimeMax = new AtomicLong();
+
+    /**
+     * Constructor of MeteredConnectionProvider, called by Hibernate.
+     * The new provider replaces the previous instance.
+     */
+    public MeteredConnectionProvider() {
+        instance = this;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            long duration = System.nanoTime() - start;
+            acquireCount.increment();
+            acquireTime.add(duration);
+            acquireTimeMax.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+    /**
+     * Returns the provider of the entity manager factory.
+     *
+     * @return Connection provider, or null if another provider is configured
+     */
+    public static MeteredConnectionProvider getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the connection pool.
+     *
+     * @return Connection pool
+     */
+    private PooledDataSource getPool() {
+        return (PooledDataSource) unwrap(DataSource.class);
+    }
+
+    /**
+     * Returns the number of connections in use.
+     *
+     * @return Number of connections
+     * @throws SQLException e
+     */
+    public int getActiveCount() throws SQLException {
+        return getPool().getNumBusyConnectionsDefaultUser();
+    }
+
+    /**
+     * Returns the number of idle connections in the pool.
+     *
+     * @return Number of connections
+     * @throws SQLException e
+     */
+    public int getIdleCount() throws SQLException {
+        return getPool().getNumIdleConnectionsDefaultUser();
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection.
+     *
+     * @return Number of threads
+     * @throws SQLException e
+     */
+    public int getWaitingCount() throws SQLException {
+        return getPool().getNumThreadsAwaitingCheckoutDefaultUser();
+    }
+
+    /**
+     * Returns the number of acquired connections.
+     *
+     * @return Number of connections
+     */
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * Returns the total time spent acquiring connections.
+     *
+     * @return Total time (in milliseconds)
+     */
+    public long getAcquireTime() {
+        return TimeUnit.NANOSECONDS.toMillis(acquireTime.sum());
+    }
+
+    /**
+     * Returns the maximum time spent acquiring a connection.
+     *
+     * @return Maximum time (in milliseconds)
+     */
+    public long getAcquireTimeMax() {
+        return TimeUnit.NANOSECONDS.toMillis(acquireTimeMax.get());
+    }
+}
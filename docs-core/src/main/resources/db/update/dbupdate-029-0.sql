@@ -0,0 +1,5 @@
+create memory table T_GROUP_ANCESTOR ( GAN_IDGROUP_C varchar(36) not null, GAN_IDANCESTOR_C varchar(36) not null, GAN_DEPTH_N int not null, primary key (GAN_IDGROUP_C, GAN_IDANCESTOR_C) );
+create index IDX_GAN_IDANCESTOR_C on T_GROUP_ANCESTOR (GAN_IDANCESTOR_C);
+create index IDX_UGP_IDUSER_C on T_USER_GROUP (UGP_IDUSER_C);
+insert into T_GROUP_ANCESTOR(GAN_IDGROUP_C, GAN_IDANCESTOR_C, GAN_DEPTH_N) with recursive ANCESTOR(IDGROUP, IDANCESTOR, DEPTH) as (select GRP_ID_C, GRP_ID_C, 0 from T_GROUP where GRP_DELETEDATE_D is null union all select a.IDGROUP, g.GRP_IDPARENT_C, a.DEPTH + 1 from ANCESTOR a join T_GROUP g on g.GRP_ID_C = a.IDANCESTOR join T_GROUP gp on gp.GRP_ID_C = g.GRP_IDPARENT_C and gp.GRP_DELETEDATE_D is null where a.DEPTH < (select count(*) from T_GROUP)) select IDGROUP, IDANCESTOR, min(DEPTH) from ANCESTOR group by IDGROUP, IDANCESTOR;
+update T_CONFIG set CFG_VALUE_C = '29' where CFG_ID_C = 'DB_VERSION';
\ No newline at end of file
@@ -0,0 +1,3 @@
+create table T_WEBHOOK_DELIVERY ( WHD_ID_C varchar(36) not null, WHD_IDWEBHOOK_C varchar(36) not null, WHD_EVENT_C varchar(50) not null, WHD_ENTITYID_C varchar(36) not null, WHD_ATTEMPT_N int not null, WHD_NEXTDATE_D datetime not null, WHD_ERROR_C varchar(500), WHD_CREATEDATE_D datetime not null, primary key (WHD_ID_C) );
+create index IDX_WHD_NEXTDATE_D on T_WEBHOOK_DELIVERY (WHD_NEXTDATE_D);
+update T_CONFIG set CFG_VALUE_C = '30' where CFG_ID_C = 'DB_VERSION';
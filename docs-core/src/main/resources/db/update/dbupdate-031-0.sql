@@ -0,0 +1,5 @@
+create index IDX_LOG_IDENTITY_CREATEDATE on T_AUDIT_LOG (LOG_IDENTITY_C, LOG_CREATEDATE_D);
+create index IDX_LOG_IDUSER_CREATEDATE on T_AUDIT_LOG (LOG_IDUSER_C, LOG_CREATEDATE_D);
+create index IDX_LOG_CREATEDATE_D on T_AUDIT_LOG (LOG_CREATEDATE_D);
+drop index IDX_LOG_IDENTITY_C;
+update T_CONFIG set CFG_VALUE_C = '31' where CFG_ID_C = 'DB_VERSION';
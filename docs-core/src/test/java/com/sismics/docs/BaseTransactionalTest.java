@@ -20,6 +20,7 @@ public abstract class BaseTransactionalTest {
         EntityManager em = EMF.get().createEntityManager();
         ThreadLocalContext context = ThreadLocalContext.get();
         context.setEntityManager(em);
+        context.startUnitOfWork();
         EntityTransaction tx = em.getTransaction();
         tx.begin();
     }
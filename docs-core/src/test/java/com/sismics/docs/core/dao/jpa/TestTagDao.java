@@ -0,0 +1,147 @@
+package com.sismics.docs.core.dao.jpa;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the tag DAO.
+ *
+ * @author bgamard
+ */
+public class TestTagDao extends BaseTransactionalTest {
+    @Test
+    public void testFindByDocumentIds() throws Exception {
+        // Create 2 users
+        String user1Id = createUser("tagdao1");
+        String user2Id = createUser("tagdao2");
+
+        // Create tags: 2 readable by user1, 1 only readable by user2
+        String tag1Id = createTag("Alpha", user1Id, user1Id);
+        String tag2Id = createTag("Bravo", user2Id, user2Id, user1Id);
+        String tag3Id = createTag("Charlie", user2Id, user2Id);
+
+        // Tag 3 documents
+        String document1Id = createDocument(user1Id, tag2Id, tag1Id, tag3Id);
+        String document2Id = createDocument(user1Id, tag3Id);
+        String document3Id = createDocument(user1Id, tag2Id);
+        String document4Id = createDocument(user1Id);
+        TransactionUtil.commit();
+
+        // Tags readable by user1, sorted by name
+        TagDao tagDao = new TagDao();
+        List<String> documentIdList = Lists.newArrayList(document1Id, document2Id, document3Id, document4Id);
+        ListMultimap<String, TagDto> tagDtoMap = tagDao.findByDocumentIds(documentIdList, Lists.newArrayList(user1Id));
+        Assert.assertEquals(Lists.newArrayList("Alpha", "Bravo"), toNameList(tagDtoMap.get(document1Id)));
+        Assert.assertTrue(tagDtoMap.get(document2Id).isEmpty());
+        Assert.assertEquals(Lists.newArrayList("Bravo"), toNameList(tagDtoMap.get(document3Id)));
+        Assert.assertTrue(tagDtoMap.get(document4Id).isEmpty());
+        Assert.assertEquals(3, tagDtoMap.size());
+
+        // Tag details
+        TagDto tagDto = tagDtoMap.get(document1Id).get(1);
+        Assert.assertEquals(tag2Id, tagDto.getId());
+        Assert.assertEquals("#ff0000", tagDto.getColor());
+        Assert.assertEquals("tagdao2", tagDto.getCreator());
+
+        // Tags readable by user2
+        tagDtoMap = tagDao.findByDocumentIds(documentIdList, Lists.newArrayList(user2Id));
+        Assert.assertEquals(Lists.newArrayList("Bravo", "Charlie"), toNameList(tagDtoMap.get(document1Id)));
+        Assert.assertEquals(Lists.newArrayList("Charlie"), toNameList(tagDtoMap.get(document2Id)));
+
+        // All tags without the ACL check
+        tagDtoMap = tagDao.findByDocumentIds(documentIdList, null);
+        Assert.assertEquals(Lists.newArrayList("Alpha", "Bravo", "Charlie"), toNameList(tagDtoMap.get(document1Id)));
+        tagDtoMap = tagDao.findByDocumentIds(documentIdList, Lists.newArrayList("admin"));
+        Assert.assertEquals(Lists.newArrayList("Alpha", "Bravo", "Charlie"), toNameList(tagDtoMap.get(document1Id)));
+
+        // Only the requested documents
+        tagDtoMap = tagDao.findByDocumentIds(Lists.newArrayList(document3Id), null);
+        Assert.assertEquals(1, tagDtoMap.keySet().size());
+        Assert.assertTrue(tagDao.findByDocumentIds(Lists.newArrayList(), null).isEmpty());
+    }
+
+    /**
+     * Create a user.
+     *
+     * @param username Username
+     * @return User ID
+     * @throws Exception e
+     */
+    private String createUser(String username) throws Exception {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("12345678");
+        user.setEmail(username + "@docs.com");
+        user.setRoleId("user");
+        user.setStorageQuota(10L);
+        return new UserDao().create(user, "me");
+    }
+
+    /**
+     * Create a tag readable by some users.
+     *
+     * @param name Name
+     * @param userId Owner ID
+     * @param readerIds IDs of the users reading the tag
+     * @return Tag ID
+     */
+    private String createTag(String name, String userId, String... readerIds) {
+        Tag tag = new Tag();
+        tag.setName(name);
+        tag.setColor("#ff0000");
+        tag.setUserId(userId);
+        String tagId = new TagDao().create(tag, userId);
+        AclDao aclDao = new AclDao();
+        for (String readerId : readerIds) {
+            Acl acl = new Acl();
+            acl.setPerm(PermType.READ);
+            acl.setType(AclType.USER);
+            acl.setSourceId(tagId);
+            acl.setTargetId(readerId);
+            aclDao.create(acl, userId);
+        }
+        return tagId;
+    }
+
+    /**
+     * Create a tagged document.
+     *
+     * @param userId Owner ID
+     * @param tagIds Tag IDs
+     * @return Document ID
+     */
+    private String createDocument(String userId, String... tagIds) {
+        Document document = new Document();
+        document.setUserId(userId);
+        document.setTitle("Tagged document");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        String documentId = new DocumentDao().create(document, userId);
+        new TagDao().updateTagList(documentId, Sets.newHashSet(tagIds));
+        return documentId;
+    }
+
+    private List<String> toNameList(List<TagDto> tagDtoList) {
+        return tagDtoList.stream().map(TagDto::getName).collect(Collectors.toList());
+    }
+}
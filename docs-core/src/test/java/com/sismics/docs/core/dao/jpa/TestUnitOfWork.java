@@ -0,0 +1,136 @@
+package com.sismics.docs.core.dao.jpa;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.*;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.PermissionCache;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compares the unit of work mode with the entity manager cleared on each DAO call.
+ *
+ * @author bgamard
+ */
+public class TestUnitOfWork extends BaseTransactionalTest {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(TestUnitOfWork.class);
+
+    @Test
+    public void testUnitOfWork() throws Exception {
+        // Create a user with tagged documents
+        UserDao userDao = new UserDao();
+        User user = new User();
+        user.setUsername("uow");
+        user.setPassword("12345678");
+        user.setEmail("uow@docs.com");
+        user.setRoleId("user");
+        user.setStorageQuota(10L);
+        String userId = userDao.create(user, "admin");
+
+        TagDao tagDao = new TagDao();
+        Tag tag = new Tag();
+        tag.setName("uow");
+        tag.setColor("#ff0000");
+        tag.setUserId(userId);
+        String tagId = tagDao.create(tag, userId);
+        AclDao aclDao = new AclDao();
+        Acl tagAcl = new Acl();
+        tagAcl.setPerm(PermType.READ);
+        tagAcl.setType(AclType.USER);
+        tagAcl.setSourceId(tagId);
+        tagAcl.setTargetId(userId);
+        aclDao.create(tagAcl, userId);
+
+        DocumentDao documentDao = new DocumentDao();
+        List<String> documentIdList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Document document = new Document();
+            document.setUserId(userId);
+            document.setTitle("Document " + i);
+            document.setLanguage("eng");
+            document.setCreateDate(new Date());
+            String documentId = documentDao.create(document, userId);
+            documentIdList.add(documentId);
+            tagDao.updateTagList(documentId, Sets.newHashSet(tagId));
+
+            Acl acl = new Acl();
+            acl.setPerm(PermType.READ);
+            acl.setType(AclType.USER);
+            acl.setSourceId(documentId);
+            acl.setTargetId(userId);
+            aclDao.create(acl, userId);
+        }
+        TransactionUtil.commit();
+
+        // Run the same requests in both modes
+        long[] cleared = runRequests(false, userId, tagId, documentIdList);
+        long[] unitOfWork = runRequests(true, userId, tagId, documentIdList);
+        log.info("Entity manager cleared on each call: " + cleared[0] + "ms, " + cleared[1] + " statements, " + cleared[2] + " entities loaded");
+        log.info("Unit of work: " + unitOfWork[0] + "ms, " + unitOfWork[1] + " statements, " + unitOfWork[2] + " entities loaded");
+        Assert.assertTrue(unitOfWork[1] < cleared[1]);
+        Assert.assertTrue(unitOfWork[2] < cleared[2]);
+    }
+
+    /**
+     * Run requests reading documents, in the current transaction.
+     *
+     * @param unitOfWork True to use the unit of work mode
+     * @param userId User ID
+     * @param tagId Tag ID
+     * @param documentIdList Document IDs
+     * @return Duration (in milliseconds), number of statements and number of loaded entities
+     */
+    private long[] runRequests(boolean unitOfWork, String userId, String tagId, List<String> documentIdList) {
+        ThreadLocalContext.get().setUnitOfWork(unitOfWork);
+        ThreadLocalContext.get().getEntityManager().clear();
+        Statistics statistics = EMF.get().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.currentTimeMillis();
+
+        UserDao userDao = new UserDao();
+        TagDao tagDao = new TagDao();
+        ConfigDao configDao = new ConfigDao();
+        DocumentDao documentDao = new DocumentDao();
+        AclDao aclDao = new AclDao();
+        List<String> targetIdList = Lists.newArrayList(userId);
+        for (int i = 0; i < 20; i++) {
+            PermissionCache.invalidateAll();
+            for (String documentId : documentIdList) {
+                Assert.assertNotNull(userDao.getById(userId));
+                Assert.assertNotNull(configDao.getById(ConfigType.DEFAULT_LANGUAGE));
+                Assert.assertNotNull(tagDao.getById(tagId));
+                Assert.assertNotNull(documentDao.getDocument(documentId, PermType.READ, targetIdList));
+                Assert.assertNotNull(documentDao.getById(documentId));
+                Assert.assertEquals(1, tagDao.findByCriteria(new TagCriteria().setTargetIdList(targetIdList).setDocumentId(documentId), null).size());
+                Assert.assertEquals(1, aclDao.getBySourceId(documentId, AclType.USER).size());
+            }
+        }
+
+        return new long[] { System.currentTimeMillis() - start,
+                statistics.getPrepareStatementCount(),
+                statistics.getEntityLoadCount() };
+    }
+}
@@ -0,0 +1,224 @@
+package com.sismics.docs.core.service;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test of the audit log service.
+ *
+ * @author bgamard
+ */
+public class TestAuditLogService extends BaseTransactionalTest {
+    /**
+     * Audit logs are written in batches.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testBatch() throws Exception {
+        String entityId = UUID.randomUUID().toString();
+        RecordingAuditLogService service = new RecordingAuditLogService(100, 3, 500, 1000);
+        service.startAsync().awaitRunning();
+        try {
+            service.add(createAuditLogList(entityId, 7));
+            service.awaitWritten(7);
+        } finally {
+            service.stopAsync().awaitTerminated();
+        }
+
+        Assert.assertEquals(3, service.batchSizeList.size());
+        Assert.assertEquals(3, (int) service.batchSizeList.get(0));
+        Assert.assertEquals(3, (int) service.batchSizeList.get(1));
+        Assert.assertEquals(1, (int) service.batchSizeList.get(2));
+        Assert.assertEquals(0, service.callerWriteCount);
+        Assert.assertEquals(7, countAuditLogs(entityId));
+    }
+
+    /**
+     * The committing thread writes its audit logs itself when the buffer stays full.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testBufferFull() throws Exception {
+        String entityId = UUID.randomUUID().toString();
+        RecordingAuditLogService service = new RecordingAuditLogService(2, 10, 50, 100);
+        service.startAsync().awaitRunning();
+        try {
+            // Block the writer on a first audit log
+            service.blockWriter = new CountDownLatch(1);
+            service.add(createAuditLogList(entityId, 1));
+            Assert.assertTrue(service.writerBlocked.await(10, TimeUnit.SECONDS));
+
+            // 2 audit logs fill the buffer, the 3 others are written by the calling thread
+            service.add(createAuditLogList(entityId, 5));
+            Assert.assertEquals(1, service.callerWriteCount);
+            Assert.assertEquals(2, service.getBufferedCount());
+            Assert.assertEquals(3, countAuditLogs(entityId));
+
+            // Release the writer
+            service.blockWriter.countDown();
+            service.awaitWritten(6);
+        } finally {
+            service.stopAsync().awaitTerminated();
+        }
+
+        Assert.assertEquals(6, countAuditLogs(entityId));
+    }
+
+    /**
+     * Audit logs are written in the transaction of the audited changes in transactional mode,
+     * and only after the commit otherwise.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testTransactional() throws Exception {
+        Tag tag = new Tag();
+        tag.setId(UUID.randomUUID().toString());
+        tag.setName("transactional");
+
+        try {
+            AuditLogUtil.setTransactional(true);
+            AuditLogUtil.create(tag, AuditLogType.CREATE, "admin");
+            Assert.assertEquals(1, countAuditLogsInTransaction(tag.getId()));
+            Assert.assertEquals(0, countAuditLogs(tag.getId()));
+            TransactionUtil.commit();
+            Assert.assertEquals(1, countAuditLogs(tag.getId()));
+        } finally {
+            AuditLogUtil.setTransactional(false);
+        }
+
+        // Without the transactional mode, the audit log is only visible after the commit
+        AuditLogUtil.create(tag, AuditLogType.UPDATE, "admin");
+        Assert.assertEquals(1, countAuditLogsInTransaction(tag.getId()));
+        TransactionUtil.commit();
+        Assert.assertEquals(2, countAuditLogsInTransaction(tag.getId()));
+        Assert.assertEquals(2, countAuditLogs(tag.getId()));
+
+        // The audit logs of a rolled back transaction are never written
+        AuditLogUtil.create(tag, AuditLogType.DELETE, "admin");
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.getTransaction().rollback();
+        em.close();
+        ThreadLocalContext.cleanup();
+        Assert.assertEquals(2, countAuditLogs(tag.getId()));
+    }
+
+    /**
+     * Create audit logs ready to be written.
+     *
+     * @param entityId Entity ID
+     * @param count Number of audit logs
+     * @return Audit logs
+     */
+    private List<AuditLog> createAuditLogList(String entityId, int count) {
+        List<AuditLog> auditLogList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AuditLog auditLog = new AuditLog();
+            auditLog.setId(UUID.randomUUID().toString());
+            auditLog.setUserId("admin");
+            auditLog.setEntityId(entityId);
+            auditLog.setEntityClass("Tag");
+            auditLog.setType(AuditLogType.UPDATE);
+            auditLog.setMessage("Audit log " + i);
+            auditLog.setCreateDate(new Date());
+            auditLogList.add(auditLog);
+        }
+        return auditLogList;
+    }
+
+    /**
+     * Count the committed audit logs of an entity.
+     *
+     * @param entityId Entity ID
+     * @return Number of audit logs
+     */
+    private int countAuditLogs(String entityId) {
+        EntityManager em = EMF.get().createEntityManager();
+        try {
+            return countAuditLogs(em, entityId);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Count the audit logs of an entity visible in the current transaction.
+     *
+     * @param entityId Entity ID
+     * @return Number of audit logs
+     */
+    private int countAuditLogsInTransaction(String entityId) {
+        return countAuditLogs(ThreadLocalContext.get().getEntityManager(), entityId);
+    }
+
+    private int countAuditLogs(EntityManager em, String entityId) {
+        return ((Number) em.createNativeQuery("select count(*) from T_AUDIT_LOG where LOG_IDENTITY_C = :entityId")
+                .setParameter("entityId", entityId)
+                .getSingleResult()).intValue();
+    }
+
+    /**
+     * Audit log service recording the written batches.
+     */
+    private static class RecordingAuditLogService extends AuditLogService {
+        private final Thread callerThread = Thread.currentThread();
+        private final List<Integer> batchSizeList = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch writerBlocked = new CountDownLatch(1);
+        private volatile CountDownLatch blockWriter;
+        private volatile int callerWriteCount;
+        private volatile int writtenCount;
+
+        RecordingAuditLogService(int bufferSize, int batchSize, int flushInterval, int bufferTimeout) {
+            super(bufferSize, batchSize, flushInterval, bufferTimeout);
+        }
+
+        @Override
+        protected void write(List<AuditLog> auditLogList) {
+            if (Thread.currentThread() == callerThread) {
+                callerWriteCount++;
+            } else {
+                batchSizeList.add(auditLogList.size());
+                if (blockWriter != null) {
+                    writerBlocked.countDown();
+                    try {
+                        blockWriter.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            super.write(auditLogList);
+            synchronized (this) {
+                writtenCount += auditLogList.size();
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitWritten(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (writtenCount < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            Assert.assertEquals(count, writtenCount);
+        }
+    }
+}
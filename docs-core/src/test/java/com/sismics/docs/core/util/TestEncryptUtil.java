@@ -35,7 +35,12 @@ public class TestEncryptUtil {
         byte[] encryptedData = ByteStreams.toByteArray(inputStream);
         byte[] assertData = ByteStreams.toByteArray(this.getClass().getResourceAsStream("/file/udhr_encrypted.pdf"));
 
-        Assert.assertEquals(encryptedData.length, assertData.length);
+        Assert.assertArrayEquals(encryptedData, assertData);
+
+        // The derived key is the same after clearing the cache
+        EncryptionUtil.clearKeyCache();
+        inputStream = new CipherInputStream(this.getClass().getResourceAsStream("/file/udhr.pdf"), EncryptionUtil.getEncryptionCipher("OnceUponATime"));
+        Assert.assertArrayEquals(assertData, ByteStreams.toByteArray(inputStream));
     }
     
     @Test
@@ -45,6 +50,6 @@ public class TestEncryptUtil {
         byte[] encryptedData = ByteStreams.toByteArray(inputStream);
         byte[] assertData = ByteStreams.toByteArray(this.getClass().getResourceAsStream("/file/udhr.pdf"));
         
-        Assert.assertEquals(encryptedData.length, assertData.length);
+        Assert.assertArrayEquals(encryptedData, assertData);
     }
 }
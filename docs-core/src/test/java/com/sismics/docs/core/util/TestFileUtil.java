@@ -7,9 +7,11 @@ import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.format.*;
 import com.sismics.util.mime.MimeType;
 import com.sismics.util.mime.MimeTypeUtil;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.crypto.CipherInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -116,10 +118,13 @@ public class TestFileUtil {
             file2.setPrivateKey("OnceUponATime");
             file2.setMimeType(MimeType.APPLICATION_PDF);
             
-            // Fourth file
-            Files.copy(inputStream3, DirectoryUtil.getStorageDirectory().resolve("document_docx"), StandardCopyOption.REPLACE_EXISTING);
+            // Fourth file, encrypted so its PDF conversion is cached
+            Files.copy(new CipherInputStream(inputStream3, EncryptionUtil.getEncryptionCipher("OnceUponATime")),
+                    DirectoryUtil.getStorageDirectory().resolve("document_docx"), StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(DirectoryUtil.getStorageDirectory().resolve("document_docx_pdf"));
             File file3 = new File();
             file3.setId("document_docx");
+            file3.setPrivateKey("OnceUponATime");
             file3.setMimeType(MimeType.OFFICE_DOCUMENT);
             
             // Fifth file
@@ -137,6 +142,14 @@ public class TestFileUtil {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             PdfUtil.convertToPdf(documentDto, Lists.newArrayList(file0, file1, file2, file3, file4, file5), true, true, 10, outputStream);
             Assert.assertTrue(outputStream.toByteArray().length > 0);
+            Assert.assertTrue(Files.exists(DirectoryUtil.getStorageDirectory().resolve("document_docx_pdf")));
+
+            // Convert again, using the cached PDF
+            outputStream = new ByteArrayOutputStream();
+            PdfUtil.convertToPdf(documentDto, Lists.newArrayList(file3), true, false, 10, outputStream);
+            try (PDDocument doc = PDDocument.load(outputStream.toByteArray())) {
+                Assert.assertTrue(doc.getNumberOfPages() > 0);
+            }
         }
     }
 }
@@ -0,0 +1,243 @@
+package com.sismics.docs.core.util.authentication;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapAuthenticationException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionFactory;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the LDAP authentication handler, against stubbed LDAP connections.
+ *
+ * @author bgamard
+ */
+public class TestLdapAuthenticationHandler extends BaseTransactionalTest {
+    /**
+     * Stubbed LDAP server.
+     */
+    private StubLdapConnectionFactory ldap;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        ldap = new StubLdapConnectionFactory();
+        LdapAuthenticationHandler.setConnectionFactoryProvider(() -> ldap);
+
+        ConfigDao configDao = new ConfigDao();
+        configDao.update(ConfigType.LDAP_ENABLED, "true");
+        configDao.update(ConfigType.LDAP_HOST, "localhost");
+        configDao.update(ConfigType.LDAP_PORT, "389");
+        configDao.update(ConfigType.LDAP_ADMIN_DN, "uid=admin,ou=system");
+        configDao.update(ConfigType.LDAP_ADMIN_PASSWORD, "secret");
+        configDao.update(ConfigType.LDAP_BASE_DN, "o=TEST");
+        configDao.update(ConfigType.LDAP_FILTER, "(&(objectclass=inetOrgPerson)(uid=USERNAME))");
+        configDao.update(ConfigType.LDAP_DEFAULT_EMAIL, "devnull@teedy.io");
+        configDao.update(ConfigType.LDAP_DEFAULT_STORAGE, "100000000");
+        LdapAuthenticationHandler.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        LdapAuthenticationHandler.setBindCacheExpiry(0);
+        LdapAuthenticationHandler.setConnectionFactoryProvider(null);
+        LdapAuthenticationHandler.reset();
+
+        // Do not keep the LDAP configuration for the other tests
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.getTransaction().rollback();
+        em.close();
+        ThreadLocalContext.cleanup();
+        super.tearDown();
+    }
+
+    /**
+     * A single pooled connection is borrowed for the search and the bind, and always returned.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testPool() throws Exception {
+        LdapAuthenticationHandler handler = new LdapAuthenticationHandler();
+
+        // First authentication, the user is created
+        User user = handler.authenticate("ldap1", "secret1");
+        Assert.assertNotNull(user);
+        Assert.assertEquals("ldap1@teedy.io", user.getEmail());
+        LdapConnectionPool pool = LdapAuthenticationHandler.getPool();
+        Assert.assertNotNull(pool);
+        Assert.assertEquals(0, pool.getNumActive());
+        Assert.assertEquals(1, pool.getNumIdle());
+
+        // The connection is reused, also after a failed bind or an unknown user
+        Assert.assertNotNull(handler.authenticate("ldap1", "secret1"));
+        Assert.assertNull(handler.authenticate("ldap1", "wrong"));
+        Assert.assertNull(handler.authenticate("unknown", "secret1"));
+        Assert.assertEquals(0, pool.getNumActive());
+        Assert.assertEquals(1, pool.getNumIdle());
+        Assert.assertEquals(1, ldap.connectionCount.get());
+        Assert.assertEquals(4, ldap.searchCount.get());
+        Assert.assertEquals(3, ldap.userBindCount.get());
+
+        // The configuration is read again after a reset, with a new pool
+        new ConfigDao().update(ConfigType.LDAP_ENABLED, "false");
+        Assert.assertNotNull(handler.authenticate("ldap1", "secret1"));
+        LdapAuthenticationHandler.reset();
+        Assert.assertTrue(pool.isClosed());
+        Assert.assertNull(LdapAuthenticationHandler.getPool());
+        Assert.assertNull(handler.authenticate("ldap1", "secret1"));
+        Assert.assertNull(LdapAuthenticationHandler.getPool());
+    }
+
+    /**
+     * Successful binds are cached, failed binds are not.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testBindCache() throws Exception {
+        LdapAuthenticationHandler.setBindCacheExpiry(60);
+        LdapAuthenticationHandler handler = new LdapAuthenticationHandler();
+        long hitCount = LdapAuthenticationHandler.getBindCacheHitCount();
+
+        // The second authentication is served by the cache
+        Assert.assertNotNull(handler.authenticate("ldap2", "secret2"));
+        Assert.assertNotNull(handler.authenticate("ldap2", "secret2"));
+        Assert.assertEquals(1, ldap.userBindCount.get());
+        Assert.assertEquals(hitCount + 1, LdapAuthenticationHandler.getBindCacheHitCount());
+
+        // Another password is checked against the LDAP
+        Assert.assertNull(handler.authenticate("ldap2", "wrong"));
+        Assert.assertEquals(2, ldap.userBindCount.get());
+        Assert.assertEquals(hitCount + 1, LdapAuthenticationHandler.getBindCacheHitCount());
+
+        // The same password for another user is not served by the cache
+        Assert.assertNull(handler.authenticate("ldap1", "secret2"));
+        Assert.assertEquals(3, ldap.userBindCount.get());
+
+        // The failed bind didn't evict the cached bind
+        Assert.assertNotNull(handler.authenticate("ldap2", "secret2"));
+        Assert.assertEquals(3, ldap.userBindCount.get());
+        Assert.assertEquals(hitCount + 2, LdapAuthenticationHandler.getBindCacheHitCount());
+
+        // The cache is cleared on reset
+        LdapAuthenticationHandler.reset();
+        Assert.assertNotNull(handler.authenticate("ldap2", "secret2"));
+        Assert.assertEquals(4, ldap.userBindCount.get());
+        Assert.assertEquals(hitCount + 2, LdapAuthenticationHandler.getBindCacheHitCount());
+    }
+
+    /**
+     * Stubbed LDAP connections, with the users ldapN having the password secretN.
+     */
+    private static class StubLdapConnectionFactory implements LdapConnectionFactory {
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final AtomicInteger searchCount = new AtomicInteger();
+        private final AtomicInteger userBindCount = new AtomicInteger();
+
+        @Override
+        public LdapConnection bindConnection(LdapConnection connection) {
+            // Bound as admin
+            return connection;
+        }
+
+        @Override
+        public LdapConnection configureConnection(LdapConnection connection) {
+            return connection;
+        }
+
+        @Override
+        public LdapApiService getLdapApiService() {
+            return null;
+        }
+
+        @Override
+        public LdapConnection newLdapConnection() {
+            return newUnboundLdapConnection();
+        }
+
+        @Override
+        public LdapConnection newUnboundLdapConnection() {
+            connectionCount.incrementAndGet();
+            return (LdapConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { LdapConnection.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "search":
+                                searchCount.incrementAndGet();
+                                return search((String) args[1]);
+                            case "bind":
+                                if (args != null && args.length == 2) {
+                                    bind((Dn) args[0], (String) args[1]);
+                                }
+                                return null;
+                            case "isConnected":
+                            case "isAuthenticated":
+                                return true;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return method.getReturnType() == boolean.class ? false : null;
+                        }
+                    });
+        }
+
+        /**
+         * Search a user with the configured filter.
+         *
+         * @param filter Filter
+         * @return Cursor on the found user
+         * @throws LdapException e
+         */
+        private EntryCursor search(String filter) throws LdapException {
+            String username = filter.substring(filter.indexOf("(uid=") + 5, filter.lastIndexOf("))"));
+            Entry entry = username.startsWith("ldap") ? new DefaultEntry("uid=" + username + ",o=TEST",
+                    "mail: " + username + "@teedy.io") : null;
+            AtomicInteger position = new AtomicInteger();
+            return (EntryCursor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { EntryCursor.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next":
+                                return entry != null && position.getAndIncrement() == 0;
+                            case "get":
+                                return entry;
+                            default:
+                                return method.getReturnType() == boolean.class ? false : null;
+                        }
+                    });
+        }
+
+        /**
+         * Bind as a user.
+         *
+         * @param dn User DN
+         * @param password Password
+         * @throws LdapException e
+         */
+        private void bind(Dn dn, String password) throws LdapException {
+            userBindCount.incrementAndGet();
+            String username = dn.getRdn().getValue();
+            if (!password.equals("secret" + username.substring(4))) {
+                throw new LdapAuthenticationException("Invalid credentials");
+            }
+        }
+    }
+}
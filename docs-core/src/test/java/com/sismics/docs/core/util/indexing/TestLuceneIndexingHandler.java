@@ -0,0 +1,199 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test of the Lucene indexing handler with the index maintenance running in the background.
+ *
+ * @author bgamard
+ */
+public class TestLuceneIndexingHandler extends BaseTransactionalTest {
+    /**
+     * Indexing handler.
+     */
+    private LuceneIndexingHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        new ConfigDao().update(ConfigType.LUCENE_DIRECTORY_STORAGE, "RAM");
+        handler = new LuceneIndexingHandler();
+        handler.startUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        handler.shutDown();
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.getTransaction().rollback();
+        em.close();
+        ThreadLocalContext.cleanup();
+        super.tearDown();
+    }
+
+    /**
+     * Changes are searchable before their commit, and committed together after enough changes.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        // Commit every 3 changes, or after an hour
+        handler.startMaintenance(3600, 3, 20, 3600);
+
+        // The change is visible to the searches after the next searcher refresh, without a commit
+        Document document1 = createDocument("Lighthouse");
+        Assert.assertTrue(handler.hasUncommittedChanges());
+        Assert.assertTrue(waitFor(() -> isFound("lighthouse", document1)));
+        Assert.assertTrue(handler.hasUncommittedChanges());
+
+        // The third change triggers a commit
+        Document document2 = createDocument("Harbour");
+        Assert.assertTrue(waitFor(() -> isFound("harbour", document2)));
+        Assert.assertTrue(handler.hasUncommittedChanges());
+        handler.deleteDocument(document1.getId());
+        Assert.assertTrue(waitFor(() -> !handler.hasUncommittedChanges()));
+        Assert.assertTrue(waitFor(() -> !isFound("lighthouse", document1)));
+
+        // Without maintenance, each change is committed and searchable immediately
+        handler.stopMaintenance();
+        Document document3 = createDocument("Jetty");
+        Assert.assertFalse(handler.hasUncommittedChanges());
+        Assert.assertTrue(isFound("jetty", document3));
+    }
+
+    /**
+     * The pending changes are committed when the maintenance stops.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testMaintenanceShutdown() throws Exception {
+        handler.startMaintenance(3600, 2, 20, 3600);
+        Document document1 = createDocument("Lighthouse");
+        Assert.assertTrue(handler.hasUncommittedChanges());
+        handler.stopMaintenance();
+        Assert.assertFalse(handler.hasUncommittedChanges());
+        Assert.assertTrue(isFound("lighthouse", document1));
+    }
+
+    /**
+     * A document deleted while its batch is rebuilt is not brought back by the rebuild.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testDeleteDuringRebuild() throws Exception {
+        // Create a document in the database and the index
+        Document document = new Document();
+        document.setUserId("admin");
+        document.setTitle("Breakwater");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        String documentId = new DocumentDao().create(document, "admin");
+        TransactionUtil.commit();
+        handler.createDocument(document);
+        Assert.assertTrue(isFound("breakwater", document));
+
+        // Delete the document once its batch has been read from the database
+        AtomicReference<Thread> deleteThread = new AtomicReference<>();
+        handler.setRebuildBatchListener(idList -> {
+            if (!idList.contains(documentId) || deleteThread.get() != null) {
+                return;
+            }
+            Thread thread = new Thread(() -> {
+                TransactionUtil.handle(() -> new DocumentDao().delete(documentId, "admin"));
+                handler.deleteDocument(documentId);
+            });
+            deleteThread.set(thread);
+            thread.start();
+
+            // The deletion waits for the batch to be written
+            long deadline = System.currentTimeMillis() + 10000;
+            while (thread.getState() != Thread.State.WAITING && thread.isAlive() && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+        });
+        try {
+            handler.rebuildIndex();
+        } finally {
+            handler.setRebuildBatchListener(null);
+        }
+        Assert.assertNotNull(deleteThread.get());
+        deleteThread.get().join(10000);
+
+        // The deletion has been applied after the batch
+        Assert.assertFalse(isFound("breakwater", document));
+    }
+
+    /**
+     * Index a new document.
+     *
+     * @param title Title
+     * @return Document
+     */
+    private Document createDocument(String title) {
+        Document document = new Document();
+        document.setId(UUID.randomUUID().toString());
+        document.setUserId("admin");
+        document.setTitle(title);
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        handler.createDocument(document);
+        return document;
+    }
+
+    /**
+     * Returns true if a document is found by a term of its title.
+     *
+     * @param term Title term
+     * @param document Document
+     * @return True if found
+     * @throws Exception e
+     */
+    private boolean isFound(String term, Document document) throws Exception {
+        return handler.search(new TermQuery(new Term("title", term)), null).contains(document.getId());
+    }
+
+    /**
+     * Wait for a condition to become true.
+     *
+     * @param condition Condition
+     * @return True if the condition became true within 10 seconds
+     * @throws Exception e
+     */
+    private boolean waitFor(ConditionSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.get()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    /**
+     * Condition checked by waitFor.
+     */
+    private interface ConditionSupplier {
+        boolean get() throws Exception;
+    }
+}
@@ -0,0 +1,179 @@
+package com.sismics.util.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.event.PrincipalUpdatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.AuthenticationToken;
+import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.security.UserPrincipal;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the authenticated principals, by authentication token ID.
+ * Entries are invalidated when the users, groups or tokens change, and expire after a few seconds.
+ *
+ * @author bgamard
+ */
+public class PrincipalCache {
+    /**
+     * Cached principals, by authentication token ID. Null if disabled.
+     */
+    private static final Cache<String, Entry> cache;
+
+    /**
+     * Event bus the invalidation listener is registered on.
+     */
+    private static EventBus registeredEventBus;
+
+    static {
+        int expiry = ConfigUtil.getEnvIntegerValue(Constants.PRINCIPAL_CACHE_EXPIRY_ENV, 30);
+        cache = expiry <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(expiry, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Listen to the principal updates of the current application context.
+     */
+    public static synchronized void register() {
+        EventBus eventBus = AppContext.getInstance().getAsyncEventBus();
+        if (eventBus != registeredEventBus) {
+            eventBus.register(new PrincipalCache());
+            registeredEventBus = eventBus;
+        }
+    }
+
+    /**
+     * Returns a cached principal.
+     *
+     * @param authTokenId Authentication token ID
+     * @return Cached principal or null
+     */
+    public static Entry get(String authTokenId) {
+        return cache == null ? null : cache.getIfPresent(authTokenId);
+    }
+
+    /**
+     * Cache a principal.
+     *
+     * @param authToken Authentication token
+     * @param userPrincipal Principal resolved from this token
+     */
+    public static void put(AuthenticationToken authToken, UserPrincipal userPrincipal) {
+        if (cache != null) {
+            cache.put(authToken.getId(), new Entry(authToken, userPrincipal));
+        }
+    }
+
+    /**
+     * Invalidate a cached principal.
+     *
+     * @param authTokenId Authentication token ID
+     */
+    public static void invalidate(String authTokenId) {
+        if (cache != null) {
+            cache.invalidate(authTokenId);
+        }
+    }
+
+    /**
+     * Invalidate the cached principals of a user.
+     *
+     * @param userId User ID
+     */
+    public static void invalidateUser(String userId) {
+        if (cache != null) {
+            cache.asMap().values().removeIf(entry -> userId.equals(entry.getUserPrincipal().getId()));
+        }
+    }
+
+    /**
+     * Invalidate a cached principal as soon as the current transaction is committed,
+     * without waiting for the principal updated event.
+     *
+     * @param authTokenId Authentication token ID
+     */
+    public static void invalidateAfterCommit(String authTokenId) {
+        ThreadLocalContext.get().addCommitTask(() -> invalidate(authTokenId));
+    }
+
+    /**
+     * Invalidate the cached principals of a user as soon as the current transaction is committed,
+     * without waiting for the principal updated event.
+     *
+     * @param userId User ID
+     */
+    public static void invalidateUserAfterCommit(String userId) {
+        ThreadLocalContext.get().addCommitTask(() -> invalidateUser(userId));
+    }
+
+    /**
+     * Principal updated.
+     *
+     * @param event Principal updated event
+     */
+    @Subscribe
+    @AllowConcurrentEvents
+    public void on(final PrincipalUpdatedAsyncEvent event) {
+        if (cache == null) {
+            return;
+        }
+        if (event.getUserId() == null) {
+            cache.invalidateAll();
+        } else {
+            invalidateUser(event.getUserId());
+        }
+    }
+
+    /**
+     * A cached principal.
+     */
+    public static class Entry {
+        /**
+         * Authentication token of the session.
+         */
+        private final AuthenticationToken authToken;
+
+        /**
+         * Principal of the authenticated user.
+         */
+        private final UserPrincipal userPrincipal;
+
+        /**
+         * Constructor of Entry.
+         *
+         * @param authToken Authentication token of the session
+         * @param userPrincipal Principal of the authenticated user
+         */
+        private Entry(AuthenticationToken authToken, UserPrincipal userPrincipal) {
+            this.authToken = authToken;
+            this.userPrincipal = userPrincipal;
+        }
+
+        /**
+         * Getter of authToken.
+         *
+         * @return authToken
+         */
+        public AuthenticationToken getAuthToken() {
+            return authToken;
+        }
+
+        /**
+         * Getter of userPrincipal.
+         *
+         * @return userPrincipal
+         */
+        public UserPrincipal getUserPrincipal() {
+            return userPrincipal;
+        }
+    }
+}
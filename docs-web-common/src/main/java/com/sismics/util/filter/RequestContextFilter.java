@@ -81,6 +81,7 @@ public class RequestContextFilter implements Filter {
         }
         ThreadLocalContext context = ThreadLocalContext.get();
         context.setEntityManager(em);
+        context.startUnitOfWork();
         EntityTransaction tx = em.getTransaction();
         tx.begin();
         
@@ -111,6 +112,7 @@ public class RequestContextFilter implements Filter {
         }
 
         // No error processing the request : commit / rollback the current transaction depending on the HTTP code
+        boolean committed = false;
         if (em.isOpen()) {
             if (em.getTransaction() != null && em.getTransaction().isActive()) {
                 HttpServletResponse r = (HttpServletResponse) response;
@@ -118,6 +120,7 @@ public class RequestContextFilter implements Filter {
                 if (statusClass == 2 || statusClass == 3) {
                     try {
                         em.getTransaction().commit();
+                        committed = true;
                     } catch (Exception e) {
                         log.error("Error during commit", e);
                         r.sendError(500);
@@ -134,6 +137,12 @@ public class RequestContextFilter implements Filter {
             }
         }
 
+        // Write the audit logs and run the tasks of the committed transaction
+        if (committed) {
+            context.flushAuditLogs();
+            context.runCommitTasks();
+        }
+
         // Fire all pending async events after request transaction commit.
         // This way, all modifications done during this request are available in the listeners.
         context.fireAllAsyncEvents();
@@ -71,6 +71,18 @@ public abstract class SecurityFilter implements Filter {
      * @param user User to inject
      */
     private void injectAuthenticatedUser(HttpServletRequest request, User user) {
+        UserPrincipal userPrincipal = createUserPrincipal(user);
+        cachePrincipal(request, userPrincipal);
+        request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+    }
+
+    /**
+     * Resolve the groups and base functions of an user.
+     *
+     * @param user User
+     * @return User principal
+     */
+    private UserPrincipal createUserPrincipal(User user) {
         UserPrincipal userPrincipal = new UserPrincipal(user.getId(), user.getUsername());
 
         // Add groups
@@ -97,7 +109,7 @@ public abstract class SecurityFilter implements Filter {
         // Add email
         userPrincipal.setEmail(user.getEmail());
 
-        request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+        return userPrincipal;
     }
 
     /**
@@ -127,8 +139,13 @@ public abstract class SecurityFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
 
         if (!hasIdentifiedUser(request)) {
-            User user = authenticate(request);
-            injectUser(request, user);
+            UserPrincipal userPrincipal = getCachedPrincipal(request);
+            if (userPrincipal != null) {
+                request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+            } else {
+                User user = authenticate(request);
+                injectUser(request, user);
+            }
         }
 
         filterChain.doFilter(request, response);
@@ -142,4 +159,24 @@ public abstract class SecurityFilter implements Filter {
      */
     protected abstract User authenticate(HttpServletRequest request);
 
+    /**
+     * Returns the principal of an user already authenticated by this filter, without resolving it again.
+     *
+     * @param request HTTP request
+     * @return nullable User principal
+     */
+    protected UserPrincipal getCachedPrincipal(HttpServletRequest request) {
+        return null;
+    }
+
+    /**
+     * Keeps the principal resolved by this filter for the next requests.
+     *
+     * @param request HTTP request
+     * @param userPrincipal User principal
+     */
+    protected void cachePrincipal(HttpServletRequest request, UserPrincipal userPrincipal) {
+        // NOP
+    }
+
 }
\ No newline at end of file
@@ -4,7 +4,10 @@ import com.sismics.docs.core.dao.AuthenticationTokenDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.AuthenticationToken;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.security.UserPrincipal;
 
+import javax.servlet.FilterConfig;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import java.text.MessageFormat;
@@ -34,6 +37,16 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
      */
     private static final int TOKEN_SESSION_LIFETIME = 3600 * 24;
 
+    /**
+     * Name of the attribute containing the authentication token resolved by this filter.
+     */
+    private static final String AUTH_TOKEN_ATTRIBUTE = "authentication_token";
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        TransactionUtil.handle(PrincipalCache::register);
+    }
+
     /**
      * Extracts and returns an authentication token from a cookie list.
      *
@@ -104,6 +117,36 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
             return null;
         }
 
+        request.setAttribute(AUTH_TOKEN_ATTRIBUTE, authToken);
         return new UserDao().getById(authToken.getUserId());
     }
+
+    @Override
+    protected UserPrincipal getCachedPrincipal(HttpServletRequest request) {
+        String authTokenId = extractAuthToken(request.getCookies());
+        if (authTokenId == null) {
+            return null;
+        }
+
+        PrincipalCache.Entry entry = PrincipalCache.get(authTokenId);
+        if (entry == null) {
+            return null;
+        }
+
+        if (isTokenExpired(entry.getAuthToken())) {
+            // The last connection date may have been updated since, check the token again
+            PrincipalCache.invalidate(authTokenId);
+            return null;
+        }
+
+        return entry.getUserPrincipal();
+    }
+
+    @Override
+    protected void cachePrincipal(HttpServletRequest request, UserPrincipal userPrincipal) {
+        AuthenticationToken authToken = (AuthenticationToken) request.getAttribute(AUTH_TOKEN_ATTRIBUTE);
+        if (authToken != null) {
+            PrincipalCache.put(authToken, userPrincipal);
+        }
+    }
 }
@@ -6,15 +6,18 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.GroupDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.authentication.LdapAuthenticationHandler;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
@@ -24,10 +27,13 @@ import com.sismics.rest.exception.ServerException;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.LocalRegionFactory;
+import com.sismics.util.jpa.MeteredConnectionProvider;
 import com.sismics.util.log4j.LogCriteria;
 import com.sismics.util.log4j.LogEntry;
 import com.sismics.util.log4j.MemoryAppender;
 import org.apache.commons.lang.StringUtils;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
 import org.apache.log4j.Appender;
 import org.apache.log4j.Level;
 import org.slf4j.Logger;
@@ -43,6 +49,7 @@ import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.util.*;
 
@@ -57,7 +64,7 @@ public class AppResource extends BaseResource {
      * Logger.
      */
     private static final Logger log = LoggerFactory.getLogger(AppResource.class);
-    
+
     /**
      * Returns informations about the application.
      *
@@ -69,6 +76,7 @@ public class AppResource extends BaseResource {
      * @apiSuccess {Boolean} guest_login True if guest login is enabled
      * @apiSuccess {String} default_language Default platform language
      * @apiSuccess {Number} queued_tasks Number of queued tasks waiting to be processed
+     * @apiSuccess {Number} suggester_staleness Time since the search suggestions are out of date (in milliseconds)
      * @apiSuccess {String} total_memory Allocated JVM memory (in bytes)
      * @apiSuccess {String} free_memory Free JVM memory (in bytes)
      * @apiSuccess {String} document_count Number of documents
@@ -101,6 +109,7 @@ public class AppResource extends BaseResource {
                 .add("guest_login", guestLogin)
                 .add("default_language", defaultLanguage)
                 .add("queued_tasks", AppContext.getInstance().getQueuedTaskCount())
+                .add("suggester_staleness", AppContext.getInstance().getIndexingHandler().getSuggesterStaleness())
                 .add("total_memory", Runtime.getRuntime().totalMemory())
                 .add("free_memory", Runtime.getRuntime().freeMemory())
                 .add("document_count", documentDao.getDocumentCount())
@@ -314,6 +323,19 @@ public class AppResource extends BaseResource {
      * @apiSuccess {String} password IMAP password
      * @apiSuccess {String} folder IMAP folder
      * @apiSuccess {String} tag Tag for created documents
+     * @apiSuccess {Object} last_sync Last synchronization
+     * @apiSuccess {Number} last_sync.date Date of the last synchronization (timestamp)
+     * @apiSuccess {String} last_sync.error Error of the last synchronization
+     * @apiSuccess {Number} last_sync.count Number of messages imported by the last synchronization
+     * @apiSuccess {Number} last_sync.failure_count Number of messages not imported by the last synchronization
+     * @apiSuccess {Number} last_sync.duration Duration of the last synchronization (in milliseconds)
+     * @apiSuccess {Object} statistics Import statistics since the startup
+     * @apiSuccess {Boolean} statistics.listening True if the inbox is kept opened
+     * @apiSuccess {Number} statistics.imported_count Number of imported messages
+     * @apiSuccess {Number} statistics.failure_count Number of failed imports
+     * @apiSuccess {Number} statistics.total_time Total import time (in milliseconds)
+     * @apiSuccess {Number} statistics.last_lag Time between the reception and the import of the last message (in milliseconds)
+     * @apiSuccess {Number} statistics.max_lag Maximum time between the reception and the import of a message (in milliseconds)
      * @apiError (client) ForbiddenError Access denied
      * @apiPermission admin
      * @apiVersion 1.5.0
@@ -384,7 +406,16 @@ public class AppResource extends BaseResource {
         }
         lastSync.add("error", JsonUtil.nullable(inboxService.getLastSyncError()));
         lastSync.add("count", inboxService.getLastSyncMessageCount());
+        lastSync.add("failure_count", inboxService.getLastSyncFailureCount());
+        lastSync.add("duration", inboxService.getLastSyncDuration());
         response.add("last_sync", lastSync);
+        response.add("statistics", Json.createObjectBuilder()
+                .add("listening", inboxService.isListening())
+                .add("imported_count", inboxService.getImportedCount())
+                .add("failure_count", inboxService.getFailureCount())
+                .add("total_time", inboxService.getTotalTime())
+                .add("last_lag", inboxService.getLastLag())
+                .add("max_lag", inboxService.getMaxLag()));
 
         return Response.ok().entity(response.build()).build();
     }
@@ -598,6 +629,311 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
     
+    /**
+     * Commit the pending search index changes now.
+     *
+     * @api {post} /app/batch/commit_index Commit the search index
+     * @apiDescription Index changes are committed together periodically, this forces a commit.
+     * @apiName PostAppBatchCommitIndex
+     * @apiGroup App
+     * @apiSuccess {String} status Status OK
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @POST
+    @Path("batch/commit_index")
+    public Response batchCommitIndex() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        AppContext.getInstance().getIndexingHandler().commit();
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok");
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Verify and rebuild the group ancestors.
+     *
+     * @api {post} /app/batch/rebuild_group_ancestors Rebuild the group ancestors
+     * @apiDescription Recursive group memberships are resolved from the group ancestors, maintained on each group change.
+     * @apiName PostAppBatchRebuildGroupAncestors
+     * @apiGroup App
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {Number} error_count Number of missing or wrong ancestor links found
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @POST
+    @Path("batch/rebuild_group_ancestors")
+    public Response batchRebuildGroupAncestors() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        GroupDao groupDao = new GroupDao();
+        int errorCount = groupDao.rebuildAncestors();
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok")
+                .add("error_count", errorCount);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the progress of the search index rebuild.
+     *
+     * @api {get} /app/batch/reindex Get the search index rebuild progress
+     * @apiName GetAppBatchReindex
+     * @apiGroup App
+     * @apiSuccess {Boolean} running True if a rebuild is running
+     * @apiSuccess {Number} start_date Start date of the last rebuild (timestamp)
+     * @apiSuccess {Number} end_date End date of the last rebuild (timestamp)
+     * @apiSuccess {Number} document_count Number of indexed documents
+     * @apiSuccess {Number} document_total Number of documents to index
+     * @apiSuccess {Number} file_count Number of indexed files
+     * @apiSuccess {Number} file_total Number of files to index
+     * @apiSuccess {Number} throughput Number of documents and files indexed per second
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("batch/reindex")
+    public Response getBatchReindex() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        IndexRebuildProgress rebuildProgress = AppContext.getInstance().getIndexingHandler().getRebuildProgress();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("running", rebuildProgress.isRunning())
+                .add("document_count", rebuildProgress.getDocumentCount())
+                .add("document_total", rebuildProgress.getDocumentTotal())
+                .add("file_count", rebuildProgress.getFileCount())
+                .add("file_total", rebuildProgress.getFileTotal())
+                .add("throughput", rebuildProgress.getThroughput());
+        if (rebuildProgress.getStartDate() != null) {
+            response.add("start_date", rebuildProgress.getStartDate());
+        }
+        if (rebuildProgress.getEndDate() != null) {
+            response.add("end_date", rebuildProgress.getEndDate());
+        }
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the file processing queues and timings.
+     *
+     * @api {get} /app/file_processing Get the file processing queues and timings
+     * @apiName GetAppFileProcessing
+     * @apiGroup App
+     * @apiSuccess {Number} outstanding Number of queued or running tasks
+     * @apiSuccess {Number} capacity Number of outstanding tasks before bulk imports wait
+     * @apiSuccess {Object[]} queues Queues
+     * @apiSuccess {String} queues.name Queue name (cheap or expensive)
+     * @apiSuccess {Number} queues.queued Number of queued tasks
+     * @apiSuccess {Number} queues.running Number of running tasks
+     * @apiSuccess {Object[]} stages Timings by processing stage
+     * @apiSuccess {String} stages.name Stage name
+     * @apiSuccess {Number} stages.count Number of times this stage ran
+     * @apiSuccess {Number} stages.total_time Total time (in milliseconds)
+     * @apiSuccess {Number} stages.max_time Maximum time (in milliseconds)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("file_processing")
+    public Response getFileProcessing() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        JsonArrayBuilder queues = Json.createArrayBuilder();
+        for (FileProcessingService.Cost cost : FileProcessingService.Cost.values()) {
+            queues.add(Json.createObjectBuilder()
+                    .add("name", cost.name().toLowerCase())
+                    .add("queued", fileProcessingService.getQueuedCount(cost))
+                    .add("running", fileProcessingService.getRunningCount(cost)));
+        }
+        JsonArrayBuilder stages = Json.createArrayBuilder();
+        for (Map.Entry<String, FileProcessingService.StageStatistics> entry : fileProcessingService.getStageStatistics().entrySet()) {
+            stages.add(Json.createObjectBuilder()
+                    .add("name", entry.getKey())
+                    .add("count", entry.getValue().getCount())
+                    .add("total_time", entry.getValue().getTotalTime())
+                    .add("max_time", entry.getValue().getMaxTime()));
+        }
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("outstanding", fileProcessingService.getOutstandingCount())
+                .add("capacity", fileProcessingService.getCapacity())
+                .add("queues", queues)
+                .add("stages", stages);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the database connection pool usage.
+     *
+     * @api {get} /app/database_pool Get the database connection pool usage
+     * @apiDescription Only available with the default connection pool.
+     * @apiName GetAppDatabasePool
+     * @apiGroup App
+     * @apiSuccess {Boolean} metered False if another connection pool is configured
+     * @apiSuccess {Number} active Number of connections in use
+     * @apiSuccess {Number} idle Number of idle connections
+     * @apiSuccess {Number} waiting Number of threads waiting for a connection
+     * @apiSuccess {Number} acquire_count Number of acquired connections
+     * @apiSuccess {Number} acquire_time Total time spent acquiring connections (in milliseconds)
+     * @apiSuccess {Number} acquire_time_max Maximum time spent acquiring a connection (in milliseconds)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (server) DatabaseError Error reading the connection pool
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("database_pool")
+    public Response getDatabasePool() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        MeteredConnectionProvider connectionProvider = MeteredConnectionProvider.getInstance();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("metered", connectionProvider != null);
+        if (connectionProvider != null) {
+            try {
+                response.add("active", connectionProvider.getActiveCount())
+                        .add("idle", connectionProvider.getIdleCount())
+                        .add("waiting", connectionProvider.getWaitingCount());
+            } catch (SQLException e) {
+                throw new ServerException("DatabaseError", "Error reading the connection pool", e);
+            }
+            response.add("acquire_count", connectionProvider.getAcquireCount())
+                    .add("acquire_time", connectionProvider.getAcquireTime())
+                    .add("acquire_time_max", connectionProvider.getAcquireTimeMax());
+        }
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the LDAP connection pool usage.
+     *
+     * @api {get} /app/ldap_pool Get the LDAP connection pool usage
+     * @apiDescription The pool is created on the first LDAP authentication.
+     * @apiName GetAppLdapPool
+     * @apiGroup App
+     * @apiSuccess {Boolean} enabled True if the LDAP pool is created
+     * @apiSuccess {Number} max_total Maximum number of connections
+     * @apiSuccess {Number} active Number of connections in use
+     * @apiSuccess {Number} idle Number of idle connections
+     * @apiSuccess {Number} waiting Number of threads waiting for a connection
+     * @apiSuccess {Number} borrowed_count Number of borrowed connections
+     * @apiSuccess {Number} wait_time_mean Mean time spent waiting for a connection (in milliseconds)
+     * @apiSuccess {Number} wait_time_max Maximum time spent waiting for a connection (in milliseconds)
+     * @apiSuccess {Number} bind_cache_hit_count Number of authentications served by the bind cache
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("ldap_pool")
+    public Response getLdapPool() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        LdapConnectionPool pool = LdapAuthenticationHandler.getPool();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("enabled", pool != null);
+        if (pool != null) {
+            response.add("max_total", pool.getMaxTotal())
+                    .add("active", pool.getNumActive())
+                    .add("idle", pool.getNumIdle())
+                    .add("waiting", pool.getNumWaiters())
+                    .add("borrowed_count", pool.getBorrowedCount())
+                    .add("wait_time_mean", pool.getMeanBorrowWaitTimeMillis())
+                    .add("wait_time_max", pool.getMaxBorrowWaitTimeMillis());
+        }
+        response.add("bind_cache_hit_count", LdapAuthenticationHandler.getBindCacheHitCount());
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the second-level cache statistics.
+     *
+     * @api {get} /app/cache Get the second-level cache statistics
+     * @apiDescription The second-level cache is enabled with DATABASE_CACHE_SIZE.
+     * @apiName GetAppCache
+     * @apiGroup App
+     * @apiSuccess {Boolean} enabled True if the second-level cache is enabled
+     * @apiSuccess {Object[]} regions Cache regions
+     * @apiSuccess {String} regions.name Region name
+     * @apiSuccess {Number} regions.size Number of entries
+     * @apiSuccess {Number} regions.hit_count Number of hits
+     * @apiSuccess {Number} regions.miss_count Number of misses
+     * @apiSuccess {Number} regions.put_count Number of puts
+     * @apiSuccess {Number} regions.eviction_count Number of evicted entries
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.5.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("cache")
+    public Response getCache() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        LocalRegionFactory regionFactory = LocalRegionFactory.getInstance();
+        JsonArrayBuilder regions = Json.createArrayBuilder();
+        if (regionFactory != null) {
+            for (Map.Entry<String, LocalRegionFactory.RegionStatistics> entry : regionFactory.getRegionStatistics().entrySet()) {
+                LocalRegionFactory.RegionStatistics regionStatistics = entry.getValue();
+                regions.add(Json.createObjectBuilder()
+                        .add("name", entry.getKey())
+                        .add("size", regionStatistics.getSize())
+                        .add("hit_count", regionStatistics.getHitCount())
+                        .add("miss_count", regionStatistics.getMissCount())
+                        .add("put_count", regionStatistics.getPutCount())
+                        .add("eviction_count", regionStatistics.getEvictionCount()));
+            }
+        }
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("enabled", regionFactory != null)
+                .add("regions", regions);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Clean storage.
      *
@@ -607,6 +943,7 @@ public class AppResource extends BaseResource {
      * @apiSuccess {String} status Status OK
      * @apiError (client) ForbiddenError Access denied
      * @apiError (server) FileError Error deleting orphan files
+     * @apiError (server) AuditLogError Error deleting orphan audit logs
      * @apiPermission admin
      * @apiVersion 1.5.0
      *
@@ -643,29 +980,23 @@ public class AppResource extends BaseResource {
             throw new ServerException("FileError", "Error deleting orphan files", e);
         }
         
-        // Hard delete orphan audit logs
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("delete from T_AUDIT_LOG al where al.LOG_ID_C in (select al.LOG_ID_C from T_AUDIT_LOG al ");
-        sb.append(" left join T_DOCUMENT d on d.DOC_ID_C = al.LOG_IDENTITY_C and d.DOC_DELETEDATE_D is null ");
-        sb.append(" left join T_ACL a on a.ACL_ID_C = al.LOG_IDENTITY_C and a.ACL_DELETEDATE_D is null ");
-        sb.append(" left join T_COMMENT c on c.COM_ID_C = al.LOG_IDENTITY_C and c.COM_DELETEDATE_D is null ");
-        sb.append(" left join T_FILE f on f.FIL_ID_C = al.LOG_IDENTITY_C and f.FIL_DELETEDATE_D is null ");
-        sb.append(" left join T_TAG t on t.TAG_ID_C = al.LOG_IDENTITY_C and t.TAG_DELETEDATE_D is null ");
-        sb.append(" left join T_USER u on u.USE_ID_C = al.LOG_IDENTITY_C and u.USE_DELETEDATE_D is null ");
-        sb.append(" left join T_GROUP g on g.GRP_ID_C = al.LOG_IDENTITY_C and g.GRP_DELETEDATE_D is null ");
-        sb.append(" where d.DOC_ID_C is null and a.ACL_ID_C is null and c.COM_ID_C is null and f.FIL_ID_C is null and t.TAG_ID_C is null and u.USE_ID_C is null and g.GRP_ID_C is null)");
-        Query q = em.createNativeQuery(sb.toString());
-        log.info("Deleting {} orphan audit logs", q.executeUpdate());
+        // Hard delete orphan audit logs, chunk by chunk in their own transactions
+        try {
+            log.info("Deleting {} orphan audit logs", AppContext.getInstance().getAuditLogRetentionService().purgeOrphans());
+        } catch (Exception e) {
+            throw new ServerException("AuditLogError", "Error deleting orphan audit logs", e);
+        }
         
         // Soft delete orphan ACLs
-        sb = new StringBuilder("update T_ACL a set ACL_DELETEDATE_D = :dateNow where a.ACL_ID_C in (select a.ACL_ID_C from T_ACL a ");
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("update T_ACL a set ACL_DELETEDATE_D = :dateNow where a.ACL_ID_C in (select a.ACL_ID_C from T_ACL a ");
         sb.append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ");
         sb.append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ");
         sb.append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ");
         sb.append(" left join T_DOCUMENT d on d.DOC_ID_C = a.ACL_SOURCEID_C ");
         sb.append(" left join T_TAG t on t.TAG_ID_C = a.ACL_SOURCEID_C ");
         sb.append(" where s.SHA_ID_C is null and u.USE_ID_C is null and g.GRP_ID_C is null or d.DOC_ID_C is null and t.TAG_ID_C is null)");
-        q = em.createNativeQuery(sb.toString());
+        Query q = em.createNativeQuery(sb.toString());
         q.setParameter("dateNow", new Date());
         log.info("Deleting {} orphan ACLs", q.executeUpdate());
         
@@ -10,6 +10,7 @@ import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.util.JsonUtil;
 
@@ -37,7 +38,11 @@ public class AuditLogResource extends BaseResource {
      * @apiName GetAuditlog
      * @apiGroup Auditlog
      * @apiParam {String} [document] Document ID
+     * @apiParam {Number} [limit] Total number of logs to return (default is 20)
+     * @apiParam {String} [after] Cursor returned as next by the previous page
+     * @apiParam {Boolean} [count] If false, the total number of logs is not returned
      * @apiSuccess {String} total Total number of logs
+     * @apiSuccess {String} next Cursor of the next page, null if this is the last page
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.id ID
      * @apiSuccess {String} logs.username Username
@@ -48,19 +53,37 @@ public class AuditLogResource extends BaseResource {
      * @apiSuccess {Number} logs.create_date Create date (timestamp)
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) NotFound Document not found
+     * @apiError (client) ValidationError Invalid cursor
      * @apiPermission user
      * @apiVersion 1.5.0
      *
+     * @param documentId Document ID
+     * @param limit Page limit
+     * @param after Page cursor
+     * @param count Count the logs
      * @return Response
      */
     @GET
-    public Response list(@QueryParam("document") String documentId) {
+    public Response list(
+            @QueryParam("document") String documentId,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after,
+            @QueryParam("count") Boolean count) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
         
         // On a document or a user?
-        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(20, 0);
+        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(limit == null ? 20 : limit, 0);
+        if (after != null) {
+            try {
+                PaginatedLists.decodeCursor(after);
+            } catch (IllegalArgumentException e) {
+                throw new ClientException("ValidationError", "Invalid cursor");
+            }
+            paginatedList.setAfter(after);
+        }
+        paginatedList.setCountEnabled(count == null || count);
         SortCriteria sortCriteria = new SortCriteria(1, false);
         AuditLogCriteria criteria = new AuditLogCriteria();
         if (Strings.isNullOrEmpty(documentId)) {
@@ -96,7 +119,10 @@ public class AuditLogResource extends BaseResource {
         // Send the response
         JsonObjectBuilder response = Json.createObjectBuilder()
                 .add("logs", logs)
-                .add("total", paginatedList.getResultCount());
+                .add("next", JsonUtil.nullable(paginatedList.getNext()));
+        if (paginatedList.isCountEnabled()) {
+            response.add("total", paginatedList.getResultCount());
+        }
         return Response.ok().entity(response.build()).build();
     }
 }
@@ -2,6 +2,7 @@ package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.ConfigType;
@@ -362,11 +363,14 @@ public class DocumentResource extends BaseResource {
      * @apiGroup Document
      * @apiParam {String} limit Total number of documents to return
      * @apiParam {String} offset Start at this index
+     * @apiParam {String} after Start after this cursor (returned as next by the previous page), the offset is ignored
+     * @apiParam {Boolean} count If false, the total number of documents is not counted
      * @apiParam {Number} sort_column Column index to sort on
      * @apiParam {Boolean} asc If true, sort in ascending order
      * @apiParam {String} search Search query (see "Document search syntax" on the top of the page for explanations)
      * @apiParam {Booleans} files If true includes files information
-     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Number} total Total number of documents (if counted)
+     * @apiSuccess {String} next Cursor of the next page, null if this is the last page
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -392,12 +396,15 @@ public class DocumentResource extends BaseResource {
      * @apiSuccess {String} documents.files.create_date Create date (timestamp)
      * @apiSuccess {String[]} suggestions List of search suggestions
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
      * @apiError (server) SearchError Error searching in documents
      * @apiPermission user
      * @apiVersion 1.5.0
      *
      * @param limit Page limit
      * @param offset Page offset
+     * @param after Page cursor
+     * @param count Count the documents
      * @param sortColumn Sort column
      * @param asc Sorting
      * @param search Search query
@@ -409,6 +416,8 @@ public class DocumentResource extends BaseResource {
     public Response list(
             @QueryParam("limit") Integer limit,
             @QueryParam("offset") Integer offset,
+            @QueryParam("after") String after,
+            @QueryParam("count") Boolean count,
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
@@ -422,6 +431,15 @@ public class DocumentResource extends BaseResource {
         
         TagDao tagDao = new TagDao();
         PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
+        if (after != null) {
+            try {
+                PaginatedLists.decodeCursor(after);
+            } catch (IllegalArgumentException e) {
+                throw new ClientException("ValidationError", "Invalid cursor");
+            }
+            paginatedList.setAfter(after);
+        }
+        paginatedList.setCountEnabled(count == null || count);
         List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
         DocumentCriteria documentCriteria = parseSearchQuery(search);
@@ -440,13 +458,13 @@ public class DocumentResource extends BaseResource {
             filesList = fileDao.getByDocumentsIds(documentsIds);
         }
 
+        // Find the tags accessible by the current user on the documents
+        ListMultimap<String, TagDto> tagDtoMap = tagDao.findByDocumentIds(
+                CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId), getTargetIdList(null));
+
         for (DocumentDto documentDto : paginatedList.getResultList()) {
-            // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
             JsonArrayBuilder tags = Json.createArrayBuilder();
-            for (TagDto tagDto : tagDtoList) {
+            for (TagDto tagDto : tagDtoMap.get(documentDto.getId())) {
                 tags.add(Json.createObjectBuilder()
                         .add("id", tagDto.getId())
                         .add("name", tagDto.getName())
@@ -484,7 +502,10 @@ public class DocumentResource extends BaseResource {
             suggestions.add(suggestion);
         }
 
-        response.add("total", paginatedList.getResultCount())
+        if (paginatedList.isCountEnabled()) {
+            response.add("total", paginatedList.getResultCount());
+        }
+        response.add("next", JsonUtil.nullable(paginatedList.getNext()))
                 .add("documents", documents)
                 .add("suggestions", suggestions);
         
@@ -18,6 +18,7 @@ import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.ZipUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -48,9 +49,9 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
 
 /**
  * File REST resources.
@@ -562,8 +563,11 @@ public class FileResource extends BaseResource {
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
      * @apiParam {String="web","thumb","content"} [size] Size variation
+     * @apiHeader {String} [Range] Single byte range to return, with a 206 Partial Content response
+     * @apiHeader {String} [If-Range] Return the range only if the ETag is still the same
      * @apiSuccess {Object} file The file data is the whole response
      * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) RangeNotSatisfiable The range is outside of the file
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -571,6 +575,10 @@ public class FileResource extends BaseResource {
      * @apiVersion 1.5.0
      *
      * @param fileId File ID
+     * @param shareId Share ID
+     * @param size Size variation
+     * @param range Range header
+     * @param ifRange If-Range header
      * @return Response
      */
     @GET
@@ -579,7 +587,9 @@ public class FileResource extends BaseResource {
     public Response data(
             @PathParam("id") final String fileId,
             @QueryParam("share") String shareId,
-            @QueryParam("size") String size) {
+            @QueryParam("size") String size,
+            @HeaderParam("Range") String range,
+            @HeaderParam("If-Range") String ifRange) {
         authenticate();
         
         if (size != null && !Lists.newArrayList("web", "thumb", "content").contains(size)) {
@@ -618,7 +628,26 @@ public class FileResource extends BaseResource {
             mimeType = file.getMimeType();
             decrypt = true; // Original files are encrypted
         }
-        
+
+        // Compute the requested range, only on real files (CTR encryption keeps the same length)
+        long length;
+        String etag;
+        long[] byteRange = null;
+        try {
+            length = Files.size(storedFile);
+            etag = "\"" + storedFile.getFileName() + "-" + Files.getLastModifiedTime(storedFile).toMillis() + "\"";
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+        }
+        if (decrypt && range != null && (ifRange == null || ifRange.equals(etag))) {
+            byteRange = parseRange(range, length);
+            if (byteRange != null && byteRange.length == 0) {
+                return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", "bytes */" + length)
+                        .build();
+            }
+        }
+
         // Stream the output and decrypt it if necessary
         StreamingOutput stream;
         
@@ -627,9 +656,16 @@ public class FileResource extends BaseResource {
         
         // Write the decrypted file to the output
         try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
+            final InputStream responseInputStream;
+            if (byteRange != null) {
+                // Decrypt only the requested blocks
+                responseInputStream = ByteStreams.limit(EncryptionUtil.decryptInputStream(storedFile, user.getPrivateKey(), byteRange[0]),
+                        byteRange[1] - byteRange[0] + 1);
+            } else {
+                InputStream fileInputStream = Files.newInputStream(storedFile);
+                responseInputStream = decrypt ?
+                        EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
+            }
                     
             stream = outputStream -> {
                 try {
@@ -650,10 +686,19 @@ public class FileResource extends BaseResource {
         Response.ResponseBuilder builder = Response.ok(stream)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
                 .header(HttpHeaders.CONTENT_TYPE, mimeType);
+        if (byteRange != null) {
+            builder.status(Status.PARTIAL_CONTENT)
+                    .header("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + length)
+                    .header(HttpHeaders.CONTENT_LENGTH, byteRange[1] - byteRange[0] + 1);
+        } else {
+            builder.header(HttpHeaders.CONTENT_LENGTH, length);
+        }
         if (decrypt) {
             // Cache real files
             builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L))
+                    .header("Accept-Ranges", "bytes")
+                    .header(HttpHeaders.ETAG, etag);
         } else {
             // Do not cache the temporary thumbnail
             builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
@@ -732,30 +777,21 @@ public class FileResource extends BaseResource {
      * Sent the content of a list of files.
      */
     private Response sendZippedFiles(String zipFileName, List<File> fileList) {
-        final UserDao userDao = new UserDao();
+        // Files are encrypted by the creator of them
+        UserDao userDao = new UserDao();
+        Map<String, String> privateKeyMap = new HashMap<>();
+        for (File file : fileList) {
+            file.setPrivateKey(privateKeyMap.computeIfAbsent(file.getUserId(), userId -> userDao.getById(userId).getPrivateKey()));
+        }
 
         // Create the ZIP stream
         StreamingOutput stream = outputStream -> {
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-                // Add each file to the ZIP stream
-                int index = 0;
-                for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
-
-                    // Add the decrypted file to the ZIP stream
-                    // Files are encrypted by the creator of them
-                    User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
-                        ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
-                        zipOutputStream.putNextEntry(zipEntry);
-                        ByteStreams.copy(decryptedStream, zipOutputStream);
-                        zipOutputStream.closeEntry();
-                    } catch (Exception e) {
-                        throw new WebApplicationException(e);
-                    }
-                    index++;
-                }
+            try {
+                ZipUtil.zipFiles(fileList, outputStream);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new WebApplicationException(e);
             }
             outputStream.close();
         };
@@ -820,4 +856,51 @@ public class FileResource extends BaseResource {
             }
         }
     }
+
+    /**
+     * Parse a Range header.
+     * Only a single byte range is supported, other ranges are ignored.
+     *
+     * @param range Range header
+     * @param length Length of the file
+     * @return First and last byte positions, an empty array if not satisfiable, or null to return the whole file
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+        String[] bounds = range.substring("bytes=".length()).trim().split("-", -1);
+        if (bounds.length != 2) {
+            return null;
+        }
+
+        long start;
+        long end;
+        try {
+            if (bounds[0].isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(bounds[1]);
+                if (suffix == 0) {
+                    return new long[0];
+                }
+                start = Math.max(length - suffix, 0);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? Long.MAX_VALUE : Long.parseLong(bounds[1]);
+                if (end < start) {
+                    // Syntactically invalid range
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start < 0 || start >= length) {
+            return new long[0];
+        }
+        return new long[] { start, end };
+    }
 }
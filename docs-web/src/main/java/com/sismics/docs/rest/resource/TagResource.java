@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.event.AclDeletedAsyncEvent;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -14,6 +15,7 @@ import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.util.AclUtil;
 import com.sismics.rest.util.ValidationUtil;
+import com.sismics.util.context.ThreadLocalContext;
 import org.apache.commons.lang.StringUtils;
 
 import javax.json.Json;
@@ -337,6 +339,13 @@ public class TagResource extends BaseResource {
         // Delete the tag
         TagDao tagDao = new TagDao();
         tagDao.delete(id, principal.getId());
+
+        // Raise an ACL deleted event, the documents do not inherit the read permission of this tag anymore
+        AclDeletedAsyncEvent event = new AclDeletedAsyncEvent();
+        event.setUserId(principal.getId());
+        event.setSourceId(id);
+        event.setPerm(PermType.READ);
+        ThreadLocalContext.get().addAsyncEvent(event);
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
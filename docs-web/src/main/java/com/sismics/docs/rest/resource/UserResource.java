@@ -27,6 +27,7 @@ import com.sismics.rest.util.ValidationUtil;
 import com.sismics.security.UserPrincipal;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.filter.PrincipalCache;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import com.sismics.util.totp.GoogleAuthenticator;
 import com.sismics.util.totp.GoogleAuthenticatorKey;
@@ -163,6 +164,7 @@ public class UserResource extends BaseResource {
         if (StringUtils.isNotBlank(password)) {
             user.setPassword(password);
             userDao.updatePassword(user, principal.getId());
+            PrincipalCache.invalidateUserAfterCommit(user.getId());
         }
         
         // Always return OK
@@ -243,11 +245,15 @@ public class UserResource extends BaseResource {
             }
         }
         user = userDao.update(user, principal.getId());
+        if (disabled != null) {
+            PrincipalCache.invalidateUserAfterCommit(user.getId());
+        }
         
         // Change the password
         if (StringUtils.isNotBlank(password)) {
             user.setPassword(password);
             userDao.updatePassword(user, principal.getId());
+            PrincipalCache.invalidateUserAfterCommit(user.getId());
         }
         
         // Always return OK
@@ -418,6 +424,7 @@ public class UserResource extends BaseResource {
         // Deletes the server token
         try {
             authenticationTokenDao.delete(authToken);
+            PrincipalCache.invalidateAfterCommit(authToken);
         } catch (Exception e) {
             throw new ServerException("AuthenticationTokenError", "Error deleting the authentication token: " + authToken, e);
         }
@@ -469,6 +476,7 @@ public class UserResource extends BaseResource {
         // Delete the user
         UserDao userDao = new UserDao();
         userDao.delete(principal.getName(), principal.getId());
+        PrincipalCache.invalidateUserAfterCommit(principal.getId());
         
         // Raise deleted events for documents
         for (Document document : documentList) {
@@ -551,6 +559,7 @@ public class UserResource extends BaseResource {
         
         // Delete the user
         userDao.delete(user.getUsername(), principal.getId());
+        PrincipalCache.invalidateUserAfterCommit(user.getId());
         
         // Raise deleted events for documents
         for (Document document : documentList) {
@@ -650,9 +659,7 @@ public class UserResource extends BaseResource {
             }
         } else {
             // Update the last connection date
-            String authToken = getAuthToken();
-            AuthenticationTokenDao authenticationTokenDao = new AuthenticationTokenDao();
-            authenticationTokenDao.updateLastConnectionDate(authToken);
+            AppContext.getInstance().getAuthenticationTokenService().updateLastConnectionDate(getAuthToken());
             
             // Build the response
             response.add("anonymous", false);
@@ -895,6 +902,7 @@ public class UserResource extends BaseResource {
         // Remove other tokens
         AuthenticationTokenDao authenticationTokenDao = new AuthenticationTokenDao();
         authenticationTokenDao.deleteByUserId(principal.getId(), authToken);
+        PrincipalCache.invalidateUserAfterCommit(principal.getId());
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -1150,6 +1158,7 @@ public class UserResource extends BaseResource {
         // Change the password
         user.setPassword(password);
         user = userDao.updatePassword(user, principal.getId());
+        PrincipalCache.invalidateUserAfterCommit(user.getId());
 
         // Deletes password recovery requests
         passwordRecoveryDao.deleteActiveByLogin(user.getUsername());
@@ -2,9 +2,12 @@ package com.sismics.docs.rest.resource;
 
 import com.sismics.docs.core.constant.WebhookEvent;
 import com.sismics.docs.core.dao.WebhookDao;
+import com.sismics.docs.core.dao.WebhookDeliveryDao;
 import com.sismics.docs.core.dao.criteria.WebhookCriteria;
 import com.sismics.docs.core.dao.dto.WebhookDto;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Webhook;
+import com.sismics.docs.core.service.WebhookService;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ForbiddenClientException;
@@ -16,6 +19,7 @@ import javax.json.JsonObjectBuilder;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Webhook REST resources.
@@ -34,6 +38,11 @@ public class WebhookResource extends BaseResource {
      * @apiSuccess {String} webhooks.id ID
      * @apiSuccess {String} webhooks.event Event
      * @apiSuccess {String} webhooks.url URL
+     * @apiSuccess {Number} webhooks.pending_count Number of events waiting to be delivered
+     * @apiSuccess {Number} webhooks.call_count Number of calls since the startup
+     * @apiSuccess {Number} webhooks.failure_count Number of failed calls since the startup
+     * @apiSuccess {Number} webhooks.total_time Total time of the calls (in milliseconds)
+     * @apiSuccess {Number} webhooks.max_time Maximum time of a call (in milliseconds)
      * @apiError (client) ForbiddenError Access denied
      * @apiPermission admin
      * @apiVersion 1.6.0
@@ -48,14 +57,30 @@ public class WebhookResource extends BaseResource {
         checkBaseFunction(BaseFunction.ADMIN);
 
         WebhookDao webhookDao = new WebhookDao();
+        WebhookService webhookService = AppContext.getInstance().getWebhookService();
+        Map<String, Long> pendingCountMap = new WebhookDeliveryDao().countByWebhook();
         JsonArrayBuilder webhooks = Json.createArrayBuilder();
         List<WebhookDto> webhookDtoList = webhookDao.findByCriteria(new WebhookCriteria(), new SortCriteria(2, true));
         for (WebhookDto webhookDto : webhookDtoList) {
-            webhooks.add(Json.createObjectBuilder()
+            JsonObjectBuilder webhook = Json.createObjectBuilder()
                     .add("id", webhookDto.getId())
                     .add("event", webhookDto.getEvent())
                     .add("url", webhookDto.getUrl())
-                    .add("create_date", webhookDto.getCreateTimestamp()));
+                    .add("create_date", webhookDto.getCreateTimestamp())
+                    .add("pending_count", pendingCountMap.getOrDefault(webhookDto.getId(), 0L));
+            WebhookService.EndpointStatistics endpointStatistics = webhookService.getEndpointStatistics(webhookDto.getId());
+            if (endpointStatistics != null) {
+                webhook.add("call_count", endpointStatistics.getCount())
+                        .add("failure_count", endpointStatistics.getFailureCount())
+                        .add("total_time", endpointStatistics.getTotalTime())
+                        .add("max_time", endpointStatistics.getMaxTime());
+            } else {
+                webhook.add("call_count", 0)
+                        .add("failure_count", 0)
+                        .add("total_time", 0)
+                        .add("max_time", 0);
+            }
+            webhooks.add(webhook);
         }
 
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -67,7 +92,9 @@ public class WebhookResource extends BaseResource {
      * Add a webhook.
      *
      * @api {put} /webhook Add a webhook
-     * @apiDescription Each time the specified event is raised, the webhook URL will be POST-ed with the following JSON payload: {"event": "Event name", "id": "ID of the document or file"}
+     * @apiDescription Each time the specified event is raised, the webhook URL will be POST-ed with the following JSON payload: {"event": "Event name", "id": "ID of the document or file"}.
+     * If DOCS_WEBHOOK_BATCH_WINDOW is set, the events are grouped in the following JSON payload: {"events": [{"event": "Event name", "id": "ID of the document or file"}]}.
+     * Failed calls are retried with an exponential backoff.
      * @apiName PutWebhook
      * @apiGroup Webhook
      * @apiParam {String="DOCUMENT_CREATED","DOCUMENT_UPDATED","DOCUMENT_DELETED","FILE_CREATED","FILE_UPDATED","FILE_DELETED"} event Event
@@ -449,5 +449,34 @@ public class TestAclResource extends BaseJerseyTest {
                         .param("title", "My super document 1")
                         .param("tags", tag1Id)
                         .param("language", "eng")), JsonObject.class);
+
+        // acltag2 can find document1 with a fulltext search
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("documents").size());
+
+        // Delete tag1 with acltag1
+        target().path("/tag/" + tag1Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag1Token)
+                .delete(JsonObject.class);
+
+        // acltag2 cannot find document1 anymore
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+
+        // acltag1 can still find document1
+        json = target().path("/document/list")
+                .queryParam("search", "super")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("documents").size());
     }
 }
\ No newline at end of file
@@ -4,16 +4,21 @@ import com.icegreen.greenmail.util.GreenMail;
 import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.ServerSetup;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.indexing.LuceneIndexingHandler;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.json.JsonArray;
 import javax.json.JsonObject;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Store;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.util.Date;
 
 
 /**
@@ -50,6 +55,45 @@ public class TestAppResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+
+        // Check the rebuild progress
+        json = target().path("/app/batch/reindex").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("running"));
+        Assert.assertEquals(json.getJsonNumber("document_total").longValue(), json.getJsonNumber("document_count").longValue());
+        Assert.assertEquals(json.getJsonNumber("file_total").longValue(), json.getJsonNumber("file_count").longValue());
+        Assert.assertNotNull(json.getJsonNumber("end_date"));
+
+        // Check the file processing queues
+        json = target().path("/app/file_processing").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonNumber("outstanding").intValue());
+        Assert.assertEquals(2, json.getJsonArray("queues").size());
+        Assert.assertEquals("cheap", json.getJsonArray("queues").getJsonObject(0).getString("name"));
+        Assert.assertNotNull(json.getJsonArray("stages"));
+
+        // Get the database connection pool usage
+        json = target().path("/app/database_pool").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getBoolean("metered"));
+        Assert.assertTrue(json.getJsonNumber("acquire_count").longValue() > 0);
+
+        // Get the LDAP connection pool usage
+        json = target().path("/app/ldap_pool").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("enabled"));
+        Assert.assertEquals(0, json.getJsonNumber("bind_cache_hit_count").longValue());
+
+        // Get the second-level cache statistics
+        json = target().path("/app/cache").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("enabled"));
+        Assert.assertTrue(json.getJsonArray("regions").isEmpty());
         
         // Clean storage
         response = target().path("/app/batch/clean_storage").request()
@@ -80,6 +124,53 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertEquals("eng", json.getString("default_language"));
     }
 
+    /**
+     * Test the commit of the search index.
+     */
+    @Test
+    public void testCommitIndex() {
+        // Login admin
+        String adminToken = clientUtil.login("admin", "admin", false);
+
+        // Defer the index commits and the searcher refreshes
+        LuceneIndexingHandler indexingHandler = (LuceneIndexingHandler) AppContext.getInstance().getIndexingHandler();
+        indexingHandler.startMaintenance(3600, 0, 3600000, 3600);
+        try {
+            // Create a document, not searchable yet
+            JsonObject json = target().path("/document").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .put(Entity.form(new Form()
+                            .param("title", "Tidewater")
+                            .param("language", "eng")
+                            .param("create_date", Long.toString(new Date().getTime()))), JsonObject.class);
+            String documentId = json.getString("id");
+            json = target().path("/document/list")
+                    .queryParam("search", "tidewater")
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .get(JsonObject.class);
+            Assert.assertEquals(0, json.getJsonArray("documents").size());
+
+            // Commit the Lucene index
+            Response response = target().path("/app/batch/commit_index").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .post(Entity.form(new Form()));
+            Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+
+            // The document is searchable
+            json = target().path("/document/list")
+                    .queryParam("search", "tidewater")
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .get(JsonObject.class);
+            JsonArray documents = json.getJsonArray("documents");
+            Assert.assertEquals(1, documents.size());
+            Assert.assertEquals(documentId, documents.getJsonObject(0).getString("id"));
+        } finally {
+            indexingHandler.stopMaintenance();
+        }
+    }
+
     /**
      * Test the log resource.
      */
@@ -220,9 +311,11 @@ public class TestAppResource extends BaseJerseyTest {
 
     /**
      * Test inbox scanning.
+     *
+     * @throws Exception e
      */
     @Test
-    public void testInbox() {
+    public void testInbox() throws Exception {
         // Login admin
         String adminToken = clientUtil.login("admin", "admin", false);
 
@@ -332,6 +425,50 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertTrue(lastSync.isNull("error"));
         Assert.assertEquals(0, lastSync.getJsonNumber("count").intValue());
 
+        // Send several emails
+        for (int i = 2; i <= 6; i++) {
+            GreenMailUtil.sendTextEmail("test@sismics.com", "test@sismicsdocs.com", "Test email " + i, "Test content " + i, serverSetupSmtp);
+        }
+
+        // Trigger an inbox sync, the emails are imported in parallel
+        AppContext.getInstance().getInboxService().syncInbox();
+
+        // Search for added documents
+        json = target().path("/document/list")
+                .queryParam("search", "tag:Inbox full:content")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(6, json.getJsonArray("documents").size());
+
+        // Get inbox configuration
+        json = target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        lastSync = json.getJsonObject("last_sync");
+        Assert.assertTrue(lastSync.isNull("error"));
+        Assert.assertEquals(5, lastSync.getJsonNumber("count").intValue());
+        Assert.assertEquals(0, lastSync.getJsonNumber("failure_count").intValue());
+        JsonObject statistics = json.getJsonObject("statistics");
+        Assert.assertFalse(statistics.getBoolean("listening"));
+        Assert.assertEquals(6, statistics.getJsonNumber("imported_count").intValue());
+        Assert.assertEquals(0, statistics.getJsonNumber("failure_count").intValue());
+        Assert.assertTrue(statistics.getJsonNumber("max_lag").longValue() >= statistics.getJsonNumber("last_lag").longValue());
+
+        // Mark the imported emails as unread, they are skipped thanks to their UID
+        Store store = greenMail.getImap().createStore();
+        store.connect("test@sismics.com", "12345678");
+        Folder inbox = store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+        inbox.setFlags(1, inbox.getMessageCount(), new Flags(Flags.Flag.SEEN), false);
+        inbox.close(false);
+        store.close();
+        AppContext.getInstance().getInboxService().syncInbox();
+        json = target().path("/app/config_inbox").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonObject("last_sync").getJsonNumber("count").intValue());
+
         greenMail.stop();
     }
 
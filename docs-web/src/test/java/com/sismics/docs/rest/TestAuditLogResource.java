@@ -8,6 +8,7 @@ import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.Response;
 import java.util.Date;
 
 /**
@@ -118,6 +119,57 @@ public class TestAuditLogResource extends BaseJerseyTest {
         Assert.assertEquals(countByClass(logs, "Document"), 1);
         Assert.assertEquals(countByClass(logs, "Acl"), 2);
         Assert.assertEquals(countByClass(logs, "File"), 1);
+
+        // Get the first page of logs for the document
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("limit", 2)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        logs = json.getJsonArray("logs");
+        Assert.assertEquals(2, logs.size());
+        Assert.assertEquals(4, json.getInt("total"));
+        String next = json.getString("next");
+        String log1Id = logs.getJsonObject(0).getString("id");
+        long log1Date = logs.getJsonObject(0).getJsonNumber("create_date").longValue();
+        Assert.assertTrue(log1Date >= logs.getJsonObject(1).getJsonNumber("create_date").longValue());
+
+        // Get the second page of logs for the document
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("limit", 2)
+                .queryParam("after", next)
+                .queryParam("count", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        logs = json.getJsonArray("logs");
+        Assert.assertEquals(2, logs.size());
+        Assert.assertFalse(json.containsKey("total"));
+        Assert.assertNotEquals(log1Id, logs.getJsonObject(0).getString("id"));
+        Assert.assertNotEquals(log1Id, logs.getJsonObject(1).getString("id"));
+        Assert.assertTrue(log1Date >= logs.getJsonObject(0).getJsonNumber("create_date").longValue());
+
+        // Get the last page of logs for the document
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("limit", 2)
+                .queryParam("after", json.getString("next"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("logs").size());
+        Assert.assertEquals(4, json.getInt("total"));
+        Assert.assertTrue(json.isNull("next"));
+
+        // Get logs with an invalid cursor
+        Response response = target().path("/auditlog")
+                .queryParam("after", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get();
+        Assert.assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
     }
     
     /**
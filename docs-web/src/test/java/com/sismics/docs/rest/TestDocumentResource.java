@@ -126,6 +126,38 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals("#ffff00", tags.getJsonObject(1).getString("color"));
         Assert.assertFalse(documents.getJsonObject(0).getBoolean("active_route"));
 
+        // List all documents page by page without counting
+        json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("count", false)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.containsKey("total"));
+        Assert.assertEquals(document1Id, json.getJsonArray("documents").getJsonObject(0).getString("id"));
+        json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("after", json.getString("next"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(2, json.getJsonNumber("total").intValue());
+        Assert.assertEquals(document2Id, json.getJsonArray("documents").getJsonObject(0).getString("id"));
+        json = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("after", json.getString("next"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+        Assert.assertTrue(json.isNull("next"));
+
         // List all documents from document3
         json = target().path("/document/list")
                 .queryParam("sort_column", 3)
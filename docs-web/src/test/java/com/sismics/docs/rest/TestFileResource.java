@@ -16,13 +16,18 @@ import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -58,7 +63,48 @@ public class TestFileResource extends BaseJerseyTest {
         InputStream is = (InputStream) response.getEntity();
         byte[] fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
-        
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        String etag = response.getHeaderString(HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+
+        // Get a range of the file data, not aligned on a block
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=1000-1999")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes 1000-1999/" + fileBytes.length, response.getHeaderString("Content-Range"));
+        is = (InputStream) response.getEntity();
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, 1000, 2000), ByteStreams.toByteArray(is));
+
+        // Get the last bytes of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-17")
+                .header("If-Range", etag)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, fileBytes.length - 17, fileBytes.length), ByteStreams.toByteArray(is));
+
+        // Get a range with an outdated If-Range
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=0-9")
+                .header("If-Range", "\"outdated\"")
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        is = (InputStream) response.getEntity();
+        Assert.assertEquals(fileBytes.length, ByteStreams.toByteArray(is).length);
+
+        // Get a range outside of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=" + fileBytes.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes */" + fileBytes.length, response.getHeaderString("Content-Range"));
+
         // Get the thumbnail data
         response = target().path("/file/" + file1Id + "/data")
                 .queryParam("size", "thumb")
@@ -275,7 +321,10 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         InputStream is = (InputStream) response.getEntity();
         ZipInputStream zipInputStream = new ZipInputStream(is);
-        Assert.assertEquals(zipInputStream.getNextEntry().getName(), "0-PIA00452.jpg");
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        Assert.assertEquals(zipEntry.getName(), "0-PIA00452.jpg");
+        Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod());
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_PIA_00452_JPG)), ByteStreams.toByteArray(zipInputStream));
         Assert.assertNull(zipInputStream.getNextEntry());
 
         // Fail if we don't have access to the document
@@ -291,19 +340,34 @@ public class TestFileResource extends BaseJerseyTest {
         // Add a file
         String file2Id = clientUtil.addFileToDocument(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG, file1Token, document2Id);
 
-        // Get a ZIP from both files
+        // Add a text file, compressed in the ZIP
+        String file3Id = clientUtil.addFileToDocument(FILE_DOCUMENT_TXT, file1Token, document2Id);
+
+        // Get a ZIP from all files
         response = target().path("/file/zip")
                 .request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
                 .post(Entity.form(new Form()
                         .param("files", file1Id)
+                        .param("files", file3Id)
                         .param("files", file2Id)));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
         is = (InputStream) response.getEntity();
         zipInputStream = new ZipInputStream(is);
-        Assert.assertNotNull(zipInputStream.getNextEntry().getName());
-        Assert.assertNotNull(zipInputStream.getNextEntry().getName());
-        Assert.assertNull(zipInputStream.getNextEntry());
+        Map<String, ZipEntry> zipEntryMap = new HashMap<>();
+        Map<String, byte[]> zipContentMap = new HashMap<>();
+        while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+            String name = zipEntry.getName().substring(zipEntry.getName().indexOf('-') + 1);
+            zipEntryMap.put(name, zipEntry);
+            zipContentMap.put(name, ByteStreams.toByteArray(zipInputStream));
+        }
+        Assert.assertEquals(3, zipEntryMap.size());
+        Assert.assertEquals(ZipEntry.STORED, zipEntryMap.get("PIA00452.jpg").getMethod());
+        Assert.assertEquals(ZipEntry.STORED, zipEntryMap.get("Einstein-Roosevelt-letter.png").getMethod());
+        Assert.assertEquals(ZipEntry.DEFLATED, zipEntryMap.get("document.txt").getMethod());
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_PIA_00452_JPG)), zipContentMap.get("PIA00452.jpg"));
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_EINSTEIN_ROOSEVELT_LETTER_PNG)), zipContentMap.get("Einstein-Roosevelt-letter.png"));
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_DOCUMENT_TXT)), zipContentMap.get("document.txt"));
         
         // Fail if we don't have access to the files
         response = target().path("/file/zip")
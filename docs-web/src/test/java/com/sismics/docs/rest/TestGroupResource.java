@@ -162,13 +162,23 @@ public class TestGroupResource extends BaseJerseyTest {
         Assert.assertTrue(groupList.contains("g11"));
         Assert.assertTrue(groupList.contains("g112"));
         
+        // Move group g1 into its subgroup g112
+        Response response = target().path("/group/g1").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()
+                        .param("name", "g1")
+                        .param("parent", "g112")));
+        Assert.assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
+        json = response.readEntity(JsonObject.class);
+        Assert.assertEquals("CircularGroupHierarchy", json.getString("type"));
+
         // Delete group g1
         target().path("/group/g1").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .delete(JsonObject.class);
 
         // Delete group administrators
-        Response response = target().path("/group/administrators").request()
+        response = target().path("/group/administrators").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .delete();
         Assert.assertEquals(Response.Status.BAD_REQUEST, Response.Status.fromStatusCode(response.getStatus()));
@@ -188,5 +198,11 @@ public class TestGroupResource extends BaseJerseyTest {
         Assert.assertEquals(2, groups.size());
         Assert.assertTrue(groupList.contains("g11"));
         Assert.assertTrue(groupList.contains("g112"));
+
+        // The group ancestors are up to date
+        json = target().path("/app/batch/rebuild_group_ancestors").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form()), JsonObject.class);
+        Assert.assertEquals(0, json.getInt("error_count"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.sismics.docs.rest;
+
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.jpa.QueryUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.filter.TokenBasedSecurityFilter;
+import com.sismics.util.jpa.LocalRegionFactory;
+import org.hibernate.Session;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test the second-level cache, disabled in the other tests.
+ *
+ * @author bgamard
+ */
+public class TestSecondLevelCache extends BaseJerseyTest {
+    /**
+     * Region of the users.
+     */
+    private static final String USER_REGION = "com.sismics.docs.core.model.jpa.User";
+
+    /**
+     * Cache settings, overriding hibernate.properties.
+     */
+    private static final Map<String, String> CACHE_PROPERTIES = new HashMap<>();
+
+    static {
+        CACHE_PROPERTIES.put("hibernate.cache.use_second_level_cache", "true");
+        CACHE_PROPERTIES.put("hibernate.cache.use_query_cache", "true");
+        CACHE_PROPERTIES.put("hibernate.cache.region.factory_class", LocalRegionFactory.class.getName());
+        CACHE_PROPERTIES.put("hibernate.cache.default_cache_concurrency_strategy", "read-write");
+        CACHE_PROPERTIES.put("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        CACHE_PROPERTIES.put("hibernate.generate_statistics", "true");
+        CACHE_PROPERTIES.put("hibernate.session.events.log", "false");
+    }
+
+    @BeforeClass
+    public static void enableCache() {
+        CACHE_PROPERTIES.forEach(System::setProperty);
+    }
+
+    @AfterClass
+    public static void disableCache() {
+        CACHE_PROPERTIES.keySet().forEach(System::clearProperty);
+    }
+
+    /**
+     * Test the cache statistics and the invalidation of the cached entities.
+     */
+    @Test
+    public void testCache() {
+        // Login admin
+        String adminToken = clientUtil.login("admin", "admin", false);
+
+        // Create a user, and read it twice
+        clientUtil.createUser("cache1");
+        Assert.assertEquals("cache1@docs.com", getEmail(adminToken));
+        Assert.assertEquals("cache1@docs.com", getEmail(adminToken));
+
+        // The users are served by the cache
+        JsonObject userRegion = getUserRegion(adminToken);
+        Assert.assertTrue(userRegion.getJsonNumber("size").longValue() > 0);
+        Assert.assertTrue(userRegion.getJsonNumber("hit_count").longValue() > 0);
+        Assert.assertTrue(userRegion.getJsonNumber("put_count").longValue() > 0);
+
+        // A change made outside of Hibernate is not seen
+        TransactionUtil.handle(() -> ThreadLocalContext.get().getEntityManager().unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("update T_USER set USE_EMAIL_C = ? where USE_USERNAME_C = ?")) {
+                statement.setString(1, "stale@docs.com");
+                statement.setString(2, "cache1");
+                statement.executeUpdate();
+            }
+        }));
+        Assert.assertEquals("cache1@docs.com", getEmail(adminToken));
+
+        // A native update of another table keeps the cached users
+        TransactionUtil.handle(() -> QueryUtil.createNativeUpdate("update T_ROUTE set RTE_DELETEDATE_D = RTE_DELETEDATE_D where 1 = 0", "T_ROUTE")
+                .executeUpdate());
+        Assert.assertEquals("cache1@docs.com", getEmail(adminToken));
+
+        // A native update of the users evicts them
+        TransactionUtil.handle(() -> QueryUtil.createNativeUpdate("update T_USER set USE_EMAIL_C = :email where USE_USERNAME_C = :username", "T_USER")
+                .setParameter("email", "cache2@docs.com")
+                .setParameter("username", "cache1")
+                .executeUpdate());
+        Assert.assertEquals("cache2@docs.com", getEmail(adminToken));
+    }
+
+    /**
+     * Returns the email of the user cache1.
+     *
+     * @param adminToken Admin token
+     * @return Email
+     */
+    private String getEmail(String adminToken) {
+        return target().path("/user/cache1").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class)
+                .getString("email");
+    }
+
+    /**
+     * Returns the statistics of the users region.
+     *
+     * @param adminToken Admin token
+     * @return Region statistics
+     */
+    private JsonObject getUserRegion(String adminToken) {
+        JsonObject json = target().path("/app/cache").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getBoolean("enabled"));
+        for (JsonObject region : json.getJsonArray("regions").getValuesAs(JsonObject.class)) {
+            if (region.getString("name").equals(USER_REGION)) {
+                return region;
+            }
+        }
+        throw new AssertionError("No users region");
+    }
+}
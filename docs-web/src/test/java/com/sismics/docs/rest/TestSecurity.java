@@ -55,6 +55,7 @@ public class TestSecurity extends BaseJerseyTest {
         Assert.assertEquals("ok", json.getString("status"));
 
         // User testsecurity logs out
+        String loggedOutToken = testSecurityToken;
         response = target().path("/user/logout").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testSecurityToken)
                 .post(Entity.form(new Form()));
@@ -62,6 +63,13 @@ public class TestSecurity extends BaseJerseyTest {
         testSecurityToken = clientUtil.getAuthenticationCookie(response);
         Assert.assertTrue(StringUtils.isEmpty(testSecurityToken));
 
+        // The old cookie is rejected right after the logout
+        response = target().path("/user").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, loggedOutToken)
+                .post(Entity.form(new Form()
+                        .param("email", "testsecurity3@docs.com")));
+        Assert.assertEquals(Status.FORBIDDEN, Status.fromStatusCode(response.getStatus()));
+
         // User testsecurity logs out KO : he is not connected anymore
         response = target().path("/user/logout").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, testSecurityToken)
@@ -22,7 +22,7 @@ public class TestWebhookResource extends BaseJerseyTest {
      * Test the webhook resource.
      */
     @Test
-    public void testWebhookResource() {
+    public void testWebhookResource() throws Exception {
         // Login admin
         String adminToken = clientUtil.login("admin", "admin", false);
 
@@ -45,6 +45,13 @@ public class TestWebhookResource extends BaseJerseyTest {
                         .param("event", "DOCUMENT_CREATED")
                         .param("url", "http://localhost:" + getPort() + "/docs/thirdpartywebhook")), JsonObject.class);
 
+        // Create a webhook to an unreachable URL
+        target().path("/webhook").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .put(Entity.form(new Form()
+                        .param("event", "DOCUMENT_CREATED")
+                        .param("url", "http://localhost:1/unreachable")), JsonObject.class);
+
         // Create a document
         json = target().path("/document").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, webhook1Token)
@@ -54,28 +61,38 @@ public class TestWebhookResource extends BaseJerseyTest {
                         .param("create_date", Long.toString(new Date().getTime()))), JsonObject.class);
         String document1Id = json.getString("id");
 
+        // Wait for the webhooks to be called by the webhook service
+        webhooks = waitForCalls(adminToken);
+        Assert.assertEquals(2, webhooks.size());
+
         // Check the webhook payload
         JsonObject payload = ThirdPartyWebhookResource.getLastPayload();
         Assert.assertEquals("DOCUMENT_CREATED", payload.getString("event"));
         Assert.assertEquals(document1Id, payload.getString("id"));
-
-        // Get all webhooks
-        json = target().path("/webhook")
-                .request()
-                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
-                .get(JsonObject.class);
-        webhooks = json.getJsonArray("webhooks");
-        Assert.assertEquals(1, webhooks.size());
-        JsonObject webhook = webhooks.getJsonObject(0);
+        JsonObject webhook = webhooks.getJsonObject(1);
         String webhookId = webhook.getString("id");
         Assert.assertEquals("DOCUMENT_CREATED", webhook.getString("event"));
         Assert.assertEquals("http://localhost:" + getPort() + "/docs/thirdpartywebhook", webhook.getString("url"));
         Assert.assertNotNull(webhook.getJsonNumber("create_date"));
+        Assert.assertEquals(0, webhook.getJsonNumber("pending_count").longValue());
+        Assert.assertEquals(1, webhook.getJsonNumber("call_count").longValue());
+        Assert.assertEquals(0, webhook.getJsonNumber("failure_count").longValue());
 
-        // Delete a webhook
+        // The failed delivery stays in the outbox to be retried
+        webhook = webhooks.getJsonObject(0);
+        String unreachableWebhookId = webhook.getString("id");
+        Assert.assertEquals("http://localhost:1/unreachable", webhook.getString("url"));
+        Assert.assertEquals(1, webhook.getJsonNumber("pending_count").longValue());
+        Assert.assertEquals(1, webhook.getJsonNumber("call_count").longValue());
+        Assert.assertEquals(1, webhook.getJsonNumber("failure_count").longValue());
+
+        // Delete the webhooks
         target().path("/webhook/" + webhookId).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
                 .delete(JsonObject.class);
+        target().path("/webhook/" + unreachableWebhookId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .delete(JsonObject.class);
 
         // Get all webhooks
         json = target().path("/webhook")
@@ -85,4 +102,27 @@ public class TestWebhookResource extends BaseJerseyTest {
         webhooks = json.getJsonArray("webhooks");
         Assert.assertEquals(0, webhooks.size());
     }
-}
\ No newline at end of file
+
+    /**
+     * Wait for all webhooks to be called once.
+     *
+     * @param adminToken Admin token
+     * @return Webhooks
+     * @throws Exception e
+     */
+    private JsonArray waitForCalls(String adminToken) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            JsonArray webhooks = target().path("/webhook")
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .get(JsonObject.class)
+                    .getJsonArray("webhooks");
+            if (webhooks.getValuesAs(JsonObject.class).stream()
+                    .allMatch(webhook -> webhook.getJsonNumber("call_count").longValue() > 0)) {
+                return webhooks;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("The webhooks were not called");
+    }
+}